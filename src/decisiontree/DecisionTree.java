@@ -1,21 +1,31 @@
 package decisiontree;
 
-import static java.util.stream.Collectors.counting;
-import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnarDataSet;
 import decisiontree.data.DataSample;
 import decisiontree.feature.Feature;
 import decisiontree.impurity.EntropyCalculationMethod;
 import decisiontree.impurity.ImpurityCalculationMethod;
 import decisiontree.label.Label;
+import decisiontree.split.HistogramSplitFinder;
+import decisiontree.split.NodeRange;
+import decisiontree.split.PartitionSplitFinder;
+import decisiontree.split.PresortedSplitFinder;
+import decisiontree.split.Split;
+import decisiontree.split.SplitFinder;
+import decisiontree.split.SplitStrategy;
 
 
 /**
@@ -23,6 +33,9 @@ import decisiontree.label.Label;
  *
  */
 public class DecisionTree {
+
+    /** Mapper is thread safe once configured, so it is shared by all trees. */
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
 	
 	public DecisionTree() {
 		
@@ -34,6 +47,12 @@ public class DecisionTree {
     /** Impurity calculation method. */
     protected ImpurityCalculationMethod impurityCalculationMethod = new EntropyCalculationMethod();
 
+    /** Split finding strategy used when training on columnar data. */
+    protected SplitStrategy splitStrategy = SplitStrategy.PRESORTED;
+
+    /** Maximum number of bins per column used by histogram split strategy. */
+    protected int maxBins = HistogramSplitFinder.MAX_BINS;
+
     /**
      * When data is considered homogeneous and node becomes leaf and is labeled. If it is equal 1.0 then absolutely all
      * data must be of the same label that node would be considered a leaf.
@@ -45,8 +64,168 @@ public class DecisionTree {
      * help with overfitting, however if depth will be set too low tree will not be accurate.
      */
     protected int maxDepth = Integer.MAX_VALUE;
+
+    /** Pool on which subtrees and columns are evaluated in parallel, null to train sequentially. */
+    protected ForkJoinPool pool;
+
+    /** Nodes with fewer rows grow their subtrees sequentially. */
+    protected int parallelThreshold = 4096;
+
+    /** Nodes with at least this many rows evaluate candidate columns in parallel. */
+    protected int columnParallelThreshold = 65536;
+
+    /** Called after every grown node of columnar training, may be called from any thread of pool. */
+    protected Runnable progress;
+
+    /**
+     * Grows subtree of columnar data as a fork/join task.
+     */
+    private class GrowTask extends RecursiveTask<Node> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SplitFinder splitFinder;
+
+        private final NodeRange node;
+
+        private final List<List<Feature>> features;
+
+        private final int currentDepth;
+
+        GrowTask(SplitFinder splitFinder, NodeRange node, List<List<Feature>> features, int currentDepth) {
+            this.splitFinder = splitFinder;
+            this.node = node;
+            this.features = features;
+            this.currentDepth = currentDepth;
+        }
+
+        @Override
+        protected Node compute() {
+            return growTree(splitFinder, node, features, currentDepth);
+        }
+    }
     
 
+    public SplitStrategy getSplitStrategy() {
+        return splitStrategy;
+    }
+
+    public void setSplitStrategy(SplitStrategy splitStrategy) {
+        this.splitStrategy = splitStrategy;
+    }
+
+    public ImpurityCalculationMethod getImpurityCalculationMethod() {
+        return impurityCalculationMethod;
+    }
+
+    /**
+     * Set impurity calculation method, for example {@link EntropyCalculationMethod} or
+     * {@link decisiontree.impurity.GiniIndexCalculationMethod}.
+     */
+    public void setImpurityCalculationMethod(ImpurityCalculationMethod impurityCalculationMethod) {
+        this.impurityCalculationMethod = impurityCalculationMethod;
+    }
+
+    public int getMaxBins() {
+        return maxBins;
+    }
+
+    /**
+     * Set maximum number of bins per column used by histogram split strategy.
+     * 
+     * @param maxBins
+     *            Number of bins between 2 and {@link HistogramSplitFinder#MAX_BINS}.
+     */
+    public void setMaxBins(int maxBins) {
+        if (maxBins < 2 || maxBins > HistogramSplitFinder.MAX_BINS) {
+            throw new IllegalArgumentException("Number of bins must be between 2 and " + HistogramSplitFinder.MAX_BINS + ": " + maxBins);
+        }
+        this.maxBins = maxBins;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Set depth at which growth of the tree stops.
+     * 
+     * @param maxDepth
+     *            Positive depth, {@link Integer#MAX_VALUE} for no limit.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Max depth must be positive: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public double getHomogenityPercentage() {
+        return homogenityPercentage;
+    }
+
+    /**
+     * Set fraction of samples of one label from which node is considered homogeneous and becomes a leaf.
+     * 
+     * @param homogenityPercentage
+     *            Fraction greater than 0.5 and at most 1.0.
+     */
+    public void setHomogenityPercentage(double homogenityPercentage) {
+        if (!(homogenityPercentage > 0.5 && homogenityPercentage <= 1.0)) {
+            throw new IllegalArgumentException("Homogenity percentage must be in (0.5, 1]: " + homogenityPercentage);
+        }
+        this.homogenityPercentage = homogenityPercentage;
+    }
+
+    @JsonIgnore
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Set pool on which large nodes grow their subtrees and evaluate columns in parallel, its parallelism should match
+     * number of cores available to the task. Tree is trained sequentially if pool is null, which is the default.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @JsonIgnore
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Set number of rows below which nodes grow their subtrees sequentially.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @JsonIgnore
+    public int getColumnParallelThreshold() {
+        return columnParallelThreshold;
+    }
+
+    /**
+     * Set number of rows from which nodes evaluate candidate columns in parallel.
+     */
+    public void setColumnParallelThreshold(int columnParallelThreshold) {
+        this.columnParallelThreshold = columnParallelThreshold;
+    }
+
+    @JsonIgnore
+    public Runnable getProgress() {
+        return progress;
+    }
+
+    /**
+     * Set callback reporting training progress, for example to keep a task alive while a large tree grows.
+     */
+    public void setProgress(Runnable progress) {
+        this.progress = progress;
+    }
+
     /**
      * Get root.
      */
@@ -54,6 +233,13 @@ public class DecisionTree {
         return root;
     }
 
+    /**
+     * Set root of a tree trained elsewhere, for example when it is deserialized.
+     */
+    public void setRoot(Node root) {
+        this.root = root;
+    }
+
     /**
      * Trains tree on training data for provided features.
      * 
@@ -66,6 +252,53 @@ public class DecisionTree {
         root = growTree(trainingData, features, 1);
     }
 
+    /**
+     * Trains tree on rows of columnar data set for provided features.
+     * 
+     * @param data
+     *            Columnar data set.
+     * @param rows
+     *            Indices of training rows, may contain the same row more than once.
+     * @param features
+     *            List of possible features.
+     */
+    public void train(ColumnarDataSet data, int[] rows, List<List<Feature>> features) {
+        train(data, Bootstrap.of(data.size(), rows), features);
+    }
+
+    /**
+     * Trains tree on bootstrap sample of columnar data set for provided features.
+     * 
+     * @param data
+     *            Columnar data set.
+     * @param sample
+     *            Bootstrap sample, rows are counted with their weight.
+     * @param features
+     *            List of possible features.
+     */
+    public void train(ColumnarDataSet data, Bootstrap sample, List<List<Feature>> features) {
+        SplitFinder splitFinder = newSplitFinder(data, sample, features);
+        if (pool != null) {
+            root = pool.invoke(new GrowTask(splitFinder, splitFinder.root(), features, 1));
+        } else {
+            root = growTree(splitFinder, splitFinder.root(), features, 1);
+        }
+    }
+
+    /**
+     * Creates split finder for a training run according to split strategy.
+     */
+    protected SplitFinder newSplitFinder(ColumnarDataSet data, Bootstrap sample, List<List<Feature>> features) {
+        switch (splitStrategy) {
+        case PRESORTED:
+            return new PresortedSplitFinder(data, sample, features, impurityCalculationMethod);
+        case HISTOGRAM:
+            return new HistogramSplitFinder(data, sample, features, impurityCalculationMethod, maxBins);
+        default:
+            return new PartitionSplitFinder(data, sample, impurityCalculationMethod);
+        }
+    }
+
     /**
      * Grow tree during training by splitting data recursively on best feature.
      * 
@@ -78,22 +311,28 @@ public class DecisionTree {
      */
     protected Node growTree(List<DataSample> trainingData, List<List<Feature>> features, int currentDepth) {
 
+        // class histogram of the node is computed once and reused for homogeneity, majority label and impurity
+        List<Label> labels = new ArrayList<>();
+        int[] labelCounts = ImpurityCalculationMethod.countLabels(trainingData, labels);
+        Label[] classes = labels.toArray(new Label[labels.size()]);
+        Label majorityLabel = getMajorityLabel(classes, labelCounts);
+
         Label currentNodeLabel = null;
         // if dataset already homogeneous enough (has label assigned) make this node a leaf
         
-        if ((currentNodeLabel = getLabel(trainingData)) != null) {
+        if ((currentNodeLabel = getLabel(classes, labelCounts)) != null) {
             return Node.newLeafNode(currentNodeLabel);
         }
         
-        boolean allEmpty = features.parallelStream().allMatch(p -> p.isEmpty());
+        boolean allEmpty = features.stream().allMatch(p -> p.isEmpty());
         
         boolean stoppingCriteriaReached = allEmpty || currentDepth >= maxDepth;
         if (stoppingCriteriaReached) {
-            Label majorityLabel = getMajorityLabel(trainingData);
             return Node.newLeafNode(majorityLabel);
         }
        
-        Feature bestSplit = findBestSplitFeature(trainingData, features); // get best set of literals
+        double parentImpurity = impurityCalculationMethod.calculateImpurity(labelCounts);
+        Feature bestSplit = findBestSplitFeature(trainingData, parentImpurity, features); // get best set of literals
         
         List<List<DataSample>> splitData = bestSplit.split(trainingData);
         
@@ -113,7 +352,7 @@ public class DecisionTree {
         for (List<DataSample> subsetTrainingData : splitData) { // add children to current node according to split
             if (subsetTrainingData.isEmpty()) {
                 // if subset data is empty add a leaf with label calculated from initial data
-                node.addChild(Node.newLeafNode(getMajorityLabel(trainingData)));
+                node.addChild(Node.newLeafNode(majorityLabel));
             } else {
                 // grow tree further recursively
                 node.addChild(growTree(subsetTrainingData, newFeatures, currentDepth + 1));
@@ -123,6 +362,78 @@ public class DecisionTree {
         return node;
     }
 
+    /**
+     * Grow tree during training on columnar data. Node data is a range of row indices owned by split finder which is
+     * partitioned in place for children, so no sublists are created.
+     * 
+     * @param splitFinder
+     *            Split finder of this training run.
+     * @param node
+     *            Node data.
+     * @param features
+     *            List of possible features, each list holds features of a single column.
+     * 
+     * @return Node after split. For a first invocation it returns tree root node.
+     */
+    protected Node growTree(SplitFinder splitFinder, NodeRange node, List<List<Feature>> features, int currentDepth) {
+        if (progress != null) {
+            progress.run();
+        }
+        Label[] classes = splitFinder.getDataSet().getClasses();
+        int[] labelCounts = node.getLabelCounts();
+        Label currentNodeLabel = null;
+        // if dataset already homogeneous enough (has label assigned) make this node a leaf
+        if ((currentNodeLabel = getLabel(classes, labelCounts)) != null) {
+            return Node.newLeafNode(currentNodeLabel);
+        }
+
+        boolean allEmpty = features.stream().allMatch(p -> p.isEmpty());
+
+        boolean stoppingCriteriaReached = allEmpty || currentDepth >= maxDepth;
+        if (stoppingCriteriaReached) {
+            return Node.newLeafNode(getMajorityLabel(classes, labelCounts));
+        }
+
+        Feature bestSplit = findBestSplitFeature(splitFinder, node, features);
+        if (bestSplit == null) {
+            // none of the features separates the data
+            return Node.newLeafNode(getMajorityLabel(classes, labelCounts));
+        }
+
+        NodeRange[] children = splitFinder.split(node, bestSplit);
+
+        // remove features of best split column from list
+        List<List<Feature>> newFeatures = features.stream().filter(p -> p.isEmpty() || !p.get(0).getColumn().equals(bestSplit.getColumn())).collect(toList());
+
+        Node newNode = Node.newNode(bestSplit);
+        if (isParallel(node, parallelThreshold)) {
+            // children own disjoint ranges of split finder arrays, so their subtrees can grow concurrently
+            List<GrowTask> tasks = new ArrayList<>();
+            for (NodeRange child : children) {
+                if (!child.isEmpty()) {
+                    tasks.add(new GrowTask(splitFinder, child, newFeatures, currentDepth + 1));
+                }
+            }
+            ForkJoinTask.invokeAll(tasks);
+            int task = 0;
+            for (NodeRange child : children) {
+                newNode.addChild(child.isEmpty() ? Node.newLeafNode(getMajorityLabel(classes, labelCounts)) : tasks.get(task++).join());
+            }
+            return newNode;
+        }
+        for (NodeRange child : children) { // add children to current node according to split
+            if (child.isEmpty()) {
+                // if subset data is empty add a leaf with label calculated from initial data
+                newNode.addChild(Node.newLeafNode(getMajorityLabel(classes, labelCounts)));
+            } else {
+                // grow tree further recursively
+                newNode.addChild(growTree(splitFinder, child, newFeatures, currentDepth + 1));
+            }
+        }
+
+        return newNode;
+    }
+
     /**
      * Classify dataSample.
      * 
@@ -143,11 +454,48 @@ public class DecisionTree {
         return node.getLabel();
     }
 
+    /**
+     * Classify row of columnar data set.
+     * 
+     * @param data
+     *            Columnar data set.
+     * @param row
+     *            Row index.
+     * @return Return label of class.
+     */
+    public Label classify(ColumnarDataSet data, int row) {
+        Node node = root;
+        while (!node.isLeaf()) {
+            Feature feature = node.getFeature();
+            int column = feature.getColumnIndex();
+            boolean has = column >= 0 ? feature.belongsTo(data.getValue(column, row)) : feature.belongsTo(data.getSample(row));
+            node = node.getChildren().get(has ? 0 : 1);
+        }
+        return node.getLabel();
+    }
+
+    /**
+     * Classify row of feature values, all features of the tree must know index of their column.
+     * 
+     * @param row
+     *            Feature values ordered as columns of training data set.
+     * @return Return label of class.
+     */
+    public Label classify(double[] row) {
+        Node node = root;
+        while (!node.isLeaf()) {
+            node = node.getChildren().get(node.getFeature().belongsTo(row) ? 0 : 1);
+        }
+        return node.getLabel();
+    }
+
     /**
      * Finds best feature to split on which is the one whose split results in the highest information gain.
+     * 
+     * @param parentImpurity
+     *            Impurity of data before split.
      */
-    protected Feature findBestSplitFeature(List<DataSample> data, List<List<Feature>> features) {
-    	double parentImpurity = impurityCalculationMethod.calculateImpurity(data);
+    protected Feature findBestSplitFeature(List<DataSample> data, double parentImpurity, List<List<Feature>> features) {
     	double infoGain = -Double.MIN_NORMAL;
     	double childrenImpurity = 1;
     	
@@ -167,7 +515,7 @@ public class DecisionTree {
 	        		List<List<DataSample>> splitData = feature.split(data);
 	        		// totalSplitImpurity = sum(singleLeafImpurities) / nbOfLeafs
 	                // in other words splitImpurity is average of leaf impurities
-	                childrenImpurity = splitData.parallelStream().filter(list -> !list.isEmpty()).mapToDouble(list -> impurityCalculationMethod.calculateImpurity(list)).average().getAsDouble();
+	                childrenImpurity = splitData.stream().filter(list -> !list.isEmpty()).mapToDouble(list -> impurityCalculationMethod.calculateImpurity(list)).average().getAsDouble();
 	                double newGain = parentImpurity - childrenImpurity;
 
 	                if(newGain > infoGain){
@@ -192,7 +540,7 @@ public class DecisionTree {
 	            		List<List<DataSample>> splitData = feature.split(data);
 	            		// totalSplitImpurity = sum(singleLeafImpurities) / nbOfLeafs
 	                    // in other words splitImpurity is average of leaf impurities
-	                    childrenImpurity = splitData.parallelStream().filter(list -> !list.isEmpty()).mapToDouble(list -> impurityCalculationMethod.calculateImpurity(list)).average().getAsDouble();
+	                    childrenImpurity = splitData.stream().filter(list -> !list.isEmpty()).mapToDouble(list -> impurityCalculationMethod.calculateImpurity(list)).average().getAsDouble();
 	                    double newGain = parentImpurity - childrenImpurity;
 	                    
 	                    if(newGain > infoGain){
@@ -211,20 +559,50 @@ public class DecisionTree {
     }
 
     /**
-     * Returns Label if data is homogeneous.
+     * Finds best feature to split node of columnar data on, which is the one whose split results in the lowest
+     * impurity of children.
+     * 
+     * @return Best feature or null if none of the features separates node data.
      */
-    protected Label getLabel(List<DataSample> data) {
-        // group by to map <Label, count>
-        Map<Label, Long> labelCount = data.parallelStream().collect(groupingBy(DataSample::getLabel, counting()));
-        long totalCount = data.size();
-        for (Label label : labelCount.keySet()) {
-            long nbOfLabels = labelCount.get(label);
-            double labelDistro = (double) nbOfLabels / (double) totalCount;
-            if (labelDistro >= homogenityPercentage) {
-                return label;
+    protected Feature findBestSplitFeature(SplitFinder splitFinder, NodeRange node, List<List<Feature>> features) {
+        List<Split> splits = new ArrayList<>();
+        if (features.size() > 1 && isParallel(node, columnParallelThreshold)) {
+            // finding split only reads split finder arrays, so columns can be evaluated concurrently
+            List<ForkJoinTask<Split>> tasks = new ArrayList<>();
+            for (List<Feature> featList : features) {
+                tasks.add(ForkJoinTask.adapt(() -> splitFinder.findBestSplit(node, featList)));
+            }
+            for (ForkJoinTask<Split> task : ForkJoinTask.invokeAll(tasks)) {
+                splits.add(task.join());
+            }
+        } else {
+            for (List<Feature> featList : features) {
+                splits.add(splitFinder.findBestSplit(node, featList));
             }
         }
-        return null;
+        Split bestSplit = null;
+        for (Split split : splits) {
+            if (split != null && (bestSplit == null || split.getImpurity() < bestSplit.getImpurity())) {
+                bestSplit = split;
+            }
+        }
+        return bestSplit != null ? bestSplit.getFeature() : null;
+    }
+
+    /**
+     * Checks if work on node should be forked, which is when it is large enough and runs in pool of this tree.
+     */
+    private boolean isParallel(NodeRange node, int threshold) {
+        return pool != null && node.size() >= threshold && ForkJoinTask.getPool() == pool;
+    }
+
+    /**
+     * Returns Label if data is homogeneous.
+     */
+    protected Label getLabel(List<DataSample> data) {
+        List<Label> labels = new ArrayList<>();
+        int[] labelCounts = ImpurityCalculationMethod.countLabels(data, labels);
+        return getLabel(labels.toArray(new Label[labels.size()]), labelCounts);
     }
 
     /**
@@ -232,8 +610,40 @@ public class DecisionTree {
      * is used when tree growth is stopped and everything what is left must be classified so it returns majority label for the data.
      */
     protected Label getMajorityLabel(List<DataSample> data) {
-        // group by to map <Label, count> like in getLabels() but return Label with most counts
-        return data.parallelStream().collect(groupingBy(DataSample::getLabel, counting())).entrySet().stream().max(Map.Entry.comparingByValue()).get().getKey();
+        List<Label> labels = new ArrayList<>();
+        int[] labelCounts = ImpurityCalculationMethod.countLabels(data, labels);
+        return getMajorityLabel(labels.toArray(new Label[labels.size()]), labelCounts);
+    }
+
+    /**
+     * Returns Label if data with given label counts is homogeneous. Like {@link #getLabel(List)} but for already
+     * counted labels.
+     */
+    protected Label getLabel(Label[] classes, int[] labelCounts) {
+        long totalCount = 0;
+        for (int count : labelCounts) {
+            totalCount += count;
+        }
+        for (int i = 0; i < labelCounts.length; i++) {
+            double labelDistro = (double) labelCounts[i] / (double) totalCount;
+            if (labelCounts[i] > 0 && labelDistro >= homogenityPercentage) {
+                return classes[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns label with most counts. Like {@link #getMajorityLabel(List)} but for already counted labels.
+     */
+    protected Label getMajorityLabel(Label[] classes, int[] labelCounts) {
+        int majority = 0;
+        for (int i = 1; i < labelCounts.length; i++) {
+            if (labelCounts[i] > labelCounts[majority]) {
+                majority = i;
+            }
+        }
+        return classes[majority];
     }
 
     // -------------------------------- TREE PRINTING ------------------------------------
@@ -280,8 +690,6 @@ public class DecisionTree {
 
     // For DecisionTree Serialization
     public String JSONTree() throws JsonProcessingException {
-    	ObjectMapper JSONMapper = new ObjectMapper();
-    	String JSONTree = JSONMapper.writeValueAsString(this);
-    	return JSONTree;
+    	return JSON_MAPPER.writeValueAsString(this);
     }
 }
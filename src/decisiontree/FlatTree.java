@@ -0,0 +1,210 @@
+package decisiontree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import decisiontree.feature.Feature;
+import decisiontree.feature.ThresholdFeature;
+import decisiontree.label.Label;
+
+/**
+ * Trained decision tree compiled into parallel primitive arrays for fast classification. Nodes are stored in depth
+ * first order, so the first child of a split node usually directly follows it. Classifying a row only reads arrays
+ * and does not allocate.
+ *
+ * Only trees split on {@link ThresholdFeature}s which know index of their column can be compiled.
+ *
+ */
+public class FlatTree {
+
+    private static final byte LESS_THAN = (byte) ThresholdFeature.Operator.LESS_THAN.ordinal();
+
+    private static final byte GREATER_OR_EQUAL = (byte) ThresholdFeature.Operator.GREATER_OR_EQUAL.ordinal();
+
+    /** Column index of each split node, -1 for leaves. */
+    private final int[] column;
+
+    /** Operator ordinal of each split node. */
+    private final byte[] operator;
+
+    /** Threshold of each split node. */
+    private final double[] threshold;
+
+    /** Sorted categories of set membership nodes, null for other nodes. */
+    private final double[][] categories;
+
+    /** Index of child which has the feature. */
+    private final int[] left;
+
+    /** Index of child which does not have the feature. */
+    private final int[] right;
+
+    /** Class index of each leaf, -1 for split nodes. */
+    private final int[] leafClass;
+
+    /** Labels indexed by class index. */
+    private final Label[] classes;
+
+    private FlatTree(int size, Label[] classes) {
+        this.column = new int[size];
+        this.operator = new byte[size];
+        this.threshold = new double[size];
+        this.categories = new double[size][];
+        this.left = new int[size];
+        this.right = new int[size];
+        this.leafClass = new int[size];
+        this.classes = classes;
+    }
+
+    /**
+     * Compiles trained tree, class indices are assigned in order in which labels appear in the tree.
+     *
+     * @param tree
+     *            Trained tree.
+     * @return Compiled tree.
+     */
+    public static FlatTree compile(DecisionTree tree) {
+        List<Label> classes = new ArrayList<>();
+        collectClasses(getRoot(tree), classes);
+        return compile(tree, classes.toArray(new Label[classes.size()]));
+    }
+
+    /**
+     * Compiles trained tree with given class indices, for example classes of the training data set so that class
+     * indices are the same as its label codes.
+     *
+     * @param tree
+     *            Trained tree.
+     * @param classes
+     *            Labels indexed by class index, must contain every label of the tree.
+     * @return Compiled tree.
+     */
+    public static FlatTree compile(DecisionTree tree, Label[] classes) {
+        Node root = getRoot(tree);
+        FlatTree flatTree = new FlatTree(countNodes(root), classes.clone());
+        flatTree.add(root, 0);
+        return flatTree;
+    }
+
+    private static Node getRoot(DecisionTree tree) {
+        if (tree.getRoot() == null) {
+            throw new IllegalStateException("Tree is not trained");
+        }
+        return tree.getRoot();
+    }
+
+    private static void collectClasses(Node node, List<Label> classes) {
+        if (node.isLeaf()) {
+            if (!classes.contains(node.getLabel())) {
+                classes.add(node.getLabel());
+            }
+        } else {
+            for (Node child : node.getChildren()) {
+                collectClasses(child, classes);
+            }
+        }
+    }
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        for (Node child : node.getChildren()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+
+    /**
+     * Stores subtree starting at index.
+     *
+     * @return Index after the last node of the subtree.
+     */
+    private int add(Node node, int index) {
+        if (node.isLeaf()) {
+            column[index] = -1;
+            leafClass[index] = classIndex(node.getLabel());
+            return index + 1;
+        }
+        Feature feature = node.getFeature();
+        if (!(feature instanceof ThresholdFeature) || feature.getColumnIndex() < 0 || node.getChildren().size() != 2) {
+            throw new IllegalArgumentException("Can not compile node " + node.getName());
+        }
+        ThresholdFeature thresholdFeature = (ThresholdFeature) feature;
+        column[index] = thresholdFeature.getColumnIndex();
+        operator[index] = (byte) thresholdFeature.getOperator().ordinal();
+        threshold[index] = thresholdFeature.getFeatureVal();
+        categories[index] = thresholdFeature.getCategories();
+        leafClass[index] = -1;
+        left[index] = index + 1;
+        right[index] = add(node.getChildren().get(0), index + 1);
+        return add(node.getChildren().get(1), right[index]);
+    }
+
+    private int classIndex(Label label) {
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i].equals(label)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown label " + label.getName());
+    }
+
+    /**
+     * Classify row of feature values.
+     *
+     * @param row
+     *            Feature values ordered as columns of training data set.
+     * @return Class index of predicted label.
+     */
+    public int classify(double[] row) {
+        int node = 0;
+        while (column[node] >= 0) {
+            double value = row[column[node]];
+            boolean has;
+            if (operator[node] == LESS_THAN) {
+                has = value < threshold[node];
+            } else if (operator[node] == GREATER_OR_EQUAL) {
+                has = value >= threshold[node];
+            } else {
+                has = !Double.isNaN(value) && Arrays.binarySearch(categories[node], value) >= 0;
+            }
+            node = has ? left[node] : right[node];
+        }
+        return leafClass[node];
+    }
+
+    /**
+     * Classify batch of rows.
+     *
+     * @param rows
+     *            Rows of feature values ordered as columns of training data set.
+     * @param out
+     *            Class index of predicted label for every row.
+     */
+    public void classify(double[][] rows, int[] out) {
+        for (int i = 0; i < rows.length; i++) {
+            out[i] = classify(rows[i]);
+        }
+    }
+
+    /**
+     * @return Label of class index.
+     */
+    public Label getLabel(int classIndex) {
+        return classes[classIndex];
+    }
+
+    /**
+     * @return Labels indexed by class index.
+     */
+    public Label[] getClasses() {
+        return classes.clone();
+    }
+
+    /**
+     * @return Number of nodes including leaves.
+     */
+    public int size() {
+        return column.length;
+    }
+}
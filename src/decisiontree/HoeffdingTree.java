@@ -0,0 +1,417 @@
+package decisiontree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import decisiontree.feature.Feature;
+import decisiontree.impurity.ImpurityCalculationMethod;
+import decisiontree.label.Label;
+import decisiontree.split.HistogramSplitFinder;
+
+/**
+ * Decision tree grown online one sample at a time, also known as very fast decision tree. Every leaf keeps sufficient
+ * statistics, label counts per histogram bin of each candidate column, so an update walks down to a leaf and
+ * increments a few counters. Every grace period a leaf compares its best split with the best split of any other column
+ * and is split once the Hoeffding bound guarantees with probability 1 - delta that the best split is also best on the
+ * whole stream.
+ *
+ * Bin edges are candidate features like those of batch training, for example features at quantiles of a warm up
+ * window. Grown nodes are the same {@link Node} and {@link Feature} structures as of a batch trained tree, so it is
+ * classified, voted in a forest and written the same way. Like in batch training a column is split at most once on a
+ * path. Update must not run concurrently with classify.
+ *
+ */
+public class HoeffdingTree extends DecisionTree {
+
+    public static final int DEFAULT_GRACE_PERIOD = 200;
+
+    public static final double DEFAULT_DELTA = 1e-7;
+
+    public static final double DEFAULT_TIE_THRESHOLD = 0.05;
+
+    /** Labels indexed by class index. */
+    private final Label[] classes;
+
+    /** Bin edges of each slot sorted by feature value, values of bin b are at least value of edge b - 1. */
+    private final Feature[][] edges;
+
+    /** Feature values of edges of each slot. */
+    private final double[][] edgeValues;
+
+    /** Index of the column of each slot in rows. */
+    private final int[] columns;
+
+    /** Whether values of higher bins have the edge feature, for each slot. */
+    private final boolean[] highHasFeature;
+
+    /** Statistics of every leaf, keyed by identity as leaves are replaced when their label changes. */
+    private final Map<Node, Leaf> leaves = new IdentityHashMap<>();
+
+    private int gracePeriod = DEFAULT_GRACE_PERIOD;
+
+    private double delta = DEFAULT_DELTA;
+
+    private double tieThreshold = DEFAULT_TIE_THRESHOLD;
+
+    private long numSamples;
+
+    /**
+     * Sufficient statistics of a leaf.
+     */
+    private class Leaf {
+
+        private final int depth;
+
+        /** Slots still candidates for a split of this leaf. */
+        private final int[] slots;
+
+        /** Label counts deciding label of the leaf, including counts inherited from its parent. */
+        private final int[] labelCounts;
+
+        /** Label counts of samples seen by this leaf. */
+        private final int[] seenCounts;
+
+        /** Label counts per candidate slot, indexed by bin * numClasses + class index. */
+        private final int[][] histogram;
+
+        private int sinceCheck;
+
+        Leaf(int depth, int[] slots, int[] labelCounts) {
+            this.depth = depth;
+            this.slots = slots;
+            this.labelCounts = labelCounts;
+            this.seenCounts = new int[classes.length];
+            this.histogram = new int[slots.length][];
+            for (int i = 0; i < slots.length; i++) {
+                histogram[i] = new int[(edges[slots[i]].length + 1) * classes.length];
+            }
+        }
+
+        void add(double[] row, int label, int weight) {
+            labelCounts[label] += weight;
+            seenCounts[label] += weight;
+            for (int i = 0; i < slots.length; i++) {
+                histogram[i][bin(slots[i], row[columns[slots[i]]]) * classes.length + label] += weight;
+            }
+            sinceCheck += weight;
+        }
+    }
+
+    /**
+     * Constructor with at most {@link HistogramSplitFinder#MAX_BINS} bins per column.
+     *
+     * @see #HoeffdingTree(List, Label[], int)
+     */
+    public HoeffdingTree(List<List<Feature>> features, Label[] classes) {
+        this(features, classes, HistogramSplitFinder.MAX_BINS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param features
+     *            List of possible features, each list holds threshold features of a single column sorted by feature
+     *            value, every feature must know index of its column.
+     * @param classes
+     *            Labels indexed by class index.
+     * @param maxBins
+     *            Maximum number of bins per column, if a column has more features evenly spaced ones are bin edges.
+     */
+    public HoeffdingTree(List<List<Feature>> features, Label[] classes, int maxBins) {
+        setMaxBins(maxBins);
+        this.classes = classes.clone();
+        List<Feature[]> slots = new ArrayList<>();
+        for (List<Feature> featList : features) {
+            if (featList.isEmpty()) {
+                continue;
+            }
+            if (featList.get(0).getColumnIndex() < 0) {
+                throw new IllegalArgumentException("Column index of feature is unknown: " + featList.get(0));
+            }
+            int numEdges = Math.min(featList.size(), maxBins - 1);
+            Feature[] slotEdges = new Feature[numEdges];
+            for (int i = 0; i < numEdges; i++) {
+                slotEdges[i] = featList.get((int) ((long) i * featList.size() / numEdges));
+            }
+            slots.add(slotEdges);
+        }
+        this.edges = slots.toArray(new Feature[slots.size()][]);
+        this.edgeValues = new double[edges.length][];
+        this.columns = new int[edges.length];
+        this.highHasFeature = new boolean[edges.length];
+        for (int slot = 0; slot < edges.length; slot++) {
+            edgeValues[slot] = Arrays.stream(edges[slot]).mapToDouble(Feature::getFeatureVal).toArray();
+            columns[slot] = edges[slot][0].getColumnIndex();
+            highHasFeature[slot] = edges[slot][0].belongsTo(edgeValues[slot][0]);
+        }
+
+        int[] allSlots = new int[edges.length];
+        for (int slot = 0; slot < allSlots.length; slot++) {
+            allSlots[slot] = slot;
+        }
+        root = Node.newLeafNode(this.classes[0]);
+        leaves.put(root, new Leaf(1, allSlots, new int[this.classes.length]));
+    }
+
+    @JsonIgnore
+    public int getGracePeriod() {
+        return gracePeriod;
+    }
+
+    /**
+     * Set number of samples a leaf sees between attempts to split it.
+     */
+    public void setGracePeriod(int gracePeriod) {
+        if (gracePeriod < 1) {
+            throw new IllegalArgumentException("Grace period must be positive: " + gracePeriod);
+        }
+        this.gracePeriod = gracePeriod;
+    }
+
+    @JsonIgnore
+    public double getDelta() {
+        return delta;
+    }
+
+    /**
+     * Set probability that a split is not the best one on the whole stream.
+     */
+    public void setDelta(double delta) {
+        if (!(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("Delta must be in (0, 1): " + delta);
+        }
+        this.delta = delta;
+    }
+
+    @JsonIgnore
+    public double getTieThreshold() {
+        return tieThreshold;
+    }
+
+    /**
+     * Set Hoeffding bound below which the best split is taken even if the second best one is as good.
+     */
+    public void setTieThreshold(double tieThreshold) {
+        this.tieThreshold = tieThreshold;
+    }
+
+    /**
+     * @return Sum of weights of all updates.
+     */
+    @JsonIgnore
+    public long getNumSamples() {
+        return numSamples;
+    }
+
+    /**
+     * @return Number of leaves.
+     */
+    @JsonIgnore
+    public int getNumLeaves() {
+        return leaves.size();
+    }
+
+    /**
+     * Learns a labeled row.
+     *
+     * @param row
+     *            Feature values ordered as columns of the features of the tree.
+     * @param label
+     *            Label of row, one of classes of the tree.
+     */
+    public void update(double[] row, Label label) {
+        update(row, label, 1);
+    }
+
+    /**
+     * Learns a labeled row as if it was seen weight times, for example with a Poisson weight for online bagging.
+     *
+     * @param row
+     *            Feature values ordered as columns of the features of the tree.
+     * @param label
+     *            Label of row, one of classes of the tree.
+     * @param weight
+     *            Non negative weight, rows with zero weight are skipped.
+     */
+    public void update(double[] row, Label label, int weight) {
+        if (weight <= 0) {
+            return;
+        }
+        int labelIndex = classIndex(label);
+        numSamples += weight;
+
+        Node parent = null;
+        int childIndex = 0;
+        Node node = root;
+        while (!node.isLeaf()) {
+            parent = node;
+            childIndex = node.getFeature().belongsTo(row) ? 0 : 1;
+            node = node.getChildren().get(childIndex);
+        }
+        Leaf leaf = leaves.get(node);
+        leaf.add(row, labelIndex, weight);
+
+        Label majorityLabel = getMajorityLabel(classes, leaf.labelCounts);
+        if (!majorityLabel.equals(node.getLabel())) {
+            // leaf label is final, so the leaf is replaced
+            Node relabeled = Node.newLeafNode(majorityLabel);
+            leaves.remove(node);
+            leaves.put(relabeled, leaf);
+            replace(parent, childIndex, relabeled);
+            node = relabeled;
+        }
+        if (leaf.sinceCheck >= gracePeriod) {
+            leaf.sinceCheck = 0;
+            attemptSplit(parent, childIndex, node, leaf);
+        }
+    }
+
+    private int classIndex(Label label) {
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i].equals(label)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown label: " + label);
+    }
+
+    /**
+     * @return Bin of value, which is number of edges less or equal to value.
+     */
+    private int bin(int slot, double value) {
+        double[] values = edgeValues[slot];
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void replace(Node parent, int childIndex, Node child) {
+        if (parent == null) {
+            root = child;
+        } else {
+            parent.getChildren().set(childIndex, child);
+        }
+    }
+
+    /**
+     * Splits leaf on its best split if the Hoeffding bound separates it from the best split of any other column and
+     * from not splitting at all.
+     */
+    private void attemptSplit(Node parent, int childIndex, Node node, Leaf leaf) {
+        if (leaf.depth >= maxDepth || leaf.slots.length == 0 || getLabel(classes, leaf.labelCounts) != null) {
+            return;
+        }
+        int numClasses = classes.length;
+        long total = 0;
+        for (int count : leaf.seenCounts) {
+            total += count;
+        }
+        double parentImpurity = impurityCalculationMethod.calculateImpurity(leaf.seenCounts);
+
+        int bestSlot = -1;
+        int bestBin = -1;
+        double bestGain = 0;
+        double secondGain = 0; // not splitting has no gain
+        int[] lowCounts = new int[numClasses];
+        int[] highCounts = new int[numClasses];
+        for (int i = 0; i < leaf.slots.length; i++) {
+            int[] counts = leaf.histogram[i];
+            Arrays.fill(lowCounts, 0);
+            System.arraycopy(leaf.seenCounts, 0, highCounts, 0, numClasses);
+            long lowTotal = 0;
+            int slotBin = -1;
+            double slotGain = 0;
+            for (int bin = 0; bin <= edges[leaf.slots[i]].length; bin++) {
+                // boundary before bin, low holds samples of lower bins
+                if (lowTotal > 0 && lowTotal < total) {
+                    double gain = parentImpurity - impurityCalculationMethod.calculateSplitImpurity(lowCounts, highCounts);
+                    if (gain > slotGain) {
+                        slotGain = gain;
+                        slotBin = bin;
+                    }
+                }
+                for (int label = 0; label < numClasses; label++) {
+                    int count = counts[bin * numClasses + label];
+                    lowCounts[label] += count;
+                    highCounts[label] -= count;
+                    lowTotal += count;
+                }
+            }
+            if (slotGain > bestGain) {
+                secondGain = bestGain;
+                bestGain = slotGain;
+                bestSlot = i;
+                bestBin = slotBin;
+            } else if (slotGain > secondGain) {
+                secondGain = slotGain;
+            }
+        }
+        if (bestSlot < 0) {
+            return;
+        }
+        double range = impurityRange();
+        double bound = Math.sqrt(range * range * Math.log(1 / delta) / (2.0 * total));
+        if (bestGain - secondGain > bound || bound < tieThreshold) {
+            split(parent, childIndex, node, leaf, bestSlot, bestBin);
+        }
+    }
+
+    /**
+     * @return Largest impurity, which is impurity of evenly distributed labels.
+     */
+    private double impurityRange() {
+        int[] even = new int[classes.length];
+        Arrays.fill(even, 1);
+        return impurityCalculationMethod.calculateImpurity(even);
+    }
+
+    /**
+     * Replaces leaf by a node of edge feature before bin of candidate slot i, children start with label counts of
+     * their side of the split.
+     */
+    private void split(Node parent, int childIndex, Node node, Leaf leaf, int i, int bin) {
+        int numClasses = classes.length;
+        int slot = leaf.slots[i];
+        Feature feature = edges[slot][bin - 1];
+        int[] lowCounts = new int[numClasses];
+        for (int b = 0; b < bin; b++) {
+            for (int label = 0; label < numClasses; label++) {
+                lowCounts[label] += leaf.histogram[i][b * numClasses + label];
+            }
+        }
+        int[] highCounts = new int[numClasses];
+        for (int label = 0; label < numClasses; label++) {
+            highCounts[label] = leaf.seenCounts[label] - lowCounts[label];
+        }
+
+        int[] childSlots = new int[leaf.slots.length - 1];
+        for (int j = 0, k = 0; j < leaf.slots.length; j++) {
+            if (j != i) {
+                childSlots[k++] = leaf.slots[j];
+            }
+        }
+        Node newNode = Node.newNode(feature);
+        // first child has the feature
+        for (int[] counts : highHasFeature[slot] ? new int[][] { highCounts, lowCounts } : new int[][] { lowCounts, highCounts }) {
+            Label label = ImpurityCalculationMethod.isEmpty(counts) ? node.getLabel() : getMajorityLabel(classes, counts);
+            Node child = Node.newLeafNode(label);
+            leaves.put(child, new Leaf(leaf.depth + 1, childSlots, counts));
+            newNode.addChild(child);
+        }
+        leaves.remove(node);
+        replace(parent, childIndex, newNode);
+    }
+}
@@ -0,0 +1,227 @@
+package decisiontree;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+
+import decisiontree.feature.Feature;
+import decisiontree.feature.ThresholdFeature;
+import decisiontree.label.Label;
+
+/**
+ * Compiles trained trees into method handles. Every split node becomes a guardWithTest of primitive comparison of a
+ * row element with a bound threshold, so the tree is a nest of if/else comparisons which JIT compiler can inline into
+ * the caller. A forest becomes a single handle which adds votes of all trees and returns class index with most votes.
+ *
+ * Handles are best held in static final fields, JIT compiler treats them as constants and inlines them completely.
+ * Trees with more than maxNodes nodes are not composed (too large for one method), they are classified by
+ * {@link FlatTree} instead.
+ *
+ * Only trees split on {@link ThresholdFeature}s which know index of their column can be compiled.
+ *
+ */
+public class TreeCompiler {
+
+    /** Default maximum number of nodes of a tree which is composed into handles. */
+    public static final int DEFAULT_MAX_NODES = 1024;
+
+    private static final MethodHandle ROW_ELEMENT = MethodHandles.arrayElementGetter(double[].class);
+
+    private static final MethodHandle LESS_THAN;
+
+    private static final MethodHandle GREATER_OR_EQUAL;
+
+    private static final MethodHandle IN_SET;
+
+    private static final MethodHandle VOTE;
+
+    private static final MethodHandle NO_VOTES;
+
+    private static final MethodHandle NEW_VOTES;
+
+    private static final MethodHandle ARGMAX;
+
+    private static final MethodHandle FLAT_TREE_CLASSIFY;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            LESS_THAN = lookup.findStatic(TreeCompiler.class, "lessThan",
+                    MethodType.methodType(boolean.class, double.class, double.class));
+            GREATER_OR_EQUAL = lookup.findStatic(TreeCompiler.class, "greaterOrEqual",
+                    MethodType.methodType(boolean.class, double.class, double.class));
+            IN_SET = lookup.findStatic(TreeCompiler.class, "inSet",
+                    MethodType.methodType(boolean.class, double.class, double[].class));
+            VOTE = lookup.findStatic(TreeCompiler.class, "vote",
+                    MethodType.methodType(void.class, int[].class, int.class));
+            NO_VOTES = lookup.findStatic(TreeCompiler.class, "noVotes",
+                    MethodType.methodType(void.class, int[].class, double[].class));
+            NEW_VOTES = lookup.findStatic(TreeCompiler.class, "newVotes",
+                    MethodType.methodType(int[].class, int.class));
+            ARGMAX = lookup.findStatic(TreeCompiler.class, "argmax", MethodType.methodType(int.class, int[].class));
+            FLAT_TREE_CLASSIFY = lookup.findVirtual(FlatTree.class, "classify",
+                    MethodType.methodType(int.class, double[].class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Maximum number of nodes of a tree which is composed into handles. */
+    private final int maxNodes;
+
+    public TreeCompiler() {
+        this(DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * @param maxNodes
+     *            Maximum number of nodes of a tree which is composed into handles, larger trees fall back to
+     *            {@link FlatTree}.
+     */
+    public TreeCompiler(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Compiles trained tree.
+     *
+     * @param tree
+     *            Trained tree.
+     * @param classes
+     *            Labels indexed by class index, must contain every label of the tree.
+     * @return Handle of type (double[])int which returns class index of predicted label of a row.
+     */
+    public MethodHandle compile(DecisionTree tree, Label[] classes) {
+        if (tree.getRoot() == null) {
+            throw new IllegalStateException("Tree is not trained");
+        }
+        if (countNodes(tree.getRoot(), maxNodes + 1) > maxNodes) {
+            return FLAT_TREE_CLASSIFY.bindTo(FlatTree.compile(tree, classes));
+        }
+        return compile(tree.getRoot(), classes);
+    }
+
+    /**
+     * Compiles trained forest into one handle.
+     *
+     * @param trees
+     *            Trained trees.
+     * @param classes
+     *            Labels indexed by class index, must contain every label of the trees.
+     * @return Handle of type (double[])int which returns class index with most votes, ties go to lower class index.
+     */
+    public MethodHandle compileForest(List<? extends DecisionTree> trees, Label[] classes) {
+        // (int[] votes, double[] row) -> argmax(votes) after every tree voted
+        MethodHandle predict = MethodHandles.foldArguments(MethodHandles.dropArguments(ARGMAX, 1, double[].class),
+                compileVotes(trees, classes));
+        // (double[] row) with votes allocated for each call
+        return MethodHandles.foldArguments(predict, MethodHandles.insertArguments(NEW_VOTES, 0, classes.length));
+    }
+
+    /**
+     * Compiles trained forest into one handle which adds votes of every tree into an array.
+     *
+     * @param trees
+     *            Trained trees.
+     * @param classes
+     *            Labels indexed by class index, must contain every label of the trees.
+     * @return Handle of type (int[], double[])void which increments votes indexed by class index for a row.
+     */
+    public MethodHandle compileVotes(List<? extends DecisionTree> trees, Label[] classes) {
+        MethodHandle votes = NO_VOTES;
+        for (DecisionTree tree : trees) {
+            // (int[] votes, double[] row) -> vote(votes, tree(row))
+            MethodHandle treeVote = MethodHandles.filterArguments(VOTE, 1, compile(tree, classes));
+            votes = MethodHandles.foldArguments(treeVote, votes);
+        }
+        return votes;
+    }
+
+    /**
+     * Composes subtree, recursion depth is bounded by maxNodes.
+     */
+    private MethodHandle compile(Node node, Label[] classes) {
+        if (node.isLeaf()) {
+            int classIndex = Arrays.asList(classes).indexOf(node.getLabel());
+            if (classIndex < 0) {
+                throw new IllegalArgumentException("Unknown label " + node.getLabel().getName());
+            }
+            return MethodHandles.dropArguments(MethodHandles.constant(int.class, classIndex), 0, double[].class);
+        }
+        Feature feature = node.getFeature();
+        if (!(feature instanceof ThresholdFeature) || feature.getColumnIndex() < 0 || node.getChildren().size() != 2) {
+            throw new IllegalArgumentException("Can not compile node " + node.getName());
+        }
+        return MethodHandles.guardWithTest(test((ThresholdFeature) feature),
+                compile(node.getChildren().get(0), classes), compile(node.getChildren().get(1), classes));
+    }
+
+    /**
+     * @return Handle of type (double[])boolean which checks if row has feature.
+     */
+    private static MethodHandle test(ThresholdFeature feature) {
+        MethodHandle comparison;
+        switch (feature.getOperator()) {
+        case LESS_THAN:
+            comparison = MethodHandles.insertArguments(LESS_THAN, 1, feature.getFeatureVal());
+            break;
+        case GREATER_OR_EQUAL:
+            comparison = MethodHandles.insertArguments(GREATER_OR_EQUAL, 1, feature.getFeatureVal());
+            break;
+        default:
+            comparison = MethodHandles.insertArguments(IN_SET, 1, (Object) feature.getCategories());
+            break;
+        }
+        MethodHandle element = MethodHandles.insertArguments(ROW_ELEMENT, 1, feature.getColumnIndex());
+        return MethodHandles.filterArguments(comparison, 0, element);
+    }
+
+    /**
+     * Counts nodes of subtree, stops counting once limit is reached.
+     */
+    private static int countNodes(Node node, int limit) {
+        int count = 1;
+        for (Node child : node.getChildren()) {
+            if (count >= limit) {
+                break;
+            }
+            count += countNodes(child, limit - count);
+        }
+        return count;
+    }
+
+    private static boolean lessThan(double value, double threshold) {
+        return value < threshold;
+    }
+
+    private static boolean greaterOrEqual(double value, double threshold) {
+        return value >= threshold;
+    }
+
+    private static boolean inSet(double value, double[] categories) {
+        return !Double.isNaN(value) && Arrays.binarySearch(categories, value) >= 0;
+    }
+
+    private static void vote(int[] votes, int classIndex) {
+        votes[classIndex]++;
+    }
+
+    private static void noVotes(int[] votes, double[] row) {
+    }
+
+    private static int[] newVotes(int numClasses) {
+        return new int[numClasses];
+    }
+
+    private static int argmax(int[] votes) {
+        int best = 0;
+        for (int i = 1; i < votes.length; i++) {
+            if (votes[i] > votes[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,102 @@
+package decisiontree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import decisiontree.feature.Feature;
+import decisiontree.label.DirectionalLabel;
+import decisiontree.label.Label;
+
+/**
+ * Hadoop writable of a trained tree. Nodes are written in depth first order, a leaf as its label name and a split node
+ * as class name of its feature, the feature itself and both children. Labels are read as {@link DirectionalLabel}s.
+ *
+ */
+public class TreeWritable implements Writable {
+
+    private static final byte LEAF = 0;
+
+    private static final byte SPLIT = 1;
+
+    private DecisionTree tree;
+
+    public TreeWritable() {
+        // for deserialization
+    }
+
+    public TreeWritable(DecisionTree tree) {
+        this.tree = tree;
+    }
+
+    public DecisionTree getTree() {
+        return tree;
+    }
+
+    public void setTree(DecisionTree tree) {
+        this.tree = tree;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        if (tree.getRoot() == null) {
+            throw new IllegalStateException("Tree is not trained");
+        }
+        writeNode(out, tree.getRoot());
+    }
+
+    private static void writeNode(DataOutput out, Node node) throws IOException {
+        if (node.isLeaf()) {
+            out.writeByte(LEAF);
+            out.writeUTF(node.getLabel().getName());
+            return;
+        }
+        out.writeByte(SPLIT);
+        out.writeUTF(node.getFeature().getClass().getName());
+        node.getFeature().write(out);
+        out.writeByte(node.getChildren().size());
+        for (Node child : node.getChildren()) {
+            writeNode(out, child);
+        }
+    }
+
+    /**
+     * Reads into a new tree, so trees returned by {@link #getTree()} earlier are not changed when Hadoop reuses this
+     * writable.
+     */
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        tree = new DecisionTree();
+        tree.setRoot(readNode(in));
+    }
+
+    private static Node readNode(DataInput in) throws IOException {
+        byte type = in.readByte();
+        if (type == LEAF) {
+            Label label = DirectionalLabel.newLabel(in.readUTF());
+            return Node.newLeafNode(label);
+        }
+        if (type != SPLIT) {
+            throw new IOException("Unknown node type " + type);
+        }
+        Feature feature = newFeature(in.readUTF());
+        feature.readFields(in);
+        Node node = Node.newNode(feature);
+        int numChildren = in.readByte();
+        for (int i = 0; i < numChildren; i++) {
+            node.addChild(readNode(in));
+        }
+        return node;
+    }
+
+    private static Feature newFeature(String className) throws IOException {
+        try {
+            return (Feature) ReflectionUtils.newInstance(Class.forName(className), null);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unknown feature class " + className, e);
+        }
+    }
+}
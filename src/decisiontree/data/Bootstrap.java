@@ -0,0 +1,140 @@
+package decisiontree.data;
+
+import java.util.SplittableRandom;
+
+/**
+ * Bootstrap sample of a columnar data set held as number of times each row is drawn instead of a list of drawn rows.
+ * Split finders count rows with their weight, so duplicated rows are never copied.
+ *
+ */
+public class Bootstrap {
+
+    /** Probability of drawing a row 0 times from Poisson(1), which is e^-1. */
+    private static final double POISSON_ZERO = Math.exp(-1);
+
+    /** Number of times each data set row is drawn, indexed by row. */
+    private final int[] weights;
+
+    /** Rows with non zero weight in ascending order. */
+    private final int[] rows;
+
+    /** Sum of weights. */
+    private final long total;
+
+    private Bootstrap(int[] weights) {
+        this.weights = weights;
+        int distinct = 0;
+        long sum = 0;
+        for (int weight : weights) {
+            if (weight > 0) {
+                distinct++;
+                sum += weight;
+            }
+        }
+        this.rows = new int[distinct];
+        for (int row = 0, i = 0; row < weights.length; row++) {
+            if (weights[row] > 0) {
+                rows[i++] = row;
+            }
+        }
+        this.total = sum;
+    }
+
+    /**
+     * Sample of explicitly drawn rows.
+     *
+     * @param size
+     *            Number of rows of data set.
+     * @param rows
+     *            Drawn row indices, may contain the same row more than once.
+     * @return Sample weighting each row by number of its occurrences.
+     */
+    public static Bootstrap of(int size, int[] rows) {
+        int[] weights = new int[size];
+        for (int row : rows) {
+            weights[row]++;
+        }
+        return new Bootstrap(weights);
+    }
+
+    /**
+     * Poisson bootstrap, weight of every row is drawn independently from Poisson(1). As number of rows grows it
+     * approaches drawing as many rows with replacement, but needs only one pass and no list of drawn rows.
+     *
+     * @param size
+     *            Number of rows of data set.
+     * @param rows
+     *            Row indices to sample from, other rows get weight 0.
+     * @param random
+     *            Random stream of the tree.
+     * @return Sample with Poisson weights.
+     */
+    public static Bootstrap poisson(int size, int[] rows, SplittableRandom random) {
+        int[] weights = new int[size];
+        for (int row : rows) {
+            weights[row] = nextPoisson(random);
+        }
+        return new Bootstrap(weights);
+    }
+
+    /**
+     * Draws from Poisson(1) by inverting its cumulative distribution, one uniform number per draw. It is also the
+     * weight of a row in online bagging, so online and batch trees draw weights the same way.
+     */
+    public static int nextPoisson(SplittableRandom random) {
+        double u = random.nextDouble();
+        int k = 0;
+        double p = POISSON_ZERO;
+        double cumulative = p;
+        while (u > cumulative && p > 0) {
+            k++;
+            p /= k;
+            cumulative += p;
+        }
+        return k;
+    }
+
+    /**
+     * @return Number of rows of data set.
+     */
+    public int size() {
+        return weights.length;
+    }
+
+    public int getWeight(int row) {
+        return weights[row];
+    }
+
+    /**
+     * @return Weights indexed by row, must not be modified.
+     */
+    public int[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return Rows with non zero weight in ascending order, must not be modified.
+     */
+    public int[] getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Sum of weights, which is size of the equivalent sample drawn with replacement.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public boolean isInBag(int row) {
+        return weights[row] > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Bootstrap [rows=" + rows.length + ", total=" + total + "]";
+    }
+}
@@ -0,0 +1,98 @@
+package decisiontree.data;
+
+/**
+ * Rows of a {@link ColumnarFile} block as primitive column arrays. Batch is reused for the next block, so its arrays
+ * are only valid until then.
+ *
+ */
+public class ColumnBatch {
+
+    private final double[][] columns;
+
+    private final byte[] labelCodes;
+
+    private String[] labels = new String[0];
+
+    private int size;
+
+    private long firstRow;
+
+    public ColumnBatch(int numColumns, int capacity) {
+        this.columns = new double[numColumns][capacity];
+        this.labelCodes = new byte[capacity];
+    }
+
+    void reset(int size, long firstRow, String[] labels) {
+        this.size = size;
+        this.firstRow = firstRow;
+        this.labels = labels;
+    }
+
+    /**
+     * @return Number of rows in batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return labelCodes.length;
+    }
+
+    public int getNumColumns() {
+        return columns.length;
+    }
+
+    /**
+     * @return Index of first row of batch in its file, rows of a file are numbered consecutively.
+     */
+    public long getFirstRow() {
+        return firstRow;
+    }
+
+    /**
+     * @return Values of column, only the first {@link #size()} are valid.
+     */
+    public double[] getColumn(int column) {
+        return columns[column];
+    }
+
+    public double getValue(int column, int row) {
+        return columns[column][row];
+    }
+
+    /**
+     * @return Raw label value of row.
+     */
+    public String getLabel(int row) {
+        return labels[labelCodes[row]];
+    }
+
+    byte[] getLabelCodes() {
+        return labelCodes;
+    }
+
+    /**
+     * Copies feature values of row.
+     *
+     * @param row
+     *            Row index.
+     * @param out
+     *            Array of length number of columns.
+     * @return Filled array.
+     */
+    public double[] getRow(int row, double[] out) {
+        for (int c = 0; c < columns.length; c++) {
+            out[c] = columns[c][row];
+        }
+        return out;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ColumnBatch [size=" + size + ", firstRow=" + firstRow + "]";
+    }
+}
@@ -0,0 +1,76 @@
+package decisiontree.data;
+
+import java.util.Optional;
+
+import decisiontree.label.Label;
+
+/**
+ * Data sample which is a view of single row of {@link ColumnarDataSet}. It does not copy any values.
+ *
+ */
+public class ColumnarDataSample implements DataSample {
+
+    private final ColumnarDataSet dataSet;
+
+    private final int row;
+
+    ColumnarDataSample(ColumnarDataSet dataSet, int row) {
+        this.dataSet = dataSet;
+        this.row = row;
+    }
+
+    @Override
+    public Optional<Object> getValue(String column) {
+        int index = dataSet.getColumnIndex(column);
+        if (index >= 0) {
+            return Optional.of(dataSet.getValue(index, row));
+        }
+        if (column.equalsIgnoreCase(dataSet.getLabelColumn())) {
+            return Optional.of(dataSet.getLabelValue(row));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getDoubleValue(String column) {
+        int index = dataSet.getColumnIndex(column);
+        return index >= 0 ? dataSet.getValue(index, row) : Double.NaN;
+    }
+
+    /**
+     * Reads value by index without looking up column name, if the index belongs to column in this data set.
+     */
+    @Override
+    public double getDoubleValue(int columnIndex, String column) {
+        String[] columnNames = dataSet.getColumnNames();
+        // features of this data set share its column name strings, so the check is an identity comparison
+        if (columnIndex >= 0 && columnIndex < columnNames.length && columnNames[columnIndex].equalsIgnoreCase(column)) {
+            return dataSet.getValue(columnIndex, row);
+        }
+        return getDoubleValue(column);
+    }
+
+    @Override
+    public Label getLabel() {
+        return dataSet.getLabel(row);
+    }
+
+    public ColumnarDataSet getDataSet() {
+        return dataSet;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ColumnarDataSample [row=" + row + ", dataSet=" + dataSet + "]";
+    }
+}
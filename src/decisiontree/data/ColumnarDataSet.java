@@ -0,0 +1,465 @@
+package decisiontree.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import decisiontree.label.DirectionalLabel;
+import decisiontree.label.Label;
+
+/**
+ * Column oriented training data set. Every feature column is stored as one primitive double array and labels are
+ * stored as byte codes which index into a small table of interned labels. Data set is built once by a reader (or
+ * mapper) and shared by every tree trained on it, single rows are exposed as lightweight {@link ColumnarDataSample}
+ * views.
+ *
+ */
+public class ColumnarDataSet {
+
+    /** All column names as read, including label column. */
+    private final String[] header;
+
+    /** Feature column names, header without label column. */
+    private final String[] columnNames;
+
+    /** Column name which contains data labels. */
+    private final String labelColumn;
+
+    /** Feature column name to index into columns. */
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+
+    /** One array of values per feature column. */
+    private final double[][] columns;
+
+    /** Label code of every row. */
+    private final byte[] labels;
+
+    /** Interned labels, label code is index into this array. */
+    private final Label[] classes;
+
+    /** Raw label values as read, used when data is written back out. */
+    private final String[] classValues;
+
+    /** Number of rows. */
+    private final int size;
+
+    /** Lazily computed row indices sorted by value of each column. */
+    private final int[][] sortedRows;
+
+    private ColumnarDataSet(String[] header, String[] columnNames, String labelColumn, double[][] columns, byte[] labels,
+            Label[] classes, String[] classValues, int size) {
+        this.header = header;
+        this.columnNames = columnNames;
+        this.labelColumn = labelColumn;
+        this.columns = columns;
+        this.labels = labels;
+        this.classes = classes;
+        this.classValues = classValues;
+        this.size = size;
+        this.sortedRows = new int[columns.length][];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnIndex.put(columnNames[i], i);
+        }
+    }
+
+    /**
+     * @return Number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return All column names as read, including label column.
+     */
+    public String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * @return Feature column names.
+     */
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    public String getLabelColumn() {
+        return labelColumn;
+    }
+
+    /**
+     * @return Index of feature column or -1 if data set does not have such column.
+     */
+    public int getColumnIndex(String column) {
+        Integer index = columnIndex.get(column.toLowerCase());
+        return index != null ? index : -1;
+    }
+
+    /**
+     * @return Values of feature column. Returned array is not copied and must not be modified.
+     */
+    public double[] getColumn(int column) {
+        return columns[column];
+    }
+
+    /**
+     * @return Values of feature column. Returned array is not copied and must not be modified.
+     * @throws IllegalArgumentException
+     *             If data set does not have the column.
+     */
+    public double[] getColumn(String column) {
+        int index = getColumnIndex(column);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown column " + column);
+        }
+        return columns[index];
+    }
+
+    public double getValue(int column, int row) {
+        return columns[column][row];
+    }
+
+    public byte getLabelCode(int row) {
+        return labels[row];
+    }
+
+    public Label getLabel(int row) {
+        return classes[labels[row]];
+    }
+
+    /**
+     * @return Raw label value of row as it was read.
+     */
+    public String getLabelValue(int row) {
+        return classValues[labels[row]];
+    }
+
+    /**
+     * @return Interned labels indexed by label code.
+     */
+    public Label[] getClasses() {
+        return classes;
+    }
+
+    public int getNumClasses() {
+        return classes.length;
+    }
+
+    /**
+     * Copy feature values of a row into provided array.
+     */
+    public double[] getRow(int row, double[] out) {
+        for (int i = 0; i < columns.length; i++) {
+            out[i] = columns[i][row];
+        }
+        return out;
+    }
+
+    /**
+     * Indices of all rows sorted by value of column, rows with equal values keep their order. Order is computed once
+     * and cached, so every tree trained on this data set shares it.
+     * 
+     * @return Sorted row indices. Returned array is not copied and must not be modified.
+     */
+    public int[] getSortedRows(int column) {
+        synchronized (sortedRows) {
+            if (sortedRows[column] == null) {
+                sortedRows[column] = sortIndices(columns[column], allRows());
+            }
+            return sortedRows[column];
+        }
+    }
+
+    /**
+     * Stable merge sort of indices by values they point to.
+     */
+    private static int[] sortIndices(double[] values, int[] indices) {
+        int[] src = indices;
+        int[] dst = new int[indices.length];
+        for (int width = 1; width < indices.length; width <<= 1) {
+            for (int from = 0; from < indices.length; from += width << 1) {
+                int mid = Math.min(from + width, indices.length);
+                int to = Math.min(from + (width << 1), indices.length);
+                int i = from;
+                int j = mid;
+                int k = from;
+                while (i < mid && j < to) {
+                    dst[k++] = Double.compare(values[src[j]], values[src[i]]) < 0 ? src[j++] : src[i++];
+                }
+                while (i < mid) {
+                    dst[k++] = src[i++];
+                }
+                while (j < to) {
+                    dst[k++] = src[j++];
+                }
+            }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        return src;
+    }
+
+    /**
+     * @return Single row view.
+     */
+    public ColumnarDataSample getSample(int row) {
+        return new ColumnarDataSample(this, row);
+    }
+
+    /**
+     * @return Indices of all rows.
+     */
+    public int[] allRows() {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    /**
+     * @return List of data sample views over rows of this data set.
+     */
+    public List<DataSample> asSamples(int[] rows) {
+        return new AbstractList<DataSample>() {
+            @Override
+            public DataSample get(int index) {
+                return new ColumnarDataSample(ColumnarDataSet.this, rows[index]);
+            }
+
+            @Override
+            public int size() {
+                return rows.length;
+            }
+        };
+    }
+
+    /**
+     * @return List of data sample views over all rows of this data set.
+     */
+    public List<DataSample> asSamples() {
+        return asSamples(allRows());
+    }
+
+    /**
+     * Row indices of data samples which are views of this data set.
+     */
+    public int[] rowsOf(List<DataSample> samples) {
+        int[] rows = new int[samples.size()];
+        int i = 0;
+        for (DataSample sample : samples) {
+            if (!(sample instanceof ColumnarDataSample) || ((ColumnarDataSample) sample).getDataSet() != this) {
+                throw new IllegalArgumentException("Data sample is not a view of this data set: " + sample);
+            }
+            rows[i++] = ((ColumnarDataSample) sample).getRow();
+        }
+        return rows;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ColumnarDataSet [columns=" + Arrays.toString(columnNames) + ", size=" + size + "]";
+    }
+
+    /**
+     * Static factory method for data set builder.
+     *
+     * @param labelColumn
+     *            Column name which contains data labels.
+     * @param header
+     *            All column names in order in which values are added.
+     */
+    public static Builder newBuilder(String labelColumn, String[] header) {
+        return new Builder(labelColumn, header, DirectionalLabel::newLabel);
+    }
+
+    /**
+     * Static factory method for data set builder with custom labels, for example with more than two classes.
+     *
+     * @param labelColumn
+     *            Column name which contains data labels.
+     * @param header
+     *            All column names in order in which values are added.
+     * @param labelFactory
+     *            Creates label from raw label value.
+     */
+    public static Builder newBuilder(String labelColumn, String[] header, Function<String, Label> labelFactory) {
+        return new Builder(labelColumn, header, labelFactory);
+    }
+
+    /**
+     * Builder which appends rows into growable column buffers.
+     */
+    public static class Builder {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final String[] header;
+
+        private final String[] columnNames;
+
+        private final String labelColumn;
+
+        /** Position of label column in header or -1 for unlabeled data. */
+        private final int labelPosition;
+
+        private double[][] columns;
+
+        private byte[] labels;
+
+        private final List<Label> classes = new ArrayList<>();
+
+        private final List<String> classValues = new ArrayList<>();
+
+        private final Function<String, Label> labelFactory;
+
+        private int size;
+
+        /** Most rows buffers grow to. */
+        private int maxCapacity = Integer.MAX_VALUE;
+
+        private Builder(String labelColumn, String[] header, Function<String, Label> labelFactory) {
+            this.labelColumn = labelColumn;
+            this.labelFactory = labelFactory;
+            this.header = new String[header.length];
+            int labelPosition = -1;
+            for (int i = 0; i < header.length; i++) {
+                this.header[i] = header[i].toLowerCase();
+                if (labelColumn != null && this.header[i].equalsIgnoreCase(labelColumn)) {
+                    labelPosition = i;
+                }
+            }
+            this.labelPosition = labelPosition;
+            this.columnNames = new String[labelPosition >= 0 ? header.length - 1 : header.length];
+            for (int i = 0, j = 0; i < header.length; i++) {
+                if (i != labelPosition) {
+                    columnNames[j++] = this.header[i];
+                }
+            }
+            this.columns = new double[columnNames.length][INITIAL_CAPACITY];
+            this.labels = new byte[INITIAL_CAPACITY];
+        }
+
+        /**
+         * Add row of raw values ordered as header.
+         */
+        public Builder addRow(String[] values) {
+            ExchangeDataSample.checkArgument(header.length == values.length);
+            ensureCapacity(size + 1);
+            for (int i = 0, j = 0; i < values.length; i++) {
+                if (i == labelPosition) {
+                    labels[size] = labelCode(values[i]);
+                } else {
+                    columns[j++][size] = values[i] != null ? Double.parseDouble(values[i]) : Double.NaN;
+                }
+            }
+            size++;
+            return this;
+        }
+
+        /**
+         * Add row of feature values ordered as feature columns and its raw label value.
+         */
+        public Builder addRow(double[] values, String label) {
+            ExchangeDataSample.checkArgument(columnNames.length == values.length);
+            ensureCapacity(size + 1);
+            for (int j = 0; j < values.length; j++) {
+                columns[j][size] = values[j];
+            }
+            labels[size] = labelCode(label);
+            size++;
+            return this;
+        }
+
+        /**
+         * Replace row of feature values ordered as feature columns and its raw label value, for example to keep a
+         * reservoir sample of a stream of rows.
+         */
+        public Builder setRow(int row, double[] values, String label) {
+            ExchangeDataSample.checkArgument(columnNames.length == values.length);
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+            }
+            for (int j = 0; j < values.length; j++) {
+                columns[j][row] = values[j];
+            }
+            labels[row] = labelCode(label);
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Limit growth of column buffers to number of rows which is going to be added at most, so buffers never hold
+         * more memory than needed for that many rows.
+         */
+        public Builder setMaxCapacity(int maxCapacity) {
+            this.maxCapacity = maxCapacity;
+            return this;
+        }
+
+        /**
+         * @return Number of feature columns.
+         */
+        public int getNumColumns() {
+            return columnNames.length;
+        }
+
+        /**
+         * @return Position of label column in header or -1 for unlabeled data.
+         */
+        public int getLabelPosition() {
+            return labelPosition;
+        }
+
+        /**
+         * Returns code of interned label. There is only a handful of classes so linear search is fine.
+         */
+        private byte labelCode(String value) {
+            Label label = labelFactory.apply(value);
+            for (int i = 0; i < classes.size(); i++) {
+                if (classes.get(i).equals(label)) {
+                    return (byte) i;
+                }
+            }
+            if (classes.size() > Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct labels in column " + labelColumn);
+            }
+            classes.add(label);
+            classValues.add(value);
+            return (byte) (classes.size() - 1);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > labels.length) {
+                int newCapacity = Math.max(capacity, Math.min(maxCapacity, labels.length + (labels.length >> 1)));
+                for (int j = 0; j < columns.length; j++) {
+                    columns[j] = Arrays.copyOf(columns[j], newCapacity);
+                }
+                labels = Arrays.copyOf(labels, newCapacity);
+            }
+        }
+
+        /**
+         * Builds data set. Full buffers are handed over instead of copied, so builder must not be used afterwards.
+         */
+        public ColumnarDataSet build() {
+            double[][] trimmed = new double[columns.length][];
+            for (int j = 0; j < columns.length; j++) {
+                trimmed[j] = columns[j].length == size ? columns[j] : Arrays.copyOf(columns[j], size);
+            }
+            return new ColumnarDataSet(header, columnNames, labelColumn, trimmed, labels.length == size ? labels : Arrays.copyOf(labels, size),
+                    classes.toArray(new Label[classes.size()]), classValues.toArray(new String[classValues.size()]), size);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package decisiontree.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Binary columnar file of training data, written by {@link ColumnarFileWriter}. Rows are stored in blocks, each block
+ * holds its columns one after another and is compressed on its own, so a reader decodes a block straight into
+ * primitive column arrays. Footer indexes blocks with their row ranges and per column min/max statistics, so splits
+ * are computed without reading blocks.
+ *
+ * Layout, all numbers big endian:
+ *
+ * <pre>
+ * header: int magic, short version, short reserved, UTF codec class ("" if uncompressed),
+ *         UTF label column, int number of columns, UTF column name for every column
+ * block:  int rows, long first row, byte number of labels, UTF raw label value for every label,
+ *         int payload length, int compressed length, compressed payload
+ * footer: int number of blocks, for every block long offset, int rows, long first row,
+ *         double min and double max of every column; then long footer offset, int magic
+ * </pre>
+ *
+ * Payload holds columns one after another, each starting with an encoding byte. Columns whose values are all short
+ * decimals, such as prices and counts, are {@link #DECIMAL} encoded: a scale byte k followed by differences of
+ * consecutive values times 10^k as zig-zag varints. Other columns are {@link #RAW} encoded as rows doubles with bytes
+ * shuffled, first bytes of all values, then second bytes and so on, which makes similar values compress well. Columns
+ * are followed by a label code byte per row, which indexes the labels of the block.
+ *
+ */
+public final class ColumnarFile {
+
+    /** "RFC1" */
+    public static final int MAGIC = 0x52464331;
+
+    public static final short VERSION = 1;
+
+    /** Extension of columnar files. */
+    public static final String EXTENSION = ".rfc";
+
+    /** Size of footer trailer, footer offset and magic. */
+    static final int TRAILER_SIZE = 12;
+
+    /** Column encoding of doubles with shuffled bytes. */
+    static final byte RAW = 0;
+
+    /** Column encoding of decimals as scaled differences. */
+    static final byte DECIMAL = 1;
+
+    /** Powers of ten, decimals with more fractional digits are stored raw. */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9 };
+
+    /** Decimals times 10^k must stay below 2^53 to be restored exactly. */
+    private static final long MAX_SCALED = 1L << 53;
+
+    private ColumnarFile() {
+    }
+
+    /**
+     * Header of a columnar file.
+     */
+    public static class Header {
+
+        private final String labelColumn;
+
+        private final String[] columnNames;
+
+        private final String codecClass;
+
+        Header(String labelColumn, String[] columnNames, String codecClass) {
+            this.labelColumn = labelColumn;
+            this.columnNames = columnNames;
+            this.codecClass = codecClass;
+        }
+
+        public String getLabelColumn() {
+            return labelColumn;
+        }
+
+        /**
+         * @return Feature column names in order of column indices.
+         */
+        public String[] getColumnNames() {
+            return columnNames.clone();
+        }
+
+        public int getNumColumns() {
+            return columnNames.length;
+        }
+
+        /**
+         * @return Compression codec of blocks, null for uncompressed blocks.
+         */
+        public CompressionCodec newCodec(Configuration conf) throws IOException {
+            if (codecClass.isEmpty()) {
+                return null;
+            }
+            try {
+                return (CompressionCodec) ReflectionUtils.newInstance(conf.getClassByName(codecClass), conf);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown compression codec " + codecClass, e);
+            }
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeUTF(codecClass);
+            out.writeUTF(labelColumn);
+            out.writeInt(columnNames.length);
+            for (String column : columnNames) {
+                out.writeUTF(column);
+            }
+        }
+
+        static Header read(DataInput in) throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a columnar file");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported columnar file version " + version);
+            }
+            in.readShort();
+            String codecClass = in.readUTF();
+            String labelColumn = in.readUTF();
+            String[] columnNames = new String[in.readInt()];
+            for (int i = 0; i < columnNames.length; i++) {
+                columnNames[i] = in.readUTF();
+            }
+            return new Header(labelColumn, columnNames, codecClass);
+        }
+    }
+
+    /**
+     * Footer entry of a block.
+     */
+    public static class BlockInfo {
+
+        private final long offset;
+
+        private final int rows;
+
+        private final long firstRow;
+
+        private final double[] min;
+
+        private final double[] max;
+
+        BlockInfo(long offset, int rows, long firstRow, double[] min, double[] max) {
+            this.offset = offset;
+            this.rows = rows;
+            this.firstRow = firstRow;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * @return Position of block in file.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return Index of first row of block in file.
+         */
+        public long getFirstRow() {
+            return firstRow;
+        }
+
+        /**
+         * @return Smallest value of column in block, NaN values are ignored.
+         */
+        public double getMin(int column) {
+            return min[column];
+        }
+
+        /**
+         * @return Largest value of column in block, NaN values are ignored.
+         */
+        public double getMax(int column) {
+            return max[column];
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeLong(offset);
+            out.writeInt(rows);
+            out.writeLong(firstRow);
+            for (int c = 0; c < min.length; c++) {
+                out.writeDouble(min[c]);
+                out.writeDouble(max[c]);
+            }
+        }
+
+        static BlockInfo read(DataInput in, int numColumns) throws IOException {
+            long offset = in.readLong();
+            int rows = in.readInt();
+            long firstRow = in.readLong();
+            double[] min = new double[numColumns];
+            double[] max = new double[numColumns];
+            for (int c = 0; c < numColumns; c++) {
+                min[c] = in.readDouble();
+                max[c] = in.readDouble();
+            }
+            return new BlockInfo(offset, rows, firstRow, min, max);
+        }
+    }
+
+    /**
+     * Reads header of columnar file.
+     */
+    public static Header readHeader(FileSystem fs, Path path) throws IOException {
+        try (FSDataInputStream in = fs.open(path)) {
+            return Header.read(in);
+        }
+    }
+
+    /**
+     * Reads block index from footer of columnar file.
+     *
+     * @throws IOException
+     *             If file can not be read or is not a complete columnar file.
+     */
+    public static List<BlockInfo> readIndex(FileSystem fs, Path path) throws IOException {
+        long length = fs.getFileStatus(path).getLen();
+        try (FSDataInputStream in = fs.open(path)) {
+            Header header = Header.read(in);
+            if (length < TRAILER_SIZE) {
+                throw new IOException("Truncated columnar file: " + path);
+            }
+            in.seek(length - TRAILER_SIZE);
+            long footerOffset = in.readLong();
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Columnar file has no footer: " + path);
+            }
+            in.seek(footerOffset);
+            int numBlocks = in.readInt();
+            List<BlockInfo> blocks = new ArrayList<>(numBlocks);
+            for (int b = 0; b < numBlocks; b++) {
+                blocks.add(BlockInfo.read(in, header.getNumColumns()));
+            }
+            return blocks;
+        }
+    }
+
+    /**
+     * Appends column to payload with the smallest exact encoding.
+     *
+     * @param column
+     *            Values of column, only the first rows are encoded.
+     * @param rows
+     *            Number of rows of block.
+     * @param payload
+     *            Payload of block.
+     */
+    static void encodeColumn(double[] column, int rows, ByteArrayOutputStream payload) {
+        int scale = decimalScale(column, rows);
+        if (scale >= 0) {
+            payload.write(DECIMAL);
+            payload.write(scale);
+            long previous = 0;
+            for (int row = 0; row < rows; row++) {
+                long scaled = Math.round(column[row] * POWERS_OF_TEN[scale]);
+                long delta = scaled - previous;
+                writeVarLong((delta << 1) ^ (delta >> 63), payload);
+                previous = scaled;
+            }
+        } else {
+            payload.write(RAW);
+            byte[] shuffled = new byte[rows * 8];
+            for (int row = 0; row < rows; row++) {
+                long bits = Double.doubleToRawLongBits(column[row]);
+                for (int b = 0; b < 8; b++) {
+                    shuffled[b * rows + row] = (byte) (bits >>> (56 - 8 * b));
+                }
+            }
+            payload.write(shuffled, 0, shuffled.length);
+        }
+    }
+
+    /**
+     * Finds smallest k such that every value is exactly an integer divided by 10^k.
+     *
+     * @return Scale or -1 if there is none, for example for NaN values.
+     */
+    private static int decimalScale(double[] column, int rows) {
+        for (int scale = 0; scale < POWERS_OF_TEN.length; scale++) {
+            boolean exact = true;
+            for (int row = 0; row < rows && exact; row++) {
+                exact = isDecimal(column[row], scale);
+            }
+            if (exact) {
+                return scale;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDecimal(double value, int scale) {
+        double scaled = Math.rint(value * POWERS_OF_TEN[scale]);
+        if (!(Math.abs(scaled) < MAX_SCALED)) {
+            return false;
+        }
+        // restored value must be bit for bit the same, which also rules out negative zero
+        return Double.doubleToRawLongBits(restore((long) scaled, scale)) == Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Integer and power of ten are both exact, so a single division rounds to the nearest double like parsing the
+     * decimal does.
+     */
+    private static double restore(long scaled, int scale) {
+        return scale == 0 ? (double) scaled : scaled / POWERS_OF_TEN[scale];
+    }
+
+    private static void writeVarLong(long value, ByteArrayOutputStream out) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Decodes column of payload.
+     *
+     * @param payload
+     *            Payload of block.
+     * @param position
+     *            Position of column in payload.
+     * @param rows
+     *            Number of rows of block.
+     * @param column
+     *            Filled with rows values.
+     * @return Position of next column in payload.
+     */
+    static int decodeColumn(byte[] payload, int position, int rows, double[] column) {
+        byte encoding = payload[position++];
+        if (encoding == DECIMAL) {
+            int scale = payload[position++];
+            long previous = 0;
+            for (int row = 0; row < rows; row++) {
+                long zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = payload[position++];
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                column[row] = restore(previous, scale);
+            }
+            return position;
+        }
+        for (int row = 0; row < rows; row++) {
+            long bits = 0;
+            for (int b = 0; b < 8; b++) {
+                bits = (bits << 8) | (payload[position + b * rows + row] & 0xFF);
+            }
+            column[row] = Double.longBitsToDouble(bits);
+        }
+        return position + rows * 8;
+    }
+
+    /**
+     * Reads block at current position of stream into batch.
+     *
+     * @param in
+     *            Stream positioned at start of block.
+     * @param codec
+     *            Compression codec of blocks, null if uncompressed.
+     * @param numColumns
+     *            Number of columns.
+     * @param batch
+     *            Batch reused for the block.
+     * @return Batch holding block, the given one if it was large enough.
+     */
+    public static ColumnBatch readBlock(DataInputStream in, CompressionCodec codec, int numColumns, ColumnBatch batch)
+            throws IOException {
+        int rows = in.readInt();
+        long firstRow = in.readLong();
+        String[] labels = new String[in.readByte()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = in.readUTF();
+        }
+        byte[] payload = new byte[in.readInt()];
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        if (codec == null) {
+            System.arraycopy(compressed, 0, payload, 0, payload.length);
+        } else {
+            Decompressor decompressor = CodecPool.getDecompressor(codec);
+            try (DataInputStream decompressed = new DataInputStream(
+                    codec.createInputStream(new ByteArrayInputStream(compressed), decompressor))) {
+                decompressed.readFully(payload);
+            } finally {
+                CodecPool.returnDecompressor(decompressor);
+            }
+        }
+
+        if (batch == null || batch.getCapacity() < rows || batch.getNumColumns() != numColumns) {
+            batch = new ColumnBatch(numColumns, rows);
+        }
+        batch.reset(rows, firstRow, labels);
+        int position = 0;
+        for (int c = 0; c < numColumns; c++) {
+            position = decodeColumn(payload, position, rows, batch.getColumn(c));
+        }
+        System.arraycopy(payload, position, batch.getLabelCodes(), 0, rows);
+        return batch;
+    }
+}
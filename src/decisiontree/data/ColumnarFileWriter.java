@@ -0,0 +1,225 @@
+package decisiontree.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Compressor;
+
+import decisiontree.reader.Reader;
+
+/**
+ * Writes rows streamed by a {@link Reader} into a {@link ColumnarFile}. Only the current block is buffered, so memory
+ * does not depend on number of rows.
+ *
+ */
+public class ColumnarFileWriter implements Reader.RowHandler, Closeable {
+
+    /** Default number of rows per block. */
+    public static final int DEFAULT_BLOCK_ROWS = 8192;
+
+    private final FSDataOutputStream out;
+
+    private final String labelColumn;
+
+    private final int blockRows;
+
+    private final CompressionCodec codec;
+
+    private ColumnarFile.Header header;
+
+    private final List<ColumnarFile.BlockInfo> blocks = new ArrayList<>();
+
+    /** Rows of the current block. */
+    private int size;
+
+    private long numRows;
+
+    private double[][] columns;
+
+    private byte[] labelCodes;
+
+    /** Raw label values of the current block. */
+    private final List<String> labels = new ArrayList<>();
+
+    private double[] min;
+
+    private double[] max;
+
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *            Stream of the file, closed by {@link #close()}.
+     * @param labelColumn
+     *            Name of the label column.
+     * @param blockRows
+     *            Number of rows per block.
+     * @param codec
+     *            Compression codec of blocks, null to write uncompressed blocks.
+     */
+    public ColumnarFileWriter(FSDataOutputStream out, String labelColumn, int blockRows, CompressionCodec codec) {
+        if (blockRows < 1) {
+            throw new IllegalArgumentException("Number of rows per block must be positive: " + blockRows);
+        }
+        this.out = out;
+        this.labelColumn = labelColumn;
+        this.blockRows = blockRows;
+        this.codec = codec;
+    }
+
+    /**
+     * Writes file header.
+     *
+     * @param header
+     *            All column names including label column.
+     */
+    @Override
+    public void start(String[] header) throws IOException {
+        if (this.header != null) {
+            throw new IllegalStateException("Header is already written");
+        }
+        List<String> columnNames = new ArrayList<>();
+        for (String column : header) {
+            if (!column.equalsIgnoreCase(labelColumn)) {
+                columnNames.add(column.toLowerCase());
+            }
+        }
+        this.header = new ColumnarFile.Header(labelColumn.toLowerCase(),
+                columnNames.toArray(new String[columnNames.size()]), codec != null ? codec.getClass().getName() : "");
+        this.header.write(out);
+        this.columns = new double[columnNames.size()][blockRows];
+        this.labelCodes = new byte[blockRows];
+        this.min = new double[columnNames.size()];
+        this.max = new double[columnNames.size()];
+        resetStatistics();
+    }
+
+    /**
+     * Adds row, writes block once it is full.
+     */
+    @Override
+    public void row(double[] values, String label) throws IOException {
+        if (header == null) {
+            throw new IllegalStateException("Header is not written");
+        }
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, found " + values.length);
+        }
+        if (label == null) {
+            // a null cell can not be written as a label, every row of a training file needs one
+            throw new IllegalArgumentException("Missing value of label column " + labelColumn);
+        }
+        for (int c = 0; c < values.length; c++) {
+            double value = values[c];
+            columns[c][size] = value;
+            // comparisons are false for NaN, so NaN values do not affect statistics
+            if (value < min[c]) {
+                min[c] = value;
+            }
+            if (value > max[c]) {
+                max[c] = value;
+            }
+        }
+        labelCodes[size] = labelCode(label);
+        size++;
+        if (size == blockRows) {
+            writeBlock();
+        }
+    }
+
+    private byte labelCode(String label) {
+        int code = labels.indexOf(label);
+        if (code < 0) {
+            // number of labels is written as a signed byte in the block header
+            if (labels.size() >= Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct labels in column " + labelColumn);
+            }
+            labels.add(label);
+            code = labels.size() - 1;
+        }
+        return (byte) code;
+    }
+
+    private void resetStatistics() {
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        labels.clear();
+        size = 0;
+    }
+
+    private void writeBlock() throws IOException {
+        payload.reset();
+        for (int c = 0; c < columns.length; c++) {
+            ColumnarFile.encodeColumn(columns[c], size, payload);
+        }
+        payload.write(labelCodes, 0, size);
+
+        compressed.reset();
+        if (codec == null) {
+            payload.writeTo(compressed);
+        } else {
+            Compressor compressor = CodecPool.getCompressor(codec);
+            try (OutputStream compressing = codec.createOutputStream(compressed, compressor)) {
+                payload.writeTo(compressing);
+            } finally {
+                CodecPool.returnCompressor(compressor);
+            }
+        }
+
+        blocks.add(new ColumnarFile.BlockInfo(out.getPos(), size, numRows, min.clone(), max.clone()));
+        out.writeInt(size);
+        out.writeLong(numRows);
+        out.writeByte(labels.size());
+        for (String label : labels) {
+            out.writeUTF(label);
+        }
+        out.writeInt(payload.size());
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+        numRows += size;
+        resetStatistics();
+    }
+
+    /**
+     * @return Number of rows written so far.
+     */
+    public long getNumRows() {
+        return numRows + size;
+    }
+
+    /**
+     * Writes the last block and footer and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (header == null) {
+                start(new String[] { labelColumn });
+            }
+            if (size > 0) {
+                writeBlock();
+            }
+            long footerOffset = out.getPos();
+            out.writeInt(blocks.size());
+            for (ColumnarFile.BlockInfo block : blocks) {
+                block.write(out);
+            }
+            out.writeLong(footerOffset);
+            out.writeInt(ColumnarFile.MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -14,7 +14,30 @@ public interface DataSample {
      * @return Data value.
      */
     Optional<Object> getValue(String column);
-    
+
+    /**
+     * Get sample data value from specified column as primitive double.
+     *
+     * @return Data value or NaN if sample does not have the column.
+     */
+    default double getDoubleValue(String column) {
+        Optional<Object> value = getValue(column);
+        return value.isPresent() ? Double.parseDouble(value.get().toString()) : Double.NaN;
+    }
+
+    /**
+     * Get sample data value as primitive double from column whose index is already resolved, for example by a feature.
+     *
+     * @param columnIndex
+     *            Index of column in data rows or -1 if unknown.
+     * @param column
+     *            Name of column, used if sample does not know column indices.
+     * @return Data value or NaN if sample does not have the column.
+     */
+    default double getDoubleValue(int columnIndex, String column) {
+        return getDoubleValue(column);
+    }
+
     /**
      * Assigned label of training data.
      * 
@@ -8,6 +8,7 @@ import java.util.Map;
 
 import org.apache.hadoop.io.WritableComparable;
 
+import decisiontree.data.ColumnarDataSet;
 import decisiontree.data.DataSample;
 
 
@@ -22,6 +23,14 @@ public interface Feature extends WritableComparable {
      */
     boolean belongsTo(DataSample dataSample);
     
+    /**
+     * Checks if column value has this feature.
+     * 
+     * @param value Value of this feature's column.
+     * @return true if value has this feature and false otherwise.
+     */
+    boolean belongsTo(double value);
+    
     /**
      * 
      * @return a string, name of the column the feature belongs to
@@ -34,6 +43,29 @@ public interface Feature extends WritableComparable {
      */
     double getFeatureVal();
 
+    /**
+     * 
+     * @return index of the feature's column in data rows or -1 if feature can be evaluated only by column name
+     */
+    default int getColumnIndex() {
+        return -1;
+    }
+
+    /**
+     * Checks if row of feature values has this feature.
+     * 
+     * @param row Feature values ordered as columns of data set the feature was created for.
+     * @return true if row has this feature and false otherwise.
+     * @throws UnsupportedOperationException If feature does not know index of its column.
+     */
+    default boolean belongsTo(double[] row) {
+        int index = getColumnIndex();
+        if (index < 0) {
+            throw new UnsupportedOperationException("Column index of feature is unknown: " + this);
+        }
+        return belongsTo(row[index]);
+    }
+
     /**
      * Split data according to if it has this feature.
      * 
@@ -42,7 +74,7 @@ public interface Feature extends WritableComparable {
      */
     default List<List<DataSample>> split(List<DataSample> data) {
         List<List<DataSample>> result = new ArrayList<>();
-        Map<Boolean, List<DataSample>> split = data.parallelStream().collect(partitioningBy(dataSample -> belongsTo(dataSample)));
+        Map<Boolean, List<DataSample>> split = data.stream().collect(partitioningBy(dataSample -> belongsTo(dataSample)));
         
         if (split.get(true).size() > 0) {
             result.add(split.get(true));
@@ -56,4 +88,30 @@ public interface Feature extends WritableComparable {
         }
         return result;
     }
+    
+    /**
+     * Partition range of row indices in place according to if row has this feature, like quicksort partitioning. Rows
+     * which have the feature are moved to the front of the range.
+     * 
+     * @param data Columnar data set.
+     * @param rows Row indices.
+     * @param from Start of the range, inclusive.
+     * @param to End of the range, exclusive.
+     * @return Index of first row in the range which does not have this feature.
+     */
+    default int partition(ColumnarDataSet data, int[] rows, int from, int to) {
+        double[] column = data.getColumn(getColumn());
+        int i = from;
+        int j = to - 1;
+        while (i <= j) {
+            if (belongsTo(column[rows[i]])) {
+                i++;
+            } else {
+                int tmp = rows[i];
+                rows[i] = rows[j];
+                rows[j--] = tmp;
+            }
+        }
+        return i;
+    }
 }
@@ -3,7 +3,6 @@ package decisiontree.feature;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.Optional;
 import java.util.function.Predicate;
 
 import main.Serializer;
@@ -28,6 +27,12 @@ public class PredicateFeature implements Feature {
     /** Value for the predicate if applicable. */
     private double featureValue;
 
+    /**
+     * Constructor for deserialization, use {@link #newFeature} otherwise.
+     */
+    public PredicateFeature() {
+    }
+
     /**
      * Constructor.
      * 
@@ -46,13 +51,18 @@ public class PredicateFeature implements Feature {
     /**
      * {@inheritDoc}
      */
-    @SuppressWarnings("unchecked")
     @Override
-    public boolean belongsTo(DataSample dataSample) { // TODO implement other splits (in different type of feature)   	
-        Optional<Object> optionalValue = dataSample.getValue(column);
-        Double optionalDouble = Double.parseDouble(optionalValue.get().toString());
-        boolean b = optionalValue.isPresent() ? predicate.test(optionalDouble) : false;
-        return b;
+    public boolean belongsTo(DataSample dataSample) { // TODO implement other splits (in different type of feature)
+        double value = dataSample.getDoubleValue(column);
+        return belongsTo(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean belongsTo(double value) {
+        return !Double.isNaN(value) && predicate.test(value);
     }
 
     @Override
@@ -126,21 +136,42 @@ public class PredicateFeature implements Feature {
    
    @Override
    public void readFields(DataInput in) throws IOException {
-
+       column = in.readUTF();
+       label = in.readUTF();
+       featureValue = in.readDouble();
+       byte[] bytes = new byte[in.readInt()];
+       in.readFully(bytes);
+       try {
+           predicate = (SerializableDoublePredicate) Serializer.deserialize(bytes);
+       } catch (ClassNotFoundException e) {
+           throw new IOException("Class of predicate of feature " + label + " not found", e);
+       }
    }
 
    @Override
    public void write(DataOutput out) throws IOException {
-	   byte[] bytes = Serializer.serialize(predicate);
-	   out.write(bytes);
-       out.writeBytes(column);
-       out.writeBytes(label);
+       out.writeUTF(column);
+       out.writeUTF(label);
        out.writeDouble(featureValue);
+       // predicate is a serialized lambda, it can be read only where its capturing class is on the classpath
+       byte[] bytes = Serializer.serialize(predicate);
+       out.writeInt(bytes.length);
+       out.write(bytes);
    }
 
-@Override
-public int compareTo(Object o) {
-	// TODO Auto-generated method stub
-	return 0;
-}
+   /**
+    * Orders features by column, feature value and label.
+    */
+   @Override
+   public int compareTo(Object o) {
+       PredicateFeature other = (PredicateFeature) o;
+       int result = column.compareTo(other.column);
+       if (result == 0) {
+           result = Double.compare(featureValue, other.featureValue);
+       }
+       if (result == 0) {
+           result = label.compareTo(other.label);
+       }
+       return result;
+   }
 }
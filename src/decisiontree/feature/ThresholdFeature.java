@@ -0,0 +1,259 @@
+package decisiontree.feature;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import decisiontree.data.DataSample;
+
+/**
+ * Feature which compares a single column value with a primitive threshold or checks membership in a set of
+ * categories. Unlike {@link PredicateFeature} it needs no lambda, so it is evaluated without boxing or parsing and is
+ * serialized as a few primitives.
+ *
+ */
+public class ThresholdFeature implements Feature {
+
+    /**
+     * Comparison of column value with feature value.
+     */
+    public enum Operator {
+
+        /** Column value is less than threshold. */
+        LESS_THAN("<"),
+
+        /** Column value is greater than or equal to threshold. */
+        GREATER_OR_EQUAL(">="),
+
+        /** Column value is one of categories. */
+        IN_SET("in");
+
+        private final String symbol;
+
+        private Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    /** Data column used by feature. */
+    private String column;
+
+    /** Index of column in data rows, -1 if unknown. */
+    private int columnIndex;
+
+    private Operator operator;
+
+    /** Threshold for comparison operators. */
+    private double threshold;
+
+    /** Sorted categories for set membership operator. */
+    private double[] categories;
+
+    /**
+     * Constructor for deserialization, use static factory methods otherwise.
+     */
+    public ThresholdFeature() {
+    }
+
+    private ThresholdFeature(String column, int columnIndex, Operator operator, double threshold, double[] categories) {
+        this.column = column;
+        this.columnIndex = columnIndex;
+        this.operator = operator;
+        this.threshold = threshold;
+        this.categories = categories;
+    }
+
+    /**
+     * Static factory method for feature column < threshold.
+     *
+     * @param column Column to use in data.
+     * @param columnIndex Index of column in data rows or -1 if unknown.
+     * @param threshold Threshold.
+     * @return New feature.
+     */
+    public static ThresholdFeature lessThan(String column, int columnIndex, double threshold) {
+        return new ThresholdFeature(column, columnIndex, Operator.LESS_THAN, threshold, null);
+    }
+
+    /**
+     * Static factory method for feature column >= threshold.
+     *
+     * @param column Column to use in data.
+     * @param columnIndex Index of column in data rows or -1 if unknown.
+     * @param threshold Threshold.
+     * @return New feature.
+     */
+    public static ThresholdFeature greaterOrEqual(String column, int columnIndex, double threshold) {
+        return new ThresholdFeature(column, columnIndex, Operator.GREATER_OR_EQUAL, threshold, null);
+    }
+
+    /**
+     * Static factory method for feature column in {categories}.
+     *
+     * @param column Column to use in data.
+     * @param columnIndex Index of column in data rows or -1 if unknown.
+     * @param categories Category values.
+     * @return New feature.
+     */
+    public static ThresholdFeature inSet(String column, int columnIndex, double... categories) {
+        double[] sorted = categories.clone();
+        Arrays.sort(sorted);
+        return new ThresholdFeature(column, columnIndex, Operator.IN_SET, sorted.length > 0 ? sorted[0] : Double.NaN, sorted);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean belongsTo(DataSample dataSample) {
+        return belongsTo(dataSample.getDoubleValue(columnIndex, column));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean belongsTo(double value) {
+        switch (operator) {
+        case LESS_THAN:
+            return value < threshold;
+        case GREATER_OR_EQUAL:
+            return value >= threshold;
+        default:
+            return Arrays.binarySearch(categories, value) >= 0 && !Double.isNaN(value);
+        }
+    }
+
+    @Override
+    public String getColumn() {
+        return column;
+    }
+
+    @Override
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return Threshold, for set membership the smallest category.
+     */
+    @Override
+    public double getFeatureVal() {
+        return threshold;
+    }
+
+    /**
+     * @return Sorted categories for set membership or null for comparisons.
+     */
+    public double[] getCategories() {
+        return categories;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(column);
+        out.writeInt(columnIndex);
+        out.writeByte(operator.ordinal());
+        if (operator == Operator.IN_SET) {
+            out.writeInt(categories.length);
+            for (double category : categories) {
+                out.writeDouble(category);
+            }
+        } else {
+            out.writeDouble(threshold);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        column = in.readUTF();
+        columnIndex = in.readInt();
+        operator = Operator.values()[in.readByte()];
+        if (operator == Operator.IN_SET) {
+            categories = new double[in.readInt()];
+            for (int i = 0; i < categories.length; i++) {
+                categories[i] = in.readDouble();
+            }
+            threshold = categories.length > 0 ? categories[0] : Double.NaN;
+        } else {
+            categories = null;
+            threshold = in.readDouble();
+        }
+    }
+
+    /**
+     * Orders features by column, operator and threshold.
+     */
+    @Override
+    public int compareTo(Object o) {
+        ThresholdFeature other = (ThresholdFeature) o;
+        int result = column.compareTo(other.column);
+        if (result == 0) {
+            result = operator.compareTo(other.operator);
+        }
+        if (result == 0) {
+            result = Double.compare(threshold, other.threshold);
+        }
+        if (result == 0 && operator == Operator.IN_SET) {
+            for (int i = 0; i < Math.min(categories.length, other.categories.length) && result == 0; i++) {
+                result = Double.compare(categories[i], other.categories[i]);
+            }
+            if (result == 0) {
+                result = Integer.compare(categories.length, other.categories.length);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((column == null) ? 0 : column.hashCode());
+        result = prime * result + ((operator == null) ? 0 : operator.hashCode());
+        result = prime * result + Double.hashCode(threshold);
+        result = prime * result + Arrays.hashCode(categories);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        ThresholdFeature other = (ThresholdFeature) obj;
+        if (column == null) {
+            if (other.column != null)
+                return false;
+        } else if (!column.equals(other.column))
+            return false;
+        return operator == other.operator && Double.compare(threshold, other.threshold) == 0
+                && Arrays.equals(categories, other.categories);
+    }
+
+    @Override
+    public String toString() {
+        if (operator == Operator.IN_SET) {
+            return String.format("%s %s %s", column, operator.getSymbol(), Arrays.toString(categories));
+        }
+        return String.format("%s %s %s", column, operator.getSymbol(), threshold);
+    }
+}
@@ -2,38 +2,47 @@ package decisiontree.impurity;
 
 import static decisiontree.utils.MathUtils.log2;
 
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.IOException;
-import java.util.List;
-import java.util.stream.Collectors;
-
-import decisiontree.data.DataSample;
-import decisiontree.label.Label;
-
 /**
- * Entropy calculator. -p log2 p - (1 - p)log2(1 - p) - this is the expected information, in bits, conveyed by somebody
+ * Entropy calculator. -sum(p log2 p) over labels - this is the expected information, in bits, conveyed by somebody
  * telling you the class of a randomly drawn example; the purer the set of examples, the more predictable this message
  * becomes and the smaller the expected information.
  * 
+ * Calculated from counts as (N log2 N - sum(n log2 n)) / N, n log2 n is looked up in a precomputed table for small
+ * counts.
  *
  */
 public class EntropyCalculationMethod implements ImpurityCalculationMethod {
 
+    /** Counts below this size are looked up in table. */
+    private static final int TABLE_SIZE = 1 << 16;
+
+    /** n * log2(n) for n < TABLE_SIZE. */
+    private static final double[] N_LOG_N = new double[TABLE_SIZE];
+
+    static {
+        for (int n = 1; n < TABLE_SIZE; n++) {
+            N_LOG_N[n] = n * log2(n);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public double calculateImpurity(List<DataSample> splitData) {
-        List<Label> labels = splitData.parallelStream().map(data -> data.getLabel()).distinct().collect(Collectors.toList());
-        if (labels.size() > 1) {
-            double p = getEmpiricalProbability(splitData, labels.get(0), labels.get(1)); // TODO fix to multiple labels
-            double entropy = -1.0 * p * log2(p) - ((1.0 - p) * log2(1.0 - p));
-            return entropy;
-        } else if (labels.size() == 1) {
-            return 0.0; // if only one label data is pure
-        } else {
+    public double calculateImpurity(int[] labelCounts) {
+        long total = 0;
+        double sum = 0.0;
+        for (int count : labelCounts) {
+            total += count;
+            sum += nLogN(count);
+        }
+        if (total == 0) {
             throw new IllegalStateException("This should never happen. Probably a bug.");
         }
+        return Math.max(0.0, (nLogN(total) - sum) / total); // pure data has 0 entropy, clamp rounding errors
+    }
+
+    private static double nLogN(long n) {
+        return n < TABLE_SIZE ? N_LOG_N[(int) n] : n * log2(n);
     }
 }
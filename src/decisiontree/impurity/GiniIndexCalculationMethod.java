@@ -0,0 +1,27 @@
+package decisiontree.impurity;
+
+/**
+ * Gini index calculator. 1 - sum(p^2) over labels - this is the probability that a randomly drawn example would be
+ * misclassified if it was labeled randomly according to label distribution of the data. It is 0 for pure data and
+ * cheaper to calculate than entropy as it needs no logarithms.
+ *
+ */
+public class GiniIndexCalculationMethod implements ImpurityCalculationMethod {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double calculateImpurity(int[] labelCounts) {
+        long total = 0;
+        double sumOfSquares = 0.0;
+        for (int count : labelCounts) {
+            total += count;
+            sumOfSquares += (double) count * count;
+        }
+        if (total == 0) {
+            throw new IllegalStateException("This should never happen. Probably a bug.");
+        }
+        return 1.0 - sumOfSquares / ((double) total * total);
+    }
+}
@@ -1,5 +1,7 @@
 package decisiontree.impurity;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import decisiontree.data.DataSample;
@@ -11,32 +13,96 @@ import decisiontree.label.Label;
  * should return high value in the first case and low value in the second. That means that during training we will
  * prefer second split as that will provide most information. Most popular methods are entropy and gini index.
  * 
- * Annotated as functional interface to allow lambda usage.
+ * Impurity is defined over label counts so it can be calculated for any number of labels without looking at the data
+ * again. Annotated as functional interface to allow lambda usage.
  *
  */
 @FunctionalInterface
 public interface ImpurityCalculationMethod {
 
     /**
-     * Calculates impurity value. High impurity implies low information gain and more random labels of data which in
-     * turn means that split is not very good.
+     * Calculates impurity value from label counts of data subset. High impurity implies low information gain and more
+     * random labels of data which in turn means that split is not very good.
+     * 
+     * @param labelCounts
+     *            Number of samples per label.
+     * 
+     * @return Impurity.
+     */
+    double calculateImpurity(int[] labelCounts);
+
+    /**
+     * Calculates impurity value of data subset. Labels are counted in a single pass.
      * 
      * @param splitData
      *            Data subset on which impurity is calculated.
      * 
      * @return Impurity.
      */
-    double calculateImpurity(List<DataSample> splitData);
+    default double calculateImpurity(List<DataSample> splitData) {
+        return calculateImpurity(countLabels(splitData, new ArrayList<>()));
+    }
+
+    /**
+     * Calculates impurity of a binary split as average of impurities of its children weighted by their number of
+     * samples, so a split cutting off a few samples does not look as good as a balanced one.
+     * 
+     * @param leftCounts
+     *            Label counts of data which has the feature.
+     * @param rightCounts
+     *            Label counts of data which does not have the feature.
+     * 
+     * @return Split impurity.
+     */
+    default double calculateSplitImpurity(int[] leftCounts, int[] rightCounts) {
+        long leftTotal = 0;
+        for (int count : leftCounts) {
+            leftTotal += count;
+        }
+        long rightTotal = 0;
+        for (int count : rightCounts) {
+            rightTotal += count;
+        }
+        if (leftTotal == 0) {
+            return calculateImpurity(rightCounts);
+        } else if (rightTotal == 0) {
+            return calculateImpurity(leftCounts);
+        }
+        return (leftTotal * calculateImpurity(leftCounts) + rightTotal * calculateImpurity(rightCounts)) / (leftTotal + rightTotal);
+    }
+
+    static boolean isEmpty(int[] labelCounts) {
+        for (int count : labelCounts) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-    
     /**
-     * Calculate and return empirical probability of positive class. p+ = n+ / (n+ + n-).
+     * Counts labels of data in a single pass.
      * 
-     * @param splitData Data on which positive label probability is calculated.
-     * @return Empirical probability.
+     * @param data
+     *            Data samples.
+     * @param labels
+     *            Empty list which is filled with distinct labels in order of appearance.
+     * @return Counts of labels, index is position of label in labels list.
      */
-    default double getEmpiricalProbability(List<DataSample> splitData, Label positive, Label negative) {
-        // TODO cache calculated counts
-        return (double)splitData.parallelStream().filter(d -> d.getLabel().equals(positive)).count() / splitData.size();
+    static int[] countLabels(List<DataSample> data, List<Label> labels) {
+        int[] labelCounts = new int[2];
+        for (DataSample sample : data) {
+            Label label = sample.getLabel();
+            int index = labels.indexOf(label);
+            if (index < 0) {
+                index = labels.size();
+                labels.add(label);
+                if (index == labelCounts.length) {
+                    labelCounts = Arrays.copyOf(labelCounts, index * 2);
+                }
+            }
+            labelCounts[index]++;
+        }
+        return Arrays.copyOf(labelCounts, labels.size());
     }
 }
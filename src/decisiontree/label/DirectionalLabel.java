@@ -11,9 +11,9 @@ import java.io.IOException;
  */
 public class DirectionalLabel extends Label {
     
-    public static final Label UP_LABEL = DirectionalLabel.newLabel(true);
+    public static final Label UP_LABEL = new DirectionalLabel(true);
 
-    public static final Label DOWN_LABEL = DirectionalLabel.newLabel(false);
+    public static final Label DOWN_LABEL = new DirectionalLabel(false);
     
     /** Label. */
     private boolean label;
@@ -31,14 +31,14 @@ public class DirectionalLabel extends Label {
      */
     public DirectionalLabel(String labelDirection) {
         super();
-        boolean label;
-        if(labelDirection.equalsIgnoreCase("0")){
-        	label = false;
-        }
-        else {
-        	label = true;
-        }
-        this.label = label;
+        this.label = !isDown(labelDirection);
+    }
+
+    /**
+     * Raw label value "0" as well as name "false" and print value "Down" mean down, anything else means up.
+     */
+    private static boolean isDown(String labelDirection) {
+        return labelDirection.equals("0") || labelDirection.equalsIgnoreCase("false") || labelDirection.equalsIgnoreCase("down");
     }
     
     /**
@@ -58,17 +58,18 @@ public class DirectionalLabel extends Label {
     }
     
     /**
-     * Static factory method.
+     * Static factory method. Returns interned label so no new object is allocated.
      */
     public static Label newLabel(Boolean label) {
-        return new DirectionalLabel(label);
+        return label ? UP_LABEL : DOWN_LABEL;
     }
 
     /**
-     * Static factory method.
+     * Static factory method, accepts raw label value as well as label name or print value. Returns interned label so
+     * no new object is allocated.
      */
     public static Label newLabel(String label) {
-        return new DirectionalLabel(label);
+        return isDown(label) ? DOWN_LABEL : UP_LABEL;
     }
     
     /**
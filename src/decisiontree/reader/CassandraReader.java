@@ -1,95 +1,285 @@
 package decisiontree.reader;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import com.datastax.driver.core.Cluster;
-import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ColumnMetadata;
 import com.datastax.driver.core.DataType;
-import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
-import com.datastax.driver.core.ColumnDefinitions.Definition;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.TokenRange;
 
+import decisiontree.data.ColumnarDataSet;
 import decisiontree.data.DataSample;
-import decisiontree.data.ExchangeDataSample;
-import decisiontree.utils.MathUtils;
 
+/**
+ * Reads a table by scanning ranges of the token ring concurrently with a prepared, paged statement. Values are
+ * decoded straight into primitive doubles. Ranges are handed to the row handler in token order, so rows are read in
+ * the same order whatever the concurrency.
+ */
 public class CassandraReader implements Reader {
 
-	private static Cluster cluster;
-	private static Session session;
-	private static String[] header;
-	private static String[] types;
-	
+	/** Default contact point. */
+	public static final String DEFAULT_HOST = "192.168.56.101";
+
+	/** Default keyspace. */
+	public static final String DEFAULT_KEYSPACE = "exchange";
+
+	/**
+	 * Default number of rows fetched per page. Rows are passed on page by page, so only a few pages of every range being
+	 * scanned are held in memory.
+	 */
+	public static final int DEFAULT_FETCH_SIZE = 5000;
+
+	/** Partition and clustering columns of tick tables, they are not features. */
+	private static final List<String> KEY_COLUMNS = Arrays.asList("year", "datetime");
+
+	/** Number of ranges scanned per thread by default, so a slow range does not leave other threads idle. */
+	private static final int RANGES_PER_THREAD = 4;
+
+	private final Cluster.Builder clusterBuilder;
+	private final String keyspace;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private int concurrency = Runtime.getRuntime().availableProcessors();
+	private int splits;
+	private boolean timeKeys;
+
+	private String[] header;
+	private ColumnarDataSet dataSet;
+
+	public CassandraReader() {
+		this(Cluster.builder().addContactPoint(DEFAULT_HOST), DEFAULT_KEYSPACE);
+	}
+
+	/**
+	 *
+	 * @param clusterBuilder
+	 *     builder of the cluster connection, e.g. pointing to a local or embedded instance
+	 * @param keyspace
+	 *     keyspace of read tables
+	 */
+	public CassandraReader(Cluster.Builder clusterBuilder, String keyspace) {
+		this.clusterBuilder = clusterBuilder;
+		this.keyspace = keyspace;
+	}
+
+	/**
+	 * @param fetchSize
+	 *     number of rows fetched per page
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * @param concurrency
+	 *     number of ranges scanned at the same time
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+		}
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * @param splits
+	 *     minimum number of ranges the token ring is split into, 0 for a few ranges per thread
+	 */
+	public void setSplits(int splits) {
+		if (splits < 0) {
+			throw new IllegalArgumentException("Number of splits must not be negative: " + splits);
+		}
+		this.splits = splits;
+	}
+
+	/**
+	 * @param timeKeys
+	 *     whether year and datetime key columns are read too, e.g. to cut time windows; a timestamp is read as epoch
+	 *     milliseconds. They are left out by default, so exported training data holds only features and label.
+	 */
+	public void setTimeKeys(boolean timeKeys) {
+		this.timeKeys = timeKeys;
+	}
+
 	@Override
-	public List<List<DataSample>> readData(String table, int split) {
-		cluster = Cluster.builder().addContactPoint("192.168.56.101").build();
-		session = cluster.connect("exchange");
-		
-		ResultSet results = session.execute("SELECT * FROM " + table);
-		//ResultSet results = session.execute("select * from bid_eurusd where year=2009 and datetime < '2009-05-07 03:00:00+0000'");
-		
-		ColumnDefinitions cDefs = results.getColumnDefinitions();
-		header = new String[cDefs.size()-2];
-		types = new String[cDefs.size()-2];
-		
-		int i = 0;
-		for(Definition def: cDefs) {
-			String name = def.getName();
-			DataType type = def.getType();
-			if(!name.equalsIgnoreCase("year") && !name.equalsIgnoreCase("datetime")){
-				header[i] = name.toLowerCase();
-				types[i] = type.toString();
-				i++;
+	public List<List<DataSample>> readData(String table, int split, long seed) throws IOException {
+		dataSet = Reader.readDataSet(this, table);
+
+		return Reader.splitData(dataSet, split, seed);
+	}
+
+	@Override
+	public void forEachRow(String table, RowHandler handler) throws IOException {
+		try (Cluster cluster = clusterBuilder.build()) {
+			Session session = cluster.connect(keyspace);
+			Metadata metadata = cluster.getMetadata();
+			KeyspaceMetadata keyspaceMetadata = metadata.getKeyspace(keyspace);
+			TableMetadata tableMetadata = keyspaceMetadata == null ? null : keyspaceMetadata.getTable(table);
+			if (tableMetadata == null) {
+				throw new IOException("Table not found: " + keyspace + "." + table);
+			}
+
+			List<String> columns = new ArrayList<>();
+			List<DataType.Name> types = new ArrayList<>();
+			for (ColumnMetadata column : tableMetadata.getColumns()) {
+				if (timeKeys || !KEY_COLUMNS.contains(column.getName().toLowerCase())) {
+					columns.add(column.getName());
+					types.add(column.getType().getName());
+				}
 			}
+			header = new String[columns.size()];
+			StringBuilder select = new StringBuilder("SELECT ");
+			for (int i = 0; i < header.length; i++) {
+				header[i] = columns.get(i).toLowerCase();
+				select.append(i > 0 ? ", " : "").append(Metadata.quote(columns.get(i)));
+			}
+			StringBuilder partitionKey = new StringBuilder();
+			for (ColumnMetadata column : tableMetadata.getPartitionKey()) {
+				partitionKey.append(partitionKey.length() > 0 ? ", " : "").append(Metadata.quote(column.getName()));
+			}
+			// a range ending at the minimum token runs to the end of the ring, so unwrapped ranges need no special case
+			select.append(" FROM ").append(Metadata.quote(tableMetadata.getName()))
+				.append(" WHERE token(").append(partitionKey).append(") > ? AND token(").append(partitionKey).append(") <= ?");
+			PreparedStatement statement = session.prepare(select.toString());
+
+			int labelPosition = Reader.labelPosition(header);
+			handler.start(header);
+
+			RangeScan scan = new RangeScan(session, statement, types.toArray(new DataType.Name[types.size()]), labelPosition);
+			List<RowBuffer.BlockSource> parts = new ArrayList<>();
+			for (TokenRange range : ranges(metadata)) {
+				parts.add(sink -> scan.read(range, sink));
+			}
+			// ranges are handed over in token order, a range being scanned buffers at most a few pages
+			RowBuffer.streamInOrder(parts, concurrency, handler);
+		}
+	}
+
+	/**
+	 * @return ranges of the whole ring in token order, split to give every thread a few ranges
+	 */
+	private List<TokenRange> ranges(Metadata metadata) {
+		List<TokenRange> ring = new ArrayList<>();
+		for (TokenRange range : metadata.getTokenRanges()) {
+			ring.addAll(range.unwrap());
+		}
+		if (ring.isEmpty()) {
+			throw new IllegalStateException("Token metadata of the cluster is not available");
+		}
+		int target = splits > 0 ? splits : concurrency * RANGES_PER_THREAD;
+		int parts = (target + ring.size() - 1) / ring.size();
+		List<TokenRange> ranges = new ArrayList<>();
+		for (TokenRange range : ring) {
+			ranges.addAll(parts > 1 ? range.splitEvenly(parts) : Collections.singletonList(range));
+		}
+		Collections.sort(ranges);
+		return ranges;
+	}
+
+	/**
+	 * Reads one token range page by page into primitive values, every page is passed on as a block.
+	 */
+	private class RangeScan {
+
+		private final Session session;
+		private final PreparedStatement statement;
+		private final DataType.Name[] types;
+		private final int labelPosition;
+
+		RangeScan(Session session, PreparedStatement statement, DataType.Name[] types, int labelPosition) {
+			this.session = session;
+			this.statement = statement;
+			this.types = types;
+			this.labelPosition = labelPosition;
 		}
-	
-		List<List<DataSample>> trainAndTest = new ArrayList<>();
-		trainAndTest.add(new ArrayList<>());
-		trainAndTest.add(new ArrayList<>());
-		for (Row row : results) {
-			String[] values = new String[header.length];
-			
-			for(int j = 0; j < header.length; j++){
-				String val = getValueByType(row, types[j], j+2);
-				values[j] = val;
+
+		void read(TokenRange range, RowBuffer.BlockSink sink) throws InterruptedException {
+			double[] values = new double[labelPosition >= 0 ? types.length - 1 : types.length];
+			RowBuffer rows = new RowBuffer(values.length);
+			// iterating the result set fetches next pages on demand
+			for (Row row : session.execute(statement.bind().setToken(0, range.getStart()).setToken(1, range.getEnd())
+					.setFetchSize(fetchSize))) {
+				String label = null;
+				for (int j = 0, k = 0; j < types.length; j++) {
+					if (j == labelPosition) {
+						label = getValueByType(row, types[j], j);
+					} else {
+						values[k++] = getDoubleByType(row, types[j], j);
+					}
+				}
+				rows.add(values, label);
+				if (rows.size() == fetchSize) {
+					sink.accept(rows);
+					rows = new RowBuffer(values.length);
+				}
 			}
-			
-			int randInt = MathUtils.randomInt(0, 9);
-            
-            if(randInt >= split) {
-      	      trainAndTest.get(0).add(ExchangeDataSample.newExchangeDataSample("Label", header, values));
-            }
-            else {
-          	  trainAndTest.get(1).add(ExchangeDataSample.newExchangeDataSample("Label", header, values));
-            }
+			if (rows.size() > 0) {
+				sink.accept(rows);
+			}
+		}
+	}
+
+	public static double getDoubleByType(Row row, DataType.Name type, int index) {
+		if (row.isNull(index)) {
+			return Double.NaN;
+		}
+		switch(type) {
+		    case FLOAT:
+		    	return row.getFloat(index);
+		    case DOUBLE:
+		    	return row.getDouble(index);
+		    case INT:
+		    	return row.getInt(index);
+		    case BIGINT:
+		    	return row.getLong(index);
+		    case TIMESTAMP:
+		    	return row.getTimestamp(index).getTime();
+		    default:
+		    	return Double.NaN;
 		}
-		
-		cluster.close();
-		
-		return trainAndTest;
 	}
-	
-	public static String getValueByType(Row row, String type, int index) {
-		String value = null;
+
+	public static String getValueByType(Row row, DataType.Name type, int index) {
+		if (row.isNull(index)) {
+			return null;
+		}
 		switch(type) {
-		    case "float":
-		    	value = String.valueOf(row.getFloat(index));
-		    	break;
-		    case "int":
-		    	value = String.valueOf(row.getInt(index));
-		    	break;
+		    case FLOAT:
+		    	return String.valueOf(row.getFloat(index));
+		    case DOUBLE:
+		    	return String.valueOf(row.getDouble(index));
+		    case INT:
+		    	return String.valueOf(row.getInt(index));
+		    case BIGINT:
+		    	return String.valueOf(row.getLong(index));
+		    case TEXT:
+		    case VARCHAR:
+		    	return row.getString(index);
 		    default:
-		    	break;
+		    	return null;
 		}
-		return value;
 	}
 
 	@Override
 	public String[] getHeader() {
-		// TODO Auto-generated method stub
 		return header;
 	}
 
-}
\ No newline at end of file
+	@Override
+	public ColumnarDataSet getDataSet() {
+		return dataSet;
+	}
+
+}
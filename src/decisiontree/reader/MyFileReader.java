@@ -1,49 +1,198 @@
 package decisiontree.reader;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
+import decisiontree.data.ColumnarDataSet;
 import decisiontree.data.DataSample;
-import decisiontree.data.ExchangeDataSample;
-import decisiontree.utils.MathUtils;
+import decisiontree.utils.ParseUtils;
 
+/**
+ * Reads comma separated files with a header line. The file is memory mapped and split into chunks of whole lines,
+ * which are parsed in parallel straight from bytes into primitive values. Chunks are handed to the row handler in file
+ * order, so rows are read in the same order whatever the number of threads.
+ */
 public class MyFileReader implements Reader {
-	
-	private static String[] header;
-	
-	public List<List<DataSample>> readData(String filename, int split) throws IOException {
-		List<List<DataSample>> trainAndTest = new ArrayList<>();
-		trainAndTest.add(new ArrayList<>());
-		trainAndTest.add(new ArrayList<>());
-        
- 		BufferedReader reader = new BufferedReader(new FileReader(filename));
-        header = reader.readLine().split(",");
-       
-        String strNextLine;
-        while ((strNextLine = reader.readLine()) != null) {
-           String[] nextLine = strNextLine.split(",");
-           if (nextLine != null) {
-              int randInt = MathUtils.randomInt(0, 9);
-              
-              if(randInt >= split) {
-        	      trainAndTest.get(0).add(ExchangeDataSample.newExchangeDataSample("Label", header, nextLine));
-              }
-              else {
-            	  trainAndTest.get(1).add(ExchangeDataSample.newExchangeDataSample("Label", header, nextLine));
-              }
-           }
-        }
-        reader.close();
-        return trainAndTest;
-    }
+
+	/** Default number of bytes per chunk. */
+	public static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+
+	/** Number of distinct labels per chunk whose String is reused. */
+	private static final int MAX_CACHED_LABELS = 64;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private String[] header;
+
+	private ColumnarDataSet dataSet;
+
+	/**
+	 * @param chunkSize
+	 *     number of bytes per chunk, a chunk is extended to the end of its last line
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param threads
+	 *     number of chunks parsed at the same time
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	@Override
+	public List<List<DataSample>> readData(String filename, int split, long seed) throws IOException {
+		dataSet = Reader.readDataSet(this, filename);
+
+		return Reader.splitData(dataSet, split, seed);
+	}
+
+	@Override
+	public void forEachRow(String filename, RowHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long headerEnd = lineEnd(channel, 0, size);
+			if (headerEnd == 0) {
+				throw new IOException("Missing header: " + filename);
+			}
+			header = decode(channel, 0, headerEnd).trim().split(",");
+			int labelPosition = Reader.labelPosition(header);
+			handler.start(header);
+
+			List<Callable<RowBuffer>> chunks = new ArrayList<>();
+			for (long start = headerEnd; start < size; ) {
+				long end = start + chunkSize >= size ? size : lineEnd(channel, start + chunkSize, size);
+				long from = start;
+				chunks.add(() -> parseChunk(channel, from, end, labelPosition));
+				start = end;
+			}
+			RowBuffer.handleInOrder(chunks, threads, handler);
+		}
+	}
+
+	/**
+	 * @return position after the first line break at or after position, size if there is none
+	 */
+	private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	private static String decode(FileChannel channel, long from, long to) throws IOException {
+		return StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, from, to - from)).toString();
+	}
+
+	/**
+	 * Parses whole lines of [from, to) into a buffer of rows, straight from the mapped file.
+	 */
+	private RowBuffer parseChunk(FileChannel channel, long from, long to, int labelPosition) throws IOException {
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+		int length = bytes.limit();
+
+		double[] values = new double[labelPosition >= 0 ? header.length - 1 : header.length];
+		RowBuffer rows = new RowBuffer(values.length);
+		List<String> labels = new ArrayList<>();
+		List<byte[]> labelBytes = new ArrayList<>();
+		int lineStart = 0;
+		while (lineStart < length) {
+			int lineEnd = lineStart;
+			while (lineEnd < length && bytes.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			int end = lineEnd > lineStart && bytes.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+			if (end > lineStart) {
+				String label = null;
+				int field = 0;
+				for (int i = 0, fieldStart = lineStart; fieldStart <= end; field++) {
+					int fieldEnd = fieldStart;
+					while (fieldEnd < end && bytes.get(fieldEnd) != ',') {
+						fieldEnd++;
+					}
+					if (field == labelPosition) {
+						label = label(bytes, fieldStart, fieldEnd, labels, labelBytes);
+					} else if (field < header.length) {
+						values[i++] = ParseUtils.parseDouble(bytes, fieldStart, fieldEnd);
+					}
+					fieldStart = fieldEnd + 1;
+				}
+				if (field != header.length) {
+					throw new IOException("Expected " + header.length + " values: " + ParseUtils.decode(bytes, lineStart, end));
+				}
+				rows.add(values, label);
+			}
+			lineStart = lineEnd + 1;
+		}
+		return rows;
+	}
+
+	/**
+	 * @return label of bytes [from, to), the same String for the same label as long as a chunk has few labels
+	 */
+	private static String label(ByteBuffer bytes, int from, int to, List<String> labels, List<byte[]> labelBytes) {
+		for (int i = 0; i < labels.size(); i++) {
+			if (equals(labelBytes.get(i), bytes, from, to)) {
+				return labels.get(i);
+			}
+		}
+		String label = ParseUtils.decode(bytes, from, to);
+		if (labels.size() < MAX_CACHED_LABELS) {
+			labels.add(label);
+			labelBytes.add(label.getBytes(StandardCharsets.UTF_8));
+		}
+		return label;
+	}
+
+	/**
+	 * Compares encoded label with bytes, so labels of any characters are found.
+	 */
+	private static boolean equals(byte[] label, ByteBuffer bytes, int from, int to) {
+		if (label.length != to - from) {
+			return false;
+		}
+		for (int i = 0; i < label.length; i++) {
+			if (label[i] != bytes.get(from + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
 
 	@Override
 	public String[] getHeader() {
-		// TODO Auto-generated method stub
 		return header;
 	}
 
-}
\ No newline at end of file
+	@Override
+	public ColumnarDataSet getDataSet() {
+		return dataSet;
+	}
+
+}
@@ -1,13 +1,123 @@
 package decisiontree.reader;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
 
+import decisiontree.data.ColumnarDataSet;
 import decisiontree.data.DataSample;
 
 public interface Reader {
 	
-	List<List<DataSample>> readData(String target, int split) throws IOException;
+	/** Name of the label column of read data. */
+	String LABEL_COLUMN = "Label";
+	
+	/**
+	 * Handles rows of target as they are read, so target never has to fit into memory.
+	 */
+	interface RowHandler {
+		
+		/**
+		 * Called once before the first row.
+		 * 
+		 * @param header
+		 *     all column names of target including label column
+		 */
+		default void start(String[] header) throws IOException {
+		}
+		
+		/**
+		 * @param values
+		 *     feature values ordered as header without label column, array is reused for the next row
+		 * @param label
+		 *     raw label value
+		 */
+		void row(double[] values, String label) throws IOException;
+	}
+	
+	/**
+	 * Reads all rows of target and assigns them to training and test views.
+	 * 
+	 * @param split
+	 *     number of rows out of 10 assigned to test data
+	 * @param seed
+	 *     seed of the assignment, the same seed assigns the same rows of the same target
+	 */
+	List<List<DataSample>> readData(String target, int split, long seed) throws IOException;
+	
+	default List<List<DataSample>> readData(String target, int split) throws IOException {
+		return readData(target, split, 0);
+	}
+	
+	/**
+	 * Streams rows of target to handler without keeping them.
+	 */
+	void forEachRow(String target, RowHandler handler) throws IOException;
 	
 	String[] getHeader();
+	
+	/**
+	 * @return Columnar data set backing the samples returned by the last readData call.
+	 */
+	ColumnarDataSet getDataSet();
+	
+	/**
+	 * Reads all rows of target into a columnar data set.
+	 */
+	static ColumnarDataSet readDataSet(Reader reader, String target) throws IOException {
+		List<ColumnarDataSet.Builder> builder = new ArrayList<>(1);
+		reader.forEachRow(target, new RowHandler() {
+			
+			@Override
+			public void start(String[] header) {
+				builder.add(ColumnarDataSet.newBuilder(LABEL_COLUMN, header));
+			}
+			
+			@Override
+			public void row(double[] values, String label) {
+				builder.get(0).addRow(values, label);
+			}
+		});
+		return builder.get(0).build();
+	}
+	
+	/**
+	 * @return Position of label column in header, -1 if there is none.
+	 */
+	static int labelPosition(String[] header) {
+		for (int i = 0; i < header.length; i++) {
+			if (header[i].equalsIgnoreCase(LABEL_COLUMN)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Randomly assign rows of data set to training and test views, roughly split out of 10 rows go to test data.
+	 */
+	static List<List<DataSample>> splitData(ColumnarDataSet data, int split, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] train = new int[data.size()];
+		int[] test = new int[data.size()];
+		int numTrain = 0;
+		int numTest = 0;
+		for (int row = 0; row < data.size(); row++) {
+			int randInt = random.nextInt(10);
+			
+			if(randInt >= split) {
+				train[numTrain++] = row;
+			}
+			else {
+				test[numTest++] = row;
+			}
+		}
+		
+		List<List<DataSample>> trainAndTest = new ArrayList<>();
+		trainAndTest.add(data.asSamples(Arrays.copyOf(train, numTrain)));
+		trainAndTest.add(data.asSamples(Arrays.copyOf(test, numTest)));
+		return trainAndTest;
+	}
 }
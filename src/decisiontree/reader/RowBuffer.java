@@ -0,0 +1,169 @@
+package decisiontree.reader;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows of one part of a target as row major primitive values, read on a worker thread and handed to a
+ * {@link Reader.RowHandler} on the reading thread.
+ */
+class RowBuffer {
+
+	/** Number of blocks of a streamed part buffered ahead of the reading thread. */
+	private static final int BLOCKS_PER_PART = 2;
+
+	/** Milliseconds between checks whether a streamed part failed while waiting for its blocks. */
+	private static final long POLL_MILLIS = 100;
+
+	/** Marks the end of the blocks of a streamed part. */
+	private static final RowBuffer END = new RowBuffer(0);
+
+	/**
+	 * Receiver of blocks of a streamed part, blocks while the reading thread is behind.
+	 */
+	interface BlockSink {
+
+		void accept(RowBuffer block) throws InterruptedException;
+	}
+
+	/**
+	 * Reader of a part which passes its rows on in blocks as they are read.
+	 */
+	interface BlockSource {
+
+		void read(BlockSink sink) throws Exception;
+	}
+
+	private final int numColumns;
+	private double[] values = new double[0];
+	private String[] labels = new String[0];
+	private int size;
+
+	RowBuffer(int numColumns) {
+		this.numColumns = numColumns;
+	}
+
+	void add(double[] row, String label) {
+		if (size == labels.length) {
+			int capacity = Math.max(16, size * 2);
+			labels = Arrays.copyOf(labels, capacity);
+			values = Arrays.copyOf(values, capacity * numColumns);
+		}
+		System.arraycopy(row, 0, values, size * numColumns, numColumns);
+		labels[size++] = label;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void forEachRow(Reader.RowHandler handler) throws IOException {
+		double[] row = new double[numColumns];
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(values, i * numColumns, row, 0, numColumns);
+			handler.row(row, labels[i]);
+		}
+	}
+
+	/**
+	 * Reads parts on a pool of threads and hands their rows to handler in order of parts, so rows are read in the
+	 * same order whatever the number of threads. At most twice as many parts as threads are buffered ahead of the part
+	 * being handled, which bounds memory when an early part is slow.
+	 *
+	 * @param parts
+	 *     readers of parts in order
+	 * @param threads
+	 *     number of parts read at the same time
+	 * @param handler
+	 *     handler of all rows
+	 */
+	static void handleInOrder(List<Callable<RowBuffer>> parts, int threads, Reader.RowHandler handler) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Deque<Future<RowBuffer>> pending = new ArrayDeque<>();
+			int next = 0;
+			while (next < parts.size() || !pending.isEmpty()) {
+				while (next < parts.size() && pending.size() < 2 * threads) {
+					pending.add(executor.submit(parts.get(next++)));
+				}
+				pending.poll().get().forEachRow(handler);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted reading", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed reading", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads parts on a pool of threads and hands their rows to handler in order of parts, like
+	 * {@link #handleInOrder(List, int, Reader.RowHandler)}. Parts pass their rows on in blocks, at most a few blocks of
+	 * every part being read are buffered, so memory is bounded by the block size rather than by the size of a part.
+	 *
+	 * @param parts
+	 *     readers of parts in order
+	 * @param threads
+	 *     number of parts read at the same time
+	 * @param handler
+	 *     handler of all rows
+	 */
+	static void streamInOrder(List<BlockSource> parts, int threads, Reader.RowHandler handler) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			// parts start in order, so the part being handled is always read before any later one
+			List<BlockingQueue<RowBuffer>> queues = new ArrayList<>();
+			List<Future<?>> futures = new ArrayList<>();
+			for (BlockSource part : parts) {
+				BlockingQueue<RowBuffer> queue = new ArrayBlockingQueue<>(BLOCKS_PER_PART);
+				queues.add(queue);
+				futures.add(executor.submit(() -> {
+					part.read(queue::put);
+					queue.put(END);
+					return null;
+				}));
+			}
+			for (int i = 0; i < parts.size(); i++) {
+				BlockingQueue<RowBuffer> queue = queues.get(i);
+				Future<?> future = futures.get(i);
+				for (RowBuffer block = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS); block != END;
+						block = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					if (block != null) {
+						block.forEachRow(handler);
+					} else if (future.isDone() && queue.isEmpty()) {
+						// part failed before its end marker
+						future.get();
+						break;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted reading", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed reading", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package decisiontree.reader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.data.DataSample;
+
+/**
+ * Derives training rows from raw ticks of another reader as they stream by. Ticks are kept in ring buffers of the last
+ * hour and the last day, which every tick updates in constant amortized time without rescanning history:
+ * <ul>
+ * <li>day, hour - day of week from Monday as 0 and hour of day, both UTC</li>
+ * <li>high - highest bid of the last hour</li>
+ * <li>close - bid</li>
+ * <li>spread - ask minus bid, NaN without an ask column</li>
+ * <li>momentumday, momentumhour - bid minus bid a day or an hour ago</li>
+ * <li>rocday, rochour - rate of change to bid a day or an hour ago in percent</li>
+ * <li>upcount - number of ticks of the last hour whose bid rose</li>
+ * <li>Label - 1 if bid is higher one label horizon later, else 0</li>
+ * </ul>
+ * A row is emitted as soon as its label is known, rows before a day of history are skipped. Ticks must come in time
+ * order; a tick older than the previous one starts a new stream, e.g. the next partition of a table.
+ */
+public class TickFeatureReader implements Reader {
+
+	/** Columns of derived rows, in the same order as exported training data. */
+	public static final List<String> HEADER = Arrays.asList("day", "hour", "high", "close", "spread", "momentumday",
+			"momentumhour", "rocday", "rochour", LABEL_COLUMN, "upcount");
+
+	public static final long HOUR = 3600000L;
+
+	public static final long DAY = 24 * HOUR;
+
+	private final Reader ticks;
+	private String timeColumn = "datetime";
+	private String bidColumn = "bid";
+	private String askColumn = "ask";
+	private long labelHorizon = HOUR;
+
+	private ColumnarDataSet dataSet;
+
+	/**
+	 * @param ticks
+	 *     reader of raw ticks with time in epoch milliseconds, bid and optionally ask columns, e.g. a
+	 *     {@link CassandraReader} which reads time keys
+	 */
+	public TickFeatureReader(Reader ticks) {
+		this.ticks = ticks;
+	}
+
+	/**
+	 * Sets names of raw tick columns, ask column may be missing in ticks.
+	 */
+	public void setColumns(String timeColumn, String bidColumn, String askColumn) {
+		this.timeColumn = timeColumn;
+		this.bidColumn = bidColumn;
+		this.askColumn = askColumn;
+	}
+
+	/**
+	 * @param labelHorizon
+	 *     milliseconds after a tick whose bid decides its label
+	 */
+	public void setLabelHorizon(long labelHorizon) {
+		if (labelHorizon < 1) {
+			throw new IllegalArgumentException("Label horizon must be positive: " + labelHorizon);
+		}
+		this.labelHorizon = labelHorizon;
+	}
+
+	@Override
+	public List<List<DataSample>> readData(String target, int split, long seed) throws IOException {
+		dataSet = Reader.readDataSet(this, target);
+
+		return Reader.splitData(dataSet, split, seed);
+	}
+
+	@Override
+	public void forEachRow(String target, RowHandler handler) throws IOException {
+		ticks.forEachRow(target, new RowHandler() {
+
+			private final Features features = new Features(labelHorizon);
+			private int time;
+			private int bid;
+			private int ask;
+
+			@Override
+			public void start(String[] header) throws IOException {
+				time = valueIndex(header, timeColumn);
+				bid = valueIndex(header, bidColumn);
+				ask = valueIndex(header, askColumn);
+				if (time < 0 || bid < 0) {
+					throw new IOException("Ticks need columns " + timeColumn + " and " + bidColumn + ": " + Arrays.toString(header));
+				}
+				handler.start(getHeader());
+			}
+
+			@Override
+			public void row(double[] values, String label) throws IOException {
+				features.tick((long) values[time], values[bid], ask >= 0 ? values[ask] : Double.NaN, handler);
+			}
+		});
+	}
+
+	/**
+	 * @return index of column in values, which leave out the label column, -1 if there is no such column
+	 */
+	private static int valueIndex(String[] header, String column) {
+		int labelPosition = Reader.labelPosition(header);
+		for (int i = 0; i < header.length; i++) {
+			if (header[i].equalsIgnoreCase(column)) {
+				return labelPosition >= 0 && i > labelPosition ? i - 1 : i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String[] getHeader() {
+		return HEADER.toArray(new String[HEADER.size()]);
+	}
+
+	@Override
+	public ColumnarDataSet getDataSet() {
+		return dataSet;
+	}
+
+	/**
+	 * Feature state of one tick stream, it can also be fed by a live feed.
+	 */
+	public static class Features {
+
+		/** Number of feature values of a row, all columns but the label. */
+		private static final int NUM_VALUES = 10;
+
+		private final long labelHorizon;
+		private final TimeWindow hourWindow = new TimeWindow(HOUR);
+		private final TimeWindow dayWindow = new TimeWindow(DAY);
+
+		/** Rows waiting for their label: time, bid and feature values of each, oldest first. */
+		private final TimeWindow pending;
+
+		private final double[] row = new double[NUM_VALUES];
+		private long lastTime = Long.MIN_VALUE;
+		private double lastBid = Double.NaN;
+
+		/**
+		 * @param labelHorizon
+		 *     milliseconds after a tick whose bid decides its label
+		 */
+		public Features(long labelHorizon) {
+			this.labelHorizon = labelHorizon;
+			this.pending = new TimeWindow(labelHorizon, NUM_VALUES);
+		}
+
+		/**
+		 * Adds a tick, emits rows whose label horizon it passes.
+		 *
+		 * @param time
+		 *     time of tick in epoch milliseconds
+		 * @param handler
+		 *     receives rows ordered as {@link TickFeatureReader#HEADER} without label column
+		 */
+		public void tick(long time, double bid, double ask, RowHandler handler) throws IOException {
+			if (time < lastTime) {
+				reset();
+			}
+			// every pending row at least a horizon old is labeled by the first tick after its horizon
+			while (pending.size() > 0 && pending.oldestTime() <= time - labelHorizon) {
+				pending.oldestValues(row);
+				handler.row(row, bid > row[3] ? "1" : "0");
+				pending.removeOldest();
+			}
+
+			boolean up = !Double.isNaN(lastBid) && bid > lastBid;
+			hourWindow.add(time, bid, up);
+			dayWindow.add(time, bid, up);
+			lastTime = time;
+			lastBid = bid;
+			if (Double.isNaN(dayWindow.getPast())) {
+				return;
+			}
+
+			long days = Math.floorDiv(time, DAY);
+			row[0] = Math.floorMod(days + 3, 7); // 1970-01-01 is a Thursday
+			row[1] = Math.floorMod(time, DAY) / HOUR;
+			row[2] = hourWindow.getMax();
+			row[3] = bid;
+			row[4] = ask - bid;
+			row[5] = bid - dayWindow.getPast();
+			row[6] = bid - hourWindow.getPast();
+			row[7] = 100 * (bid - dayWindow.getPast()) / dayWindow.getPast();
+			row[8] = 100 * (bid - hourWindow.getPast()) / hourWindow.getPast();
+			row[9] = hourWindow.getUpCount();
+			pending.add(time, row);
+		}
+
+		private void reset() {
+			hourWindow.clear();
+			dayWindow.clear();
+			pending.clear();
+			lastBid = Double.NaN;
+		}
+	}
+
+	/**
+	 * Ring buffer of entries of the last window length milliseconds. Keeps value of the newest entry which left the
+	 * window, maximum value by a monotonic queue and count of up entries, all updated in constant amortized time.
+	 */
+	private static class TimeWindow {
+
+		private final long length;
+		private final int width;
+
+		private long[] times = new long[16];
+		private double[] values;
+		private boolean[] ups = new boolean[16];
+		private int head;
+		private int size;
+
+		/** Values decreasing from oldest to newest, front is the maximum. */
+		private long[] maxTimes = new long[16];
+		private double[] maxValues = new double[16];
+		private int maxHead;
+		private int maxSize;
+
+		private double past = Double.NaN;
+		private int upCount;
+
+		TimeWindow(long length) {
+			this(length, 1);
+		}
+
+		/**
+		 * @param width
+		 *     number of values per entry, the first is the value tracked by past and maximum
+		 */
+		TimeWindow(long length, int width) {
+			this.length = length;
+			this.width = width;
+			this.values = new double[16 * width];
+		}
+
+		void add(long time, double value, boolean up) {
+			evict(time);
+			grow();
+			int slot = (head + size) % times.length;
+			times[slot] = time;
+			values[slot * width] = value;
+			ups[slot] = up;
+			size++;
+			if (up) {
+				upCount++;
+			}
+			while (maxSize > 0 && maxValues[(maxHead + maxSize - 1) % maxValues.length] <= value) {
+				maxSize--;
+			}
+			if (maxSize == maxValues.length) {
+				maxTimes = unwrap(maxTimes, maxHead, maxSize);
+				maxValues = unwrap(maxValues, maxHead, maxSize, 1);
+				maxHead = 0;
+			}
+			int maxSlot = (maxHead + maxSize) % maxValues.length;
+			maxTimes[maxSlot] = time;
+			maxValues[maxSlot] = value;
+			maxSize++;
+		}
+
+		/**
+		 * Adds entry of several values, only kept in time order and not evicted by time.
+		 */
+		void add(long time, double[] entry) {
+			grow();
+			int slot = (head + size) % times.length;
+			times[slot] = time;
+			System.arraycopy(entry, 0, values, slot * width, width);
+			size++;
+		}
+
+		private void evict(long time) {
+			while (size > 0 && times[head] <= time - length) {
+				past = values[head * width];
+				if (ups[head]) {
+					upCount--;
+				}
+				removeOldest();
+			}
+			while (maxSize > 0 && maxTimes[maxHead] <= time - length) {
+				maxHead = (maxHead + 1) % maxValues.length;
+				maxSize--;
+			}
+		}
+
+		private void grow() {
+			if (size < times.length) {
+				return;
+			}
+			times = unwrap(times, head, size);
+			values = unwrap(values, head, size, width);
+			boolean[] grownUps = new boolean[ups.length * 2];
+			for (int i = 0; i < size; i++) {
+				grownUps[i] = ups[(head + i) % ups.length];
+			}
+			ups = grownUps;
+			head = 0;
+		}
+
+		private static long[] unwrap(long[] ring, int head, int size) {
+			long[] grown = new long[ring.length * 2];
+			for (int i = 0; i < size; i++) {
+				grown[i] = ring[(head + i) % ring.length];
+			}
+			return grown;
+		}
+
+		private static double[] unwrap(double[] ring, int head, int size, int width) {
+			int capacity = ring.length / width;
+			double[] grown = new double[ring.length * 2];
+			for (int i = 0; i < size; i++) {
+				System.arraycopy(ring, ((head + i) % capacity) * width, grown, i * width, width);
+			}
+			return grown;
+		}
+
+		int size() {
+			return size;
+		}
+
+		long oldestTime() {
+			return times[head];
+		}
+
+		void oldestValues(double[] entry) {
+			System.arraycopy(values, head * width, entry, 0, width);
+		}
+
+		void removeOldest() {
+			head = (head + 1) % times.length;
+			size--;
+		}
+
+		/**
+		 * @return value of the newest entry which left the window, NaN until an entry left it
+		 */
+		double getPast() {
+			return past;
+		}
+
+		double getMax() {
+			return maxSize > 0 ? maxValues[maxHead] : Double.NaN;
+		}
+
+		int getUpCount() {
+			return upCount;
+		}
+
+		void clear() {
+			head = 0;
+			size = 0;
+			maxHead = 0;
+			maxSize = 0;
+			past = Double.NaN;
+			upCount = 0;
+		}
+	}
+}
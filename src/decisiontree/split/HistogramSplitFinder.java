@@ -0,0 +1,279 @@
+package decisiontree.split;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.feature.Feature;
+import decisiontree.impurity.ImpurityCalculationMethod;
+
+/**
+ * Approximate split finder working on histograms. Every candidate column is quantized once into at most maxBins bins
+ * whose edges are candidate feature values, bin of each row is stored as a byte code. Each node keeps per bin label
+ * counts, so evaluating all splits of a column costs O(bins) instead of O(rows). When node is split only the histogram
+ * of the smaller child is built from its rows, histogram of the larger child is parent histogram minus the smaller one.
+ *
+ * Rows contained more than once in training rows (bootstrap sample) are kept once and counted with their weight.
+ *
+ */
+public class HistogramSplitFinder implements SplitFinder {
+
+    /** Most bins a column can have, bin codes are stored in a byte. */
+    public static final int MAX_BINS = 255;
+
+    private final ColumnarDataSet data;
+
+    private final ImpurityCalculationMethod impurityCalculationMethod;
+
+    private final int numClasses;
+
+    /** Weight of each data set row, number of times it is contained in training rows. */
+    private final int[] weights;
+
+    /** Distinct training rows, nodes are ranges of this array. */
+    private final int[] rows;
+
+    /** Column name to index of quantized column. */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /** Features at bin edges of each slot, rows in bin b have value at least feature value of edge b - 1. */
+    private final Feature[][] edges;
+
+    /** Bin code of every row for each slot, read as unsigned. */
+    private final byte[][] bins;
+
+    /**
+     * Node with label count histograms of every quantized column.
+     */
+    private static class HistogramNode extends NodeRange {
+
+        /** Label counts per slot, indexed by bin * numClasses + label code. */
+        private final int[][] histogram;
+
+        HistogramNode(int from, int to, int[] labelCounts, int[][] histogram) {
+            super(from, to, labelCounts);
+            this.histogram = histogram;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param data
+     *            Columnar data set.
+     * @param rows
+     *            Indices of training rows, may contain the same row more than once.
+     * @param features
+     *            List of possible features, each list holds features of a single column sorted by feature value.
+     * @param impurityCalculationMethod
+     *            Impurity calculation method.
+     * @param maxBins
+     *            Maximum number of bins per column, at most {@link #MAX_BINS}.
+     */
+    public HistogramSplitFinder(ColumnarDataSet data, int[] rows, List<List<Feature>> features,
+            ImpurityCalculationMethod impurityCalculationMethod, int maxBins) {
+        this(data, Bootstrap.of(data.size(), rows), features, impurityCalculationMethod, maxBins);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param data
+     *            Columnar data set.
+     * @param sample
+     *            Bootstrap sample, rows are counted with their weight.
+     * @param features
+     *            List of possible features, each list holds features of a single column sorted by feature value.
+     * @param impurityCalculationMethod
+     *            Impurity calculation method.
+     * @param maxBins
+     *            Maximum number of bins per column, at most {@link #MAX_BINS}.
+     */
+    public HistogramSplitFinder(ColumnarDataSet data, Bootstrap sample, List<List<Feature>> features,
+            ImpurityCalculationMethod impurityCalculationMethod, int maxBins) {
+        if (maxBins < 2 || maxBins > MAX_BINS) {
+            throw new IllegalArgumentException("Number of bins must be between 2 and " + MAX_BINS + ": " + maxBins);
+        }
+        this.data = data;
+        this.impurityCalculationMethod = impurityCalculationMethod;
+        this.numClasses = data.getNumClasses();
+        this.weights = sample.getWeights();
+        // nodes partition the array, so the sample's rows are copied
+        this.rows = sample.getRows().clone();
+
+        List<List<Feature>> columns = new ArrayList<>();
+        for (List<Feature> featList : features) {
+            if (!featList.isEmpty() && !slots.containsKey(featList.get(0).getColumn())) {
+                slots.put(featList.get(0).getColumn(), slots.size());
+                columns.add(featList);
+            }
+        }
+        this.edges = new Feature[columns.size()][];
+        this.bins = new byte[columns.size()][];
+        for (int slot = 0; slot < columns.size(); slot++) {
+            List<Feature> candidates = columns.get(slot);
+            double[] column = data.getColumn(candidates.get(0).getColumn());
+            edges[slot] = selectEdges(candidates, column, data.getSortedRows(data.getColumnIndex(candidates.get(0).getColumn())), maxBins - 1);
+            bins[slot] = quantize(edges[slot], column);
+        }
+    }
+
+    /**
+     * Selects at most maxEdges candidate features as bin edges. If there are too many candidates, edges are placed so
+     * that bins hold roughly equal number of training rows.
+     */
+    private Feature[] selectEdges(List<Feature> candidates, double[] column, int[] order, int maxEdges) {
+        if (candidates.size() <= maxEdges) {
+            return candidates.toArray(new Feature[candidates.size()]);
+        }
+        long total = 0;
+        for (int row : rows) {
+            total += weights[row];
+        }
+        List<Feature> selected = new ArrayList<>();
+        long cumulative = 0;
+        int next = 1;
+        for (int row : order) {
+            if (weights[row] == 0) {
+                continue;
+            }
+            if (cumulative * (maxEdges + 1) >= next * total) {
+                double value = column[row];
+                Feature feature = PresortedSplitFinder.findFeature(candidates, value);
+                if (feature != null && (selected.isEmpty() || value > selected.get(selected.size() - 1).getFeatureVal())) {
+                    selected.add(feature);
+                }
+                while (cumulative * (maxEdges + 1) >= next * total) {
+                    next++;
+                }
+            }
+            cumulative += weights[row];
+        }
+        return selected.toArray(new Feature[selected.size()]);
+    }
+
+    /**
+     * Bin code of every training row, which is number of edges less or equal to row value.
+     */
+    private byte[] quantize(Feature[] columnEdges, double[] column) {
+        byte[] codes = new byte[data.size()];
+        for (int row : rows) {
+            double value = column[row];
+            int low = 0;
+            int high = columnEdges.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (columnEdges[mid].getFeatureVal() <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            codes[row] = (byte) low;
+        }
+        return codes;
+    }
+
+    @Override
+    public ColumnarDataSet getDataSet() {
+        return data;
+    }
+
+    @Override
+    public NodeRange root() {
+        int[] labelCounts = new int[numClasses];
+        for (int row : rows) {
+            labelCounts[data.getLabelCode(row)] += weights[row];
+        }
+        return new HistogramNode(0, rows.length, labelCounts, buildHistogram(0, rows.length));
+    }
+
+    /**
+     * Builds label count histograms of every slot from rows [from, to).
+     */
+    private int[][] buildHistogram(int from, int to) {
+        int[][] histogram = new int[edges.length][];
+        for (int slot = 0; slot < edges.length; slot++) {
+            int[] counts = new int[(edges[slot].length + 1) * numClasses];
+            byte[] codes = bins[slot];
+            for (int i = from; i < to; i++) {
+                int row = rows[i];
+                counts[(codes[row] & 0xFF) * numClasses + data.getLabelCode(row)] += weights[row];
+            }
+            histogram[slot] = counts;
+        }
+        return histogram;
+    }
+
+    @Override
+    public Split findBestSplit(NodeRange node, List<Feature> candidates) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        int slot = slots.get(candidates.get(0).getColumn());
+        int[] counts = ((HistogramNode) node).histogram[slot];
+        int[] leftCounts = new int[numClasses];
+        int[] rightCounts = node.getLabelCounts().clone();
+        long total = 0;
+        for (int count : rightCounts) {
+            total += count;
+        }
+        long leftTotal = 0;
+
+        Feature bestSplitFeature = null;
+        double bestImpurity = Double.MAX_VALUE;
+        int numBins = edges[slot].length + 1;
+        for (int bin = 0; bin < numBins; bin++) {
+            // boundary before bin, left holds rows of lower bins
+            if (leftTotal > 0 && leftTotal < total) {
+                double impurity = impurityCalculationMethod.calculateSplitImpurity(leftCounts, rightCounts);
+                if (impurity < bestImpurity) {
+                    bestImpurity = impurity;
+                    bestSplitFeature = edges[slot][bin - 1];
+                }
+            }
+            for (int label = 0; label < numClasses; label++) {
+                int count = counts[bin * numClasses + label];
+                leftCounts[label] += count;
+                rightCounts[label] -= count;
+                leftTotal += count;
+            }
+        }
+        return bestSplitFeature != null ? new Split(bestSplitFeature, bestImpurity) : null;
+    }
+
+    @Override
+    public NodeRange[] split(NodeRange node, Feature feature) {
+        int from = node.getFrom();
+        int to = node.getTo();
+        int mid = feature.partition(data, rows, from, to);
+        int[][] parent = ((HistogramNode) node).histogram;
+
+        boolean leftSmaller = mid - from <= to - mid;
+        int smallFrom = leftSmaller ? from : mid;
+        int smallTo = leftSmaller ? mid : to;
+        int[][] small = buildHistogram(smallFrom, smallTo);
+        int[] smallCounts = new int[numClasses];
+        for (int i = smallFrom; i < smallTo; i++) {
+            smallCounts[data.getLabelCode(rows[i])] += weights[rows[i]];
+        }
+        // parent is not needed anymore, reuse it for the larger child
+        for (int slot = 0; slot < parent.length; slot++) {
+            for (int i = 0; i < parent[slot].length; i++) {
+                parent[slot][i] -= small[slot][i];
+            }
+        }
+        int[] largeCounts = node.getLabelCounts().clone();
+        for (int label = 0; label < numClasses; label++) {
+            largeCounts[label] -= smallCounts[label];
+        }
+
+        HistogramNode smallNode = new HistogramNode(smallFrom, smallTo, smallCounts, small);
+        HistogramNode largeNode = leftSmaller ? new HistogramNode(mid, to, largeCounts, parent)
+                : new HistogramNode(from, mid, largeCounts, parent);
+        return leftSmaller ? new NodeRange[] { smallNode, largeNode } : new NodeRange[] { largeNode, smallNode };
+    }
+}
@@ -0,0 +1,53 @@
+package decisiontree.split;
+
+/**
+ * Training data of a tree node during columnar training. Node owns range [from, to) of the row index arrays held by its
+ * {@link SplitFinder}.
+ *
+ */
+public class NodeRange {
+
+    private final int from;
+
+    private final int to;
+
+    /** Number of rows per label code, rows contained more than once are counted more than once. */
+    private final int[] labelCounts;
+
+    public NodeRange(int from, int to, int[] labelCounts) {
+        this.from = from;
+        this.to = to;
+        this.labelCounts = labelCounts;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    public int[] getLabelCounts() {
+        return labelCounts;
+    }
+
+    /**
+     * @return Number of row indices in the range.
+     */
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "NodeRange [from=" + from + ", to=" + to + "]";
+    }
+}
@@ -0,0 +1,158 @@
+package decisiontree.split;
+
+import java.util.Arrays;
+import java.util.List;
+
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.feature.Feature;
+import decisiontree.impurity.ImpurityCalculationMethod;
+
+/**
+ * Split finder which binary searches candidate features of a column. Each probed feature is evaluated only by counting
+ * labels of rows which have it, the row index array is partitioned in place once the node is split.
+ *
+ * Rows contained more than once in training rows (bootstrap sample) are kept once and counted with their weight.
+ *
+ */
+public class PartitionSplitFinder implements SplitFinder {
+
+    private final ColumnarDataSet data;
+
+    /** Weight of each data set row, number of times it is contained in training rows. */
+    private final int[] weights;
+
+    /** Distinct training rows, nodes are ranges of this array. */
+    private final int[] rows;
+
+    private final ImpurityCalculationMethod impurityCalculationMethod;
+
+    /**
+     * Constructor.
+     *
+     * @param data
+     *            Columnar data set.
+     * @param rows
+     *            Indices of training rows, may contain the same row more than once. Array is not modified.
+     * @param impurityCalculationMethod
+     *            Impurity calculation method.
+     */
+    public PartitionSplitFinder(ColumnarDataSet data, int[] rows, ImpurityCalculationMethod impurityCalculationMethod) {
+        this(data, Bootstrap.of(data.size(), rows), impurityCalculationMethod);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param data
+     *            Columnar data set.
+     * @param sample
+     *            Bootstrap sample, rows are counted with their weight.
+     * @param impurityCalculationMethod
+     *            Impurity calculation method.
+     */
+    public PartitionSplitFinder(ColumnarDataSet data, Bootstrap sample, ImpurityCalculationMethod impurityCalculationMethod) {
+        this.data = data;
+        this.weights = sample.getWeights();
+        this.rows = sample.getRows().clone();
+        this.impurityCalculationMethod = impurityCalculationMethod;
+    }
+
+    @Override
+    public ColumnarDataSet getDataSet() {
+        return data;
+    }
+
+    @Override
+    public NodeRange root() {
+        return new NodeRange(0, rows.length, countLabels(0, rows.length));
+    }
+
+    @Override
+    public Split findBestSplit(NodeRange node, List<Feature> candidates) {
+        int[] labelCounts = node.getLabelCounts();
+        double bestImpurity = Double.MAX_VALUE;
+        int[] leftCounts = new int[labelCounts.length];
+        int[] rightCounts = new int[labelCounts.length];
+
+        Feature bestSplitFeature = null;
+
+        int listSize = candidates.size();
+        int low = 0;
+        int high = listSize - 1;
+        int mid = low + (high - low) / 2;
+
+        if (listSize == 0) {
+            return null;
+        }
+        double[] column = data.getColumn(candidates.get(0).getColumn());
+        Feature firstFeature = candidates.get(mid);
+        while (low <= high) {
+            mid = low + (high - low) / 2;
+            Feature feature = candidates.get(mid);
+            double impurity = splitImpurity(column, node, feature, leftCounts, rightCounts);
+
+            if (impurity < bestImpurity) {
+                bestImpurity = impurity;
+                bestSplitFeature = feature;
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        if (bestSplitFeature.getFeatureVal() == firstFeature.getFeatureVal()) {
+            low = 0;
+            high = listSize - 1;
+            while (low <= high) {
+                mid = low + (high - low) / 2;
+                Feature feature = candidates.get(mid);
+                double impurity = splitImpurity(column, node, feature, leftCounts, rightCounts);
+
+                if (impurity < bestImpurity) {
+                    bestImpurity = impurity;
+                    bestSplitFeature = feature;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+        }
+        return new Split(bestSplitFeature, bestImpurity);
+    }
+
+    @Override
+    public NodeRange[] split(NodeRange node, Feature feature) {
+        int mid = feature.partition(data, rows, node.getFrom(), node.getTo());
+        return new NodeRange[] { new NodeRange(node.getFrom(), mid, countLabels(node.getFrom(), mid)),
+                new NodeRange(mid, node.getTo(), countLabels(mid, node.getTo())) };
+    }
+
+    /**
+     * Impurity of splitting node by feature, calculated only from label counts.
+     */
+    private double splitImpurity(double[] column, NodeRange node, Feature feature, int[] leftCounts, int[] rightCounts) {
+        int[] labelCounts = node.getLabelCounts();
+        Arrays.fill(leftCounts, 0);
+        for (int i = node.getFrom(); i < node.getTo(); i++) {
+            int row = rows[i];
+            if (feature.belongsTo(column[row])) {
+                leftCounts[data.getLabelCode(row)] += weights[row];
+            }
+        }
+        for (int i = 0; i < labelCounts.length; i++) {
+            rightCounts[i] = labelCounts[i] - leftCounts[i];
+        }
+        return impurityCalculationMethod.calculateSplitImpurity(leftCounts, rightCounts);
+    }
+
+    /**
+     * Counts labels of rows [from, to).
+     */
+    private int[] countLabels(int from, int to) {
+        int[] labelCounts = new int[data.getNumClasses()];
+        for (int i = from; i < to; i++) {
+            labelCounts[data.getLabelCode(rows[i])] += weights[rows[i]];
+        }
+        return labelCounts;
+    }
+}
@@ -0,0 +1,229 @@
+package decisiontree.split;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.feature.Feature;
+import decisiontree.impurity.ImpurityCalculationMethod;
+
+/**
+ * Exact split finder in the style of SLIQ/SPRINT. Every candidate column keeps its own array of row indices sorted by
+ * column value, so all thresholds of a column are evaluated in one linear scan with running label counts. Splitting a
+ * node stable partitions every sorted array, children ranges therefore stay sorted and columns never have to be sorted
+ * again.
+ *
+ * Rows contained more than once in training rows (bootstrap sample) are kept once and counted with their weight.
+ *
+ */
+public class PresortedSplitFinder implements SplitFinder {
+
+    private final ColumnarDataSet data;
+
+    private final ImpurityCalculationMethod impurityCalculationMethod;
+
+    /** Weight of each data set row, number of times it is contained in training rows. */
+    private final int[] weights;
+
+    /** Column name to index into sorted. */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /** Data set column index of each slot. */
+    private final int[] columns;
+
+    /** Distinct training rows sorted by each candidate column, nodes are the same range of every array. */
+    private final int[][] sorted;
+
+    /** Marks rows going to the first child, indexed by row. Nodes never share rows so it is shared by all nodes. */
+    private final boolean[] goesLeft;
+
+    /** Buffer for stable partitioning, nodes use only their own range. */
+    private final int[] buffer;
+
+    /**
+     * Constructor.
+     *
+     * @param data
+     *            Columnar data set.
+     * @param rows
+     *            Indices of training rows, may contain the same row more than once.
+     * @param features
+     *            List of possible features, each list holds features of a single column.
+     * @param impurityCalculationMethod
+     *            Impurity calculation method.
+     */
+    public PresortedSplitFinder(ColumnarDataSet data, int[] rows, List<List<Feature>> features,
+            ImpurityCalculationMethod impurityCalculationMethod) {
+        this(data, Bootstrap.of(data.size(), rows), features, impurityCalculationMethod);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param data
+     *            Columnar data set.
+     * @param sample
+     *            Bootstrap sample, rows are counted with their weight.
+     * @param features
+     *            List of possible features, each list holds features of a single column.
+     * @param impurityCalculationMethod
+     *            Impurity calculation method.
+     */
+    public PresortedSplitFinder(ColumnarDataSet data, Bootstrap sample, List<List<Feature>> features,
+            ImpurityCalculationMethod impurityCalculationMethod) {
+        this.data = data;
+        this.impurityCalculationMethod = impurityCalculationMethod;
+        this.weights = sample.getWeights();
+        int distinct = sample.getRows().length;
+
+        for (List<Feature> featList : features) {
+            if (!featList.isEmpty() && !slots.containsKey(featList.get(0).getColumn())) {
+                slots.put(featList.get(0).getColumn(), slots.size());
+            }
+        }
+        this.columns = new int[slots.size()];
+        this.sorted = new int[slots.size()][];
+        for (Map.Entry<String, Integer> slot : slots.entrySet()) {
+            int column = data.getColumnIndex(slot.getKey());
+            if (column < 0) {
+                throw new IllegalArgumentException("Unknown column " + slot.getKey());
+            }
+            columns[slot.getValue()] = column;
+            sorted[slot.getValue()] = sortedRows(data.getSortedRows(column), distinct);
+        }
+        this.goesLeft = new boolean[data.size()];
+        this.buffer = new int[distinct];
+    }
+
+    /**
+     * Filters presorted order of all data set rows to training rows.
+     */
+    private int[] sortedRows(int[] order, int distinct) {
+        int[] result = new int[distinct];
+        int j = 0;
+        for (int row : order) {
+            if (weights[row] > 0) {
+                result[j++] = row;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ColumnarDataSet getDataSet() {
+        return data;
+    }
+
+    @Override
+    public NodeRange root() {
+        int[] labelCounts = new int[data.getNumClasses()];
+        if (sorted.length > 0) {
+            for (int row : sorted[0]) {
+                labelCounts[data.getLabelCode(row)] += weights[row];
+            }
+        }
+        return new NodeRange(0, buffer.length, labelCounts);
+    }
+
+    @Override
+    public Split findBestSplit(NodeRange node, List<Feature> candidates) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        int slot = slots.get(candidates.get(0).getColumn());
+        int[] order = sorted[slot];
+        double[] column = data.getColumn(columns[slot]);
+        int[] labelCounts = node.getLabelCounts();
+        int[] leftCounts = new int[labelCounts.length];
+        int[] rightCounts = labelCounts.clone();
+
+        Feature bestSplitFeature = null;
+        double bestImpurity = Double.MAX_VALUE;
+        double previous = Double.NaN;
+        for (int i = node.getFrom(); i < node.getTo(); i++) {
+            int row = order[i];
+            double value = column[row];
+            // boundary between previous and current value, left holds rows with value < current value
+            if (i > node.getFrom() && value != previous) {
+                double impurity = impurityCalculationMethod.calculateSplitImpurity(leftCounts, rightCounts);
+                if (impurity < bestImpurity) {
+                    Feature feature = findFeature(candidates, value);
+                    if (feature != null) {
+                        bestImpurity = impurity;
+                        bestSplitFeature = feature;
+                    }
+                }
+            }
+            int label = data.getLabelCode(row);
+            leftCounts[label] += weights[row];
+            rightCounts[label] -= weights[row];
+            previous = value;
+        }
+        return bestSplitFeature != null ? new Split(bestSplitFeature, bestImpurity) : null;
+    }
+
+    /**
+     * Binary search for feature with feature value equal to threshold.
+     */
+    static Feature findFeature(List<Feature> candidates, double threshold) {
+        int low = 0;
+        int high = candidates.size() - 1;
+        while (low <= high) {
+            int mid = low + (high - low) / 2;
+            double featureVal = candidates.get(mid).getFeatureVal();
+            if (featureVal < threshold) {
+                low = mid + 1;
+            } else if (featureVal > threshold) {
+                high = mid - 1;
+            } else {
+                return candidates.get(mid);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public NodeRange[] split(NodeRange node, Feature feature) {
+        int from = node.getFrom();
+        int to = node.getTo();
+        int[] leftCounts = new int[data.getNumClasses()];
+        int[] rightCounts = new int[data.getNumClasses()];
+        double[] column = data.getColumn(feature.getColumn());
+
+        int[] order = sorted[0];
+        int mid = from;
+        for (int i = from; i < to; i++) {
+            int row = order[i];
+            goesLeft[row] = feature.belongsTo(column[row]);
+            if (goesLeft[row]) {
+                leftCounts[data.getLabelCode(row)] += weights[row];
+                mid++;
+            } else {
+                rightCounts[data.getLabelCode(row)] += weights[row];
+            }
+        }
+        for (int[] rows : sorted) {
+            stablePartition(rows, from, to);
+        }
+        return new NodeRange[] { new NodeRange(from, mid, leftCounts), new NodeRange(mid, to, rightCounts) };
+    }
+
+    /**
+     * Moves rows going left to the front of range keeping order of both parts.
+     */
+    private void stablePartition(int[] rows, int from, int to) {
+        int left = from;
+        int right = from;
+        for (int i = from; i < to; i++) {
+            int row = rows[i];
+            if (goesLeft[row]) {
+                rows[left++] = row;
+            } else {
+                buffer[right++] = row;
+            }
+        }
+        System.arraycopy(buffer, from, rows, left, right - from);
+    }
+}
@@ -0,0 +1,36 @@
+package decisiontree.split;
+
+import decisiontree.feature.Feature;
+
+/**
+ * Candidate split of a node found by {@link SplitFinder}.
+ *
+ */
+public class Split {
+
+    private final Feature feature;
+
+    /** Impurity of children after split, lower is better. */
+    private final double impurity;
+
+    public Split(Feature feature, double impurity) {
+        this.feature = feature;
+        this.impurity = impurity;
+    }
+
+    public Feature getFeature() {
+        return feature;
+    }
+
+    public double getImpurity() {
+        return impurity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Split [feature=" + feature + ", impurity=" + impurity + "]";
+    }
+}
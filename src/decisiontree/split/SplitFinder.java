@@ -0,0 +1,46 @@
+package decisiontree.split;
+
+import java.util.List;
+
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.feature.Feature;
+
+/**
+ * Strategy used by decision tree to find and apply splits while training on columnar data. Finder is created for a
+ * single training run and owns all row index arrays, nodes are ranges of those arrays.
+ *
+ */
+public interface SplitFinder {
+
+    /**
+     * @return Data set on which tree is trained.
+     */
+    ColumnarDataSet getDataSet();
+
+    /**
+     * @return Node holding all training rows.
+     */
+    NodeRange root();
+
+    /**
+     * Finds best split of node among features of a single column.
+     * 
+     * @param node
+     *            Node to split.
+     * @param candidates
+     *            Features of a single column sorted by feature value.
+     * @return Best split or null if none of the features separates node data.
+     */
+    Split findBestSplit(NodeRange node, List<Feature> candidates);
+
+    /**
+     * Splits node by feature.
+     * 
+     * @param node
+     *            Node to split.
+     * @param feature
+     *            Feature to split by.
+     * @return Two children, first holds rows which have the feature and second rows which do not.
+     */
+    NodeRange[] split(NodeRange node, Feature feature);
+}
@@ -0,0 +1,17 @@
+package decisiontree.split;
+
+/**
+ * Split finding strategies for training on columnar data.
+ *
+ */
+public enum SplitStrategy {
+
+    /** Binary search over candidate features, each probe partitions row indices and counts labels. */
+    PARTITION,
+
+    /** Exact search, every threshold of presorted columns is scanned in a single pass. */
+    PRESORTED,
+
+    /** Approximate search over per node label count histograms of quantized columns. */
+    HISTOGRAM
+}
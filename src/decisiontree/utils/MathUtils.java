@@ -1,6 +1,6 @@
 package decisiontree.utils;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 public class MathUtils {
@@ -9,8 +9,11 @@ public class MathUtils {
         return Math.log(x) / Math.log(2);
     }
     
+    /**
+     * Random integer between min and max, both inclusive. Uses random generator of the current thread, so nothing is
+     * allocated. Results are not reproducible, training uses seeded streams instead.
+     */
     public static int randomInt(int min, int max){
-    	Random random = new Random();
-    	return random.nextInt(max) + min;
+    	return ThreadLocalRandom.current().nextInt(min, max + 1);
     }
 }
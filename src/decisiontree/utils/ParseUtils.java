@@ -0,0 +1,116 @@
+package decisiontree.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parsing of values straight from byte buffers, so no String is created per value.
+ */
+public class ParseUtils {
+
+    /** Powers of ten exactly representable as double. */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /** Largest integer whose every predecessor is exactly representable as double, 2^53. */
+    private static final long MAX_EXACT = 1L << 53;
+
+    /**
+     * Parses decimal number of ASCII bytes [from, to) of buffer. Bytes are read by absolute position, so a mapped file
+     * is parsed without copying and buffer position is not changed. Numbers with at most 15 significant digits and
+     * small exponent, which are all numbers of usual data files, are parsed exactly in place. Other numbers fall back
+     * to {@link Double#parseDouble(String)}, so result is always the same as of {@link Double#parseDouble(String)}.
+     *
+     * @return Parsed number, NaN for an empty range.
+     * @throws NumberFormatException
+     *             If bytes are not a number.
+     */
+    public static double parseDouble(ByteBuffer bytes, int from, int to) {
+        int i = from;
+        while (i < to && bytes.get(i) == ' ') {
+            i++;
+        }
+        while (to > i && bytes.get(to - 1) == ' ') {
+            to--;
+        }
+        if (i == to) {
+            return Double.NaN;
+        }
+        boolean negative = bytes.get(i) == '-';
+        if (negative || bytes.get(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; i < to && isDigit(bytes.get(i)); i++, any = true) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (bytes.get(i) - '0');
+                if (mantissa > 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                digits++;
+            }
+        }
+        if (i < to && bytes.get(i) == '.') {
+            for (i++; i < to && isDigit(bytes.get(i)); i++, any = true) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (bytes.get(i) - '0');
+                    exponent--;
+                    if (mantissa > 0) {
+                        digits++;
+                    }
+                } else {
+                    digits++;
+                }
+            }
+        }
+        if (any && i < to && (bytes.get(i) == 'e' || bytes.get(i) == 'E')) {
+            int j = i + 1;
+            boolean negativeExponent = j < to && bytes.get(j) == '-';
+            if (j < to && (bytes.get(j) == '-' || bytes.get(j) == '+')) {
+                j++;
+            }
+            int value = 0;
+            boolean anyExponent = false;
+            for (; j < to && isDigit(bytes.get(j)) && value < 100000; j++, anyExponent = true) {
+                value = value * 10 + (bytes.get(j) - '0');
+            }
+            if (anyExponent) {
+                exponent += negativeExponent ? -value : value;
+                i = j;
+            }
+        }
+        if (!any || i != to || digits > 15 || mantissa >= MAX_EXACT || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+            // also covers NaN, Infinity and type suffixes
+            return Double.parseDouble(decode(bytes, from, to));
+        }
+        // mantissa and power of ten are both exact, so a single division or multiplication rounds correctly
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return String of UTF-8 bytes [from, to) of buffer, buffer position is not changed.
+     */
+    public static String decode(ByteBuffer bytes, int from, int to) {
+        byte[] copy = new byte[to - from];
+        ByteBuffer range = bytes.duplicate();
+        range.position(from);
+        range.get(copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,256 @@
+package decisiontree.writer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+import randomforest.Predictions;
+
+/**
+ * Writes one row per predicted sample into a table of (year int, datetime timestamp, label text, vote float) with
+ * partition key year. Rows are grouped by partition into unlogged batches, so every batch goes to a single replica
+ * set, and batches are executed asynchronously. At most max in flight batches are executed at the same time, writing
+ * blocks while the window is full, so a slow cluster slows down the caller instead of exhausting memory.
+ *
+ * A writer is used by one thread. Failures of asynchronous batches are thrown by the next call.
+ */
+public class CassandraPredictionWriter implements Closeable {
+
+	/** Default number of rows per batch. */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/** Default number of batches executed at the same time. */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+	private final Session session;
+	private final PreparedStatement insert;
+	private final int batchSize;
+	private final int maxInFlight;
+
+	/** Permits of batches which can be executed. */
+	private final Semaphore inFlight;
+
+	/** Batch being filled per partition key. */
+	private final Map<Integer, BatchStatement> batches = new HashMap<>();
+
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	private final long start = System.nanoTime();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder numBatches = new LongAdder();
+	private final LongAdder totalLatency = new LongAdder();
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	/**
+	 *
+	 * @param session
+	 *     session of the keyspace of table, stays open after the writer is closed
+	 * @param table
+	 *     table of predictions
+	 * @param batchSize
+	 *     number of rows per batch
+	 * @param maxInFlight
+	 *     number of batches executed at the same time
+	 */
+	public CassandraPredictionWriter(Session session, String table, int batchSize, int maxInFlight) {
+		if (batchSize < 1 || maxInFlight < 1) {
+			throw new IllegalArgumentException("Batch size and batches in flight must be positive: " + batchSize + ", " + maxInFlight);
+		}
+		this.session = session;
+		this.insert = session.prepare("INSERT INTO " + table + " (year, datetime, label, vote) VALUES (?, ?, ?, ?)");
+		this.batchSize = batchSize;
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	public CassandraPredictionWriter(Session session, String table) {
+		this(session, table, DEFAULT_BATCH_SIZE, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Adds prediction of one sample, its batch is executed once it is full.
+	 *
+	 * @param year
+	 *     partition key
+	 * @param datetime
+	 *     time of the predicted tick
+	 * @param label
+	 *     predicted label
+	 * @param vote
+	 *     fraction of trees which voted for label
+	 */
+	public void write(int year, Date datetime, String label, float vote) throws IOException {
+		checkFailure();
+		BatchStatement batch = batches.get(year);
+		if (batch == null) {
+			batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+			batches.put(year, batch);
+		}
+		batch.add(insert.bind(year, datetime, label, vote));
+		if (batch.size() == batchSize) {
+			batches.remove(year);
+			execute(batch);
+		}
+	}
+
+	/**
+	 * Adds predictions of all samples.
+	 *
+	 * @param years
+	 *     partition key of every sample
+	 * @param datetimes
+	 *     time of every sample in milliseconds since epoch
+	 * @param predictions
+	 *     predictions of samples in the same order
+	 */
+	public void write(int[] years, long[] datetimes, Predictions predictions) throws IOException {
+		if (years.length != predictions.size() || datetimes.length != predictions.size()) {
+			throw new IllegalArgumentException("Expected " + predictions.size() + " keys, got " + years.length + " and " + datetimes.length);
+		}
+		for (int i = 0; i < predictions.size(); i++) {
+			write(years[i], new Date(datetimes[i]), predictions.getLabel(i).getPrintValue(), (float) predictions.getVoteFraction(i));
+		}
+	}
+
+	private void execute(BatchStatement batch) throws IOException {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for batches in flight", e);
+		}
+		int rows = batch.size();
+		long sent = System.nanoTime();
+		ResultSetFuture future;
+		try {
+			future = session.executeAsync(batch);
+		} catch (RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+
+			@Override
+			public void onSuccess(ResultSet result) {
+				long latency = System.nanoTime() - sent;
+				written.add(rows);
+				numBatches.increment();
+				totalLatency.add(latency);
+				maxLatency.accumulateAndGet(latency, Math::max);
+				inFlight.release();
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				failure.compareAndSet(null, t);
+				inFlight.release();
+			}
+		});
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable t = failure.get();
+		if (t != null) {
+			throw new IOException("Failed writing predictions", t);
+		}
+	}
+
+	/**
+	 * Executes all partly filled batches and waits until all batches are written.
+	 */
+	public void flush() throws IOException {
+		for (BatchStatement batch : batches.values()) {
+			execute(batch);
+		}
+		batches.clear();
+		try {
+			inFlight.acquire(maxInFlight);
+			inFlight.release(maxInFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for batches in flight", e);
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Flushes the writer, the session is left open.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	/**
+	 * @return Metrics of batches written so far.
+	 */
+	public Metrics getMetrics() {
+		return new Metrics(written.sum(), numBatches.sum(), System.nanoTime() - start, totalLatency.sum(), maxLatency.get());
+	}
+
+	/**
+	 * Throughput and latency of written batches.
+	 */
+	public static class Metrics {
+
+		private final long numPredictions;
+		private final long numBatches;
+		private final long elapsedNanos;
+		private final long totalLatencyNanos;
+		private final long maxLatencyNanos;
+
+		Metrics(long numPredictions, long numBatches, long elapsedNanos, long totalLatencyNanos, long maxLatencyNanos) {
+			this.numPredictions = numPredictions;
+			this.numBatches = numBatches;
+			this.elapsedNanos = elapsedNanos;
+			this.totalLatencyNanos = totalLatencyNanos;
+			this.maxLatencyNanos = maxLatencyNanos;
+		}
+
+		public long getNumPredictions() {
+			return numPredictions;
+		}
+
+		public long getNumBatches() {
+			return numBatches;
+		}
+
+		/**
+		 * @return Written predictions per second since the writer was created.
+		 */
+		public double getThroughput() {
+			return elapsedNanos > 0 ? numPredictions * 1e9 / elapsedNanos : 0;
+		}
+
+		/**
+		 * @return Mean time from sending a batch until it is written, in milliseconds.
+		 */
+		public double getMeanLatencyMillis() {
+			return numBatches > 0 ? totalLatencyNanos / 1e6 / numBatches : 0;
+		}
+
+		public double getMaxLatencyMillis() {
+			return maxLatencyNanos / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Metrics [predictions=%d, batches=%d, throughput=%.0f/s, mean latency=%.2f ms, max latency=%.2f ms]",
+					numPredictions, numBatches, getThroughput(), getMeanLatencyMillis(), getMaxLatencyMillis());
+		}
+	}
+}
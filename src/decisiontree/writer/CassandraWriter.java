@@ -1,91 +1,146 @@
 package decisiontree.writer;
 
-import java.text.DecimalFormat;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Session;
 
 import decisiontree.DecisionTree;
 import decisiontree.data.DataSample;
-import decisiontree.utils.MathUtils;
+import decisiontree.reader.CassandraReader;
+import randomforest.BacktestWindow;
+import randomforest.Predictions;
+import randomforest.RandomForest;
 
-public class CassandraWriter implements Writer {
+/**
+ * Writes accuracy of a forest into a summary table and creates writers of per sample predictions. One connection and
+ * session is kept until the writer is closed.
+ */
+public class CassandraWriter implements Writer, Closeable {
 
-	private static Cluster cluster;
-	private static Session session;
+	/** Default contact point. */
+	public static final String DEFAULT_HOST = "127.0.0.1";
+
+	private final Cluster.Builder clusterBuilder;
+	private final String keyspace;
+	private Cluster cluster;
+	private Session session;
+	
+	/** Time of the backtest run of windows written by this writer. */
+	private final Date run = new Date();
+	
+	/** Prepared summary insert per table. */
+	private final Map<String, PreparedStatement> inserts = new HashMap<>();
+	
+	public CassandraWriter() {
+		this(Cluster.builder().addContactPoint(DEFAULT_HOST), CassandraReader.DEFAULT_KEYSPACE);
+	}
+	
+	/**
+	 * 
+	 * @param clusterBuilder
+	 *     builder of the cluster connection, e.g. pointing to a local or embedded instance
+	 * @param keyspace
+	 *     keyspace of written tables
+	 */
+	public CassandraWriter(Cluster.Builder clusterBuilder, String keyspace) {
+		this.clusterBuilder = clusterBuilder;
+		this.keyspace = keyspace;
+	}
+	
+	private Session session() {
+		if (session == null) {
+			cluster = clusterBuilder.build();
+			session = cluster.connect(keyspace);
+		}
+		return session;
+	}
 	
 	@Override
 	public void writeData(String table, List<DecisionTree> trees, List<DataSample> data) {
-		int numCorrect = 0;
-		int numWrong = 0;
-		
-		for(DataSample dataSample: data) {
-            String actualVal = dataSample.getLabel().getPrintValue();
-            String finalPredVal;
-            	
-            int upCount = 0;
-           	int downCount = 0;
-           	for(DecisionTree randTree: trees){
-           		String predVal = randTree.classify(dataSample).getPrintValue();
-           		
-           		if(predVal.equalsIgnoreCase("up")){
-           			upCount++;
-           		}
-           		else if(predVal.equalsIgnoreCase("down")) {
-           			downCount++;
-           		}
-           		else {
-           			System.out.println("Unexpected Label: " + predVal);
-            	}
-            }
-            	
-            if(upCount == downCount){
-           		int randInt = MathUtils.randomInt(0, 1);
-           		if(randInt == 1){
-           			finalPredVal = "up";
-           		}
-           		else {
-           			finalPredVal = "down";
-           		}
-           	}
-           	else if(upCount > downCount){
-           		finalPredVal = "up";
-           	}
-           	else {
-           		finalPredVal = "down";
-            }
-            	
-           	if(actualVal.equalsIgnoreCase(finalPredVal)){
-                numCorrect++;
-            }
-           	else {
-                numWrong++;
-            }
-        }
-       
-        // print out the correct predictions and the accuracy
-        int totalPredictions = numCorrect + numWrong;
-        DecimalFormat twoDigit = new DecimalFormat("#,###.00");
-        String accuracy = (twoDigit.format(100*(double)(numCorrect)/(double)(totalPredictions)));
-		
-		cluster = Cluster.builder().addContactPoint("127.0.0.1").build();
-		session = cluster.connect("exchange");
-	    
-		LocalDateTime date = LocalDateTime.now();
-		DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-		String dateStr = date.format(fmt);
-		int year = Integer.parseInt(dateStr.split("-")[0]);
+		// votes of all trees are counted in parallel by the forest
+		Predictions predictions = new RandomForest(trees).predict(data);
+		int numCorrect = predictions.countCorrect(data);
+		int totalPredictions = data.size();
+		double accuracy = 100.0 * numCorrect / totalPredictions;
 		
-		String output = String.format("%s,'%sZ',%s,%s,%s,%s", year, dateStr,  accuracy, numCorrect, trees.size(), totalPredictions);
-		String insertCommand = String.format("INSERT INTO %s (year, datetime, accuracy, correct, num_trees, total) " +
-		                       "VALUES (%s);", table, output);
+		PreparedStatement insert = inserts.get(table);
+		if (insert == null) {
+			insert = session().prepare("INSERT INTO " + table + " (year, datetime, accuracy, correct, num_trees, total) VALUES (?, ?, ?, ?, ?, ?)");
+			inserts.put(table, insert);
+		}
+		ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
 		
-		System.out.println(String.format("Accuracy = %s", accuracy));
-		session.execute(insertCommand);
-		cluster.close();
+		System.out.println(String.format("Accuracy = %.2f", accuracy));
+		session().execute(insert.bind(now.getYear(), Date.from(now.toInstant()), accuracyValue(insert, accuracy), numCorrect,
+				trees.size(), totalPredictions));
+	}
+	
+	/**
+	 * Converts accuracy to the type of the accuracy column, so summary tables with a float, double or decimal column
+	 * all keep working.
+	 */
+	private static Object accuracyValue(PreparedStatement insert, double accuracy) {
+		switch (insert.getVariables().getType("accuracy").getName()) {
+		    case DOUBLE:
+		    	return accuracy;
+		    case DECIMAL:
+		    	return BigDecimal.valueOf(accuracy).setScale(2, RoundingMode.HALF_UP);
+		    default:
+		    	return (float) accuracy;
+		}
+	}
+	
+	/**
+	 * Inserts a row per window into a table of (run timestamp, window int, train_start double, test_start double,
+	 * test_end double, accuracy float, correct int, num_trees int, train_rows int, total int) keyed by run and window.
+	 * Run is the time this writer was created, so all windows of a backtest share it.
+	 */
+	@Override
+	public void writeWindow(String table, BacktestWindow window) {
+		String key = table + "#window";
+		PreparedStatement insert = inserts.get(key);
+		if (insert == null) {
+			insert = session().prepare("INSERT INTO " + table + " (run, window, train_start, test_start, test_end, accuracy, correct, num_trees, train_rows, total) "
+					+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			inserts.put(key, insert);
+		}
+		session().execute(insert.bind(run, window.getIndex(), window.getTrainStart(), window.getTestStart(), window.getTestEnd(),
+				(float) (100 * window.getAccuracy()), window.getCorrect(), window.getNumTrees(), window.getNumTrainRows(), window.getTotal()));
+	}
+	
+	/**
+	 * 
+	 * @param table
+	 *     table of predictions
+	 * @param batchSize
+	 *     number of rows per batch
+	 * @param maxInFlight
+	 *     number of batches executed at the same time
+	 * @return
+	 *     writer of per sample predictions sharing the session of this writer
+	 */
+	public CassandraPredictionWriter newPredictionWriter(String table, int batchSize, int maxInFlight) {
+		return new CassandraPredictionWriter(session(), table, batchSize, maxInFlight);
+	}
+	
+	@Override
+	public void close() {
+		if (cluster != null) {
+			cluster.close();
+			cluster = null;
+			session = null;
+			inserts.clear();
+		}
 	}
 
-}
\ No newline at end of file
+}
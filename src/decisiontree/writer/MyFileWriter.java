@@ -10,7 +10,9 @@ import java.util.List;
 
 import decisiontree.DecisionTree;
 import decisiontree.data.DataSample;
-import decisiontree.utils.MathUtils;
+import randomforest.BacktestWindow;
+import randomforest.Predictions;
+import randomforest.RandomForest;
 
 public class MyFileWriter implements Writer {
 	
@@ -18,52 +20,10 @@ public class MyFileWriter implements Writer {
     	FileWriter writer = new FileWriter(new File(filename));
         writer.append("time,numtrees,correct,total,accuracy").append("\n");
         
-        int numCorrect = 0;
-        int numWrong = 0;
-            
-        for(DataSample dataSample: data) {
-            String actualVal = dataSample.getLabel().getPrintValue();
-            String finalPredVal;
-            	
-            int upCount = 0;
-           	int downCount = 0;
-           	for(DecisionTree randTree: trees){
-           		String predVal = randTree.classify(dataSample).getPrintValue();
-           		
-           		if(predVal.equalsIgnoreCase("up")){
-           			upCount++;
-           		}
-           		else if(predVal.equalsIgnoreCase("down")) {
-           			downCount++;
-           		}
-           		else {
-           			System.out.println("Unexpected Label: " + predVal);
-            	}
-            }
-            	
-            if(upCount == downCount){
-           		int randInt = MathUtils.randomInt(0, 1);
-           		if(randInt == 1){
-           			finalPredVal = "up";
-           		}
-           		else {
-           			finalPredVal = "down";
-           		}
-           	}
-           	else if(upCount > downCount){
-           		finalPredVal = "up";
-           	}
-           	else {
-           		finalPredVal = "down";
-            }
-            	
-           	if(actualVal.equalsIgnoreCase(finalPredVal)){
-                numCorrect++;
-            }
-           	else {
-                numWrong++;
-            }
-        }
+        // votes of all trees are counted in parallel by the forest
+        Predictions predictions = new RandomForest(trees).predict(data);
+        int numCorrect = predictions.countCorrect(data);
+        int numWrong = data.size() - numCorrect;
         
         // print out the correct predictions and the accuracy
         int totalPredictions = numCorrect + numWrong;
@@ -75,4 +35,21 @@ public class MyFileWriter implements Writer {
         writer.flush();
         writer.close();
     }
+
+    /**
+     * Appends a line per window, the header is written with the first window of a new file.
+     */
+    @Override
+    public void writeWindow(String filename, BacktestWindow window) throws IOException {
+        File file = new File(filename);
+        boolean newFile = !file.exists() || file.length() == 0;
+        try (FileWriter writer = new FileWriter(file, true)) {
+            if (newFile) {
+                writer.append("time,window,trainstart,teststart,testend,numtrees,trainrows,correct,total,accuracy").append("\n");
+            }
+            writer.append(String.format("%s,%d,%s,%s,%s,%d,%d,%d,%d,%.2f%%", LocalDateTime.now(), window.getIndex(),
+                    window.getTrainStart(), window.getTestStart(), window.getTestEnd(), window.getNumTrees(),
+                    window.getNumTrainRows(), window.getCorrect(), window.getTotal(), 100 * window.getAccuracy())).append("\n");
+        }
+    }
 }
@@ -5,7 +5,14 @@ import java.util.List;
 
 import decisiontree.DecisionTree;
 import decisiontree.data.DataSample;
+import randomforest.BacktestWindow;
 
 public interface Writer {
     void writeData(String target, List<DecisionTree> trees, List<DataSample> data) throws IOException;
+
+    /**
+     * Writes accuracy of one window of a walk forward backtest. Windows of one backtest are written in order to the
+     * same target.
+     */
+    void writeWindow(String target, BacktestWindow window) throws IOException;
 }
@@ -0,0 +1,112 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+import decisiontree.data.ColumnBatch;
+import decisiontree.data.ColumnarFile;
+
+/**
+ * Input format of {@link ColumnarFile}s with one {@link BootstrapSplit} per tree. Every split is a seeded sample of
+ * blocks of all input files, so number of trees, rows per tree and number of map tasks no longer depend on each
+ * other. Rows of sampled blocks are weighted by the mapper's Poisson bootstrap.
+ */
+public class BootstrapInputFormat extends FileInputFormat<LongWritable, ColumnBatch> {
+
+	/** Configuration key of number of trees, which is number of splits. */
+	public static final String NUM_TREES = "randomforest.bootstrap.trees";
+
+	/** Configuration key of fraction of blocks sampled per tree, all blocks by default. */
+	public static final String SAMPLE_FRACTION = "randomforest.bootstrap.fraction";
+
+	@Override
+	public RecordReader<LongWritable, ColumnBatch> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new ColumnarRecordReader();
+	}
+
+	/**
+	 * Indexes blocks of all input files and draws distinct blocks for every tree.
+	 */
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		Configuration conf = job.getConfiguration();
+		int numTrees = conf.getInt(NUM_TREES, 1);
+		double fraction = conf.getDouble(SAMPLE_FRACTION, 1.0);
+		if (numTrees < 1 || !(fraction > 0 && fraction <= 1)) {
+			throw new IllegalArgumentException("Invalid bootstrap input: trees=" + numTrees + ", fraction=" + fraction);
+		}
+		long seed = conf.getLong(RandomForestMapper.SEED, 0);
+
+		List<FileStatus> files = listStatus(job);
+		Path[] paths = new Path[files.size()];
+		long[] rowOffsets = new long[files.size()];
+		List<Integer> blockFiles = new ArrayList<>();
+		List<Long> blockOffsets = new ArrayList<>();
+		List<Long> blockLengths = new ArrayList<>();
+		long numRows = 0;
+		for (int f = 0; f < files.size(); f++) {
+			FileStatus file = files.get(f);
+			paths[f] = file.getPath();
+			rowOffsets[f] = numRows;
+			List<ColumnarFile.BlockInfo> blocks = ColumnarFile.readIndex(paths[f].getFileSystem(conf), paths[f]);
+			for (int b = 0; b < blocks.size(); b++) {
+				long offset = blocks.get(b).getOffset();
+				// footer follows the last block, so its length is overestimated by the footer size
+				long end = b + 1 < blocks.size() ? blocks.get(b + 1).getOffset() : file.getLen();
+				blockFiles.add(f);
+				blockOffsets.add(offset);
+				blockLengths.add(end - offset);
+				numRows += blocks.get(b).getRows();
+			}
+		}
+
+		int numBlocks = blockOffsets.size();
+		if (numBlocks == 0) {
+			return new ArrayList<>();
+		}
+		int sampled = (int) Math.max(1, Math.min(numBlocks, Math.round(fraction * numBlocks)));
+		List<InputSplit> splits = new ArrayList<>(numTrees);
+		int[] order = new int[numBlocks];
+		for (int tree = 0; tree < numTrees; tree++) {
+			// negative indices are never trees, so the block stream is independent of the tree's own stream
+			SplittableRandom random = RandomForestMapper.treeRandom(seed, -1 - tree);
+			for (int i = 0; i < numBlocks; i++) {
+				order[i] = i;
+			}
+			// partial Fisher-Yates shuffle, the first sampled positions hold distinct blocks
+			for (int i = 0; i < sampled; i++) {
+				int j = i + random.nextInt(numBlocks - i);
+				int swap = order[i];
+				order[i] = order[j];
+				order[j] = swap;
+			}
+			// global block order is by file and offset, so sorting reads files sequentially
+			int[] chosen = Arrays.copyOf(order, sampled);
+			Arrays.sort(chosen);
+
+			int[] chosenFiles = new int[sampled];
+			long[] offsets = new long[sampled];
+			long length = 0;
+			for (int i = 0; i < sampled; i++) {
+				chosenFiles[i] = blockFiles.get(chosen[i]);
+				offsets[i] = blockOffsets.get(chosen[i]);
+				length += blockLengths.get(chosen[i]);
+			}
+			splits.add(new BootstrapSplit(tree, paths, rowOffsets, chosenFiles, offsets, length));
+		}
+		return splits;
+	}
+}
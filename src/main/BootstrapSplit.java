@@ -0,0 +1,128 @@
+package main;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+/**
+ * Split of one tree, a sample of blocks of all columnar input files. Blocks are ordered by file and offset, so files
+ * are read sequentially.
+ */
+public class BootstrapSplit extends InputSplit implements Writable {
+	
+	private int tree;
+	
+	private String[] files = new String[0];
+	
+	/** Index of the first row of each file in the whole input, keeps row keys unique across files. */
+	private long[] rowOffsets = new long[0];
+	
+	/** File index of each sampled block. */
+	private int[] blockFiles = new int[0];
+	
+	/** Offset of each sampled block in its file. */
+	private long[] blockOffsets = new long[0];
+	
+	/** Approximate number of bytes of sampled blocks. */
+	private long length;
+	
+	public BootstrapSplit() {
+		// for deserialization
+	}
+	
+	public BootstrapSplit(int tree, Path[] files, long[] rowOffsets, int[] blockFiles, long[] blockOffsets, long length) {
+		this.tree = tree;
+		this.files = new String[files.length];
+		for (int i = 0; i < files.length; i++) {
+			this.files[i] = files[i].toString();
+		}
+		this.rowOffsets = rowOffsets;
+		this.blockFiles = blockFiles;
+		this.blockOffsets = blockOffsets;
+		this.length = length;
+	}
+	
+	public int getTree() {
+		return tree;
+	}
+	
+	public int getNumFiles() {
+		return files.length;
+	}
+	
+	public Path getFile(int file) {
+		return new Path(files[file]);
+	}
+	
+	public long getRowOffset(int file) {
+		return rowOffsets[file];
+	}
+	
+	public int getNumBlocks() {
+		return blockOffsets.length;
+	}
+	
+	public int getBlockFile(int block) {
+		return blockFiles[block];
+	}
+	
+	public long getBlockOffset(int block) {
+		return blockOffsets[block];
+	}
+	
+	@Override
+	public long getLength() {
+		return length;
+	}
+	
+	/**
+	 * Samples span the whole input, so no host holds a split.
+	 */
+	@Override
+	public String[] getLocations() {
+		return new String[0];
+	}
+	
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(tree);
+		out.writeInt(files.length);
+		for (int i = 0; i < files.length; i++) {
+			out.writeUTF(files[i]);
+			out.writeLong(rowOffsets[i]);
+		}
+		out.writeInt(blockOffsets.length);
+		for (int i = 0; i < blockOffsets.length; i++) {
+			out.writeInt(blockFiles[i]);
+			out.writeLong(blockOffsets[i]);
+		}
+		out.writeLong(length);
+	}
+	
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		tree = in.readInt();
+		files = new String[in.readInt()];
+		rowOffsets = new long[files.length];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = in.readUTF();
+			rowOffsets[i] = in.readLong();
+		}
+		blockFiles = new int[in.readInt()];
+		blockOffsets = new long[blockFiles.length];
+		for (int i = 0; i < blockOffsets.length; i++) {
+			blockFiles[i] = in.readInt();
+			blockOffsets[i] = in.readLong();
+		}
+		length = in.readLong();
+	}
+	
+	@Override
+	public String toString() {
+		return "BootstrapSplit [tree=" + tree + ", files=" + files.length + ", blocks=" + blockOffsets.length + "]";
+	}
+}
@@ -0,0 +1,145 @@
+package main;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import randomforest.RandomTree;
+import decisiontree.DecisionTree;
+import decisiontree.FlatTree;
+import decisiontree.TreeCompiler;
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.feature.Feature;
+import decisiontree.label.Label;
+import decisiontree.reader.MyFileReader;
+import decisiontree.reader.Reader;
+
+/**
+ * Compares classification latency of a forest walked as {@link decisiontree.Node} objects, compiled into
+ * {@link FlatTree}s and composed into a single method handle by {@link TreeCompiler}.
+ *
+ * Usage: ClassifierBenchmark &lt;data file&gt; [number of trees] [iterations]
+ */
+public class ClassifierBenchmark {
+
+    /** Seed of trained trees, so every run benchmarks the same forest. */
+    private static final long SEED = 1;
+
+    /** Compiled forest, read once when {@link Compiled} is initialized. */
+    private static MethodHandle forest;
+
+    /**
+     * Holds compiled forest in a static final field, so JIT compiler inlines it as a constant.
+     */
+    private static class Compiled {
+
+        private static final MethodHandle FOREST = forest;
+    }
+
+    public static void main(String[] args) throws Throwable {
+        if (args.length < 1) {
+            System.err.println("Usage: ClassifierBenchmark <data file> [number of trees] [iterations]");
+            System.exit(1);
+        }
+        int numTrees = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Reader reader = new MyFileReader();
+        reader.readData(args[0], 0);
+        ColumnarDataSet data = reader.getDataSet();
+        RandomForestDriver.header = reader.getHeader();
+        RandomForestMapper.initFeatureTypes();
+
+        List<DecisionTree> trees = new ArrayList<>();
+        for (int t = 0; t < numTrees; t++) {
+            SplittableRandom random = RandomForestMapper.treeRandom(SEED, t);
+            Bootstrap sample = RandomForestMapper.bootstrap(data.size(), data.allRows(), random);
+            RandomTree tree = new RandomTree((int) Math.sqrt(data.getHeader().length));
+            tree.setSeed(random.nextLong());
+            List<List<Feature>> features = RandomForestMapper.getFeatures(data, sample.getRows(), Integer.MAX_VALUE);
+            tree.train(data, sample, features);
+            trees.add(tree);
+        }
+
+        Label[] classes = data.getClasses();
+        double[][] rows = new double[data.size()][];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = data.getRow(row, new double[data.getColumnNames().length]);
+        }
+        FlatTree[] flatTrees = new FlatTree[trees.size()];
+        for (int t = 0; t < flatTrees.length; t++) {
+            flatTrees[t] = FlatTree.compile(trees.get(t), classes);
+        }
+        forest = new TreeCompiler().compileForest(trees, classes);
+
+        int[] nodes = new int[rows.length];
+        int[] flat = new int[rows.length];
+        int[] compiled = new int[rows.length];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            classifyNodes(trees, classes, rows, nodes);
+            long nodesTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            classifyFlat(flatTrees, classes.length, rows, flat);
+            long flatTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int row = 0; row < rows.length; row++) {
+                compiled[row] = (int) Compiled.FOREST.invokeExact(rows[row]);
+            }
+            long compiledTime = System.nanoTime() - start;
+
+            System.out.printf("iteration %d: nodes %.1f ns/row, flat %.1f ns/row, compiled %.1f ns/row%n", i,
+                    nodesTime / (double) rows.length, flatTime / (double) rows.length,
+                    compiledTime / (double) rows.length);
+        }
+        for (int row = 0; row < rows.length; row++) {
+            if (nodes[row] != flat[row] || nodes[row] != compiled[row]) {
+                System.err.println("Predictions differ for row " + row);
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void classifyNodes(List<DecisionTree> trees, Label[] classes, double[][] rows, int[] out) {
+        int[] votes = new int[classes.length];
+        for (int row = 0; row < rows.length; row++) {
+            Arrays.fill(votes, 0);
+            for (DecisionTree tree : trees) {
+                Label label = tree.classify(rows[row]);
+                for (int c = 0; c < classes.length; c++) {
+                    if (classes[c].equals(label)) {
+                        votes[c]++;
+                        break;
+                    }
+                }
+            }
+            out[row] = argmax(votes);
+        }
+    }
+
+    private static void classifyFlat(FlatTree[] trees, int numClasses, double[][] rows, int[] out) {
+        int[] votes = new int[numClasses];
+        for (int row = 0; row < rows.length; row++) {
+            Arrays.fill(votes, 0);
+            for (FlatTree tree : trees) {
+                votes[tree.classify(rows[row])]++;
+            }
+            out[row] = argmax(votes);
+        }
+    }
+
+    private static int argmax(int[] votes) {
+        int best = 0;
+        for (int i = 1; i < votes.length; i++) {
+            if (votes[i] > votes[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,66 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import decisiontree.data.ColumnBatch;
+import decisiontree.data.ColumnarFile;
+
+/**
+ * Input format of {@link ColumnarFile}s. Splits are runs of whole blocks found from the footer index, each mapper
+ * reads its blocks as {@link ColumnBatch}es keyed by index of their first row.
+ */
+public class ColumnarInputFormat extends FileInputFormat<LongWritable, ColumnBatch> {
+
+	/** Configuration key of number of rows per split, one split per file by default. */
+	public static final String ROWS_PER_SPLIT = "randomforest.columnar.split.rows";
+	
+	@Override
+	public RecordReader<LongWritable, ColumnBatch> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new ColumnarRecordReader();
+	}
+	
+	/**
+	 * Groups consecutive blocks of every file into splits of at least rows per split rows, the last split of a file
+	 * may be smaller.
+	 */
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		long rowsPerSplit = job.getConfiguration().getLong(ROWS_PER_SPLIT, Long.MAX_VALUE);
+		List<InputSplit> splits = new ArrayList<>();
+		for (FileStatus file : listStatus(job)) {
+			Path path = file.getPath();
+			FileSystem fs = path.getFileSystem(job.getConfiguration());
+			List<ColumnarFile.BlockInfo> blocks = ColumnarFile.readIndex(fs, path);
+			BlockLocation[] locations = fs.getFileBlockLocations(file, 0, file.getLen());
+			
+			int first = 0;
+			long rows = 0;
+			for (int b = 0; b < blocks.size(); b++) {
+				rows += blocks.get(b).getRows();
+				if (rows >= rowsPerSplit || b == blocks.size() - 1) {
+					long start = blocks.get(first).getOffset();
+					// last split runs to the end of file, only offsets of blocks matter to the reader
+					long end = b + 1 < blocks.size() ? blocks.get(b + 1).getOffset() : file.getLen();
+					splits.add(new FileSplit(path, start, end - start, locations[getBlockIndex(locations, start)].getHosts()));
+					first = b + 1;
+					rows = 0;
+				}
+			}
+		}
+		return splits;
+	}
+}
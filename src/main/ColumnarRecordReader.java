@@ -0,0 +1,131 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import decisiontree.data.ColumnBatch;
+import decisiontree.data.ColumnarFile;
+
+/**
+ * Reads blocks of {@link ColumnarFile}s, one {@link ColumnBatch} per block keyed by index of its first row in the
+ * input. A {@link FileSplit} is read as the blocks which start within it, a {@link BootstrapSplit} as its sampled
+ * blocks. The batch is reused, so values stay valid only until the next call of {@link #nextKeyValue()}.
+ */
+public class ColumnarRecordReader extends RecordReader<LongWritable, ColumnBatch> {
+
+	private Configuration conf;
+
+	private final List<Path> files = new ArrayList<>();
+
+	/** Index of the first row of each file in the input. */
+	private final List<Long> rowOffsets = new ArrayList<>();
+
+	/** File index of each block to read. */
+	private final List<Integer> blockFiles = new ArrayList<>();
+
+	/** Offset of each block to read. */
+	private final List<Long> blockOffsets = new ArrayList<>();
+
+	private int next;
+
+	/** Index of the open file, -1 if none is open. */
+	private int file = -1;
+
+	private FSDataInputStream in;
+
+	private CompressionCodec codec;
+
+	private int numColumns;
+
+	private final LongWritable key = new LongWritable();
+
+	private ColumnBatch batch;
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+		conf = context.getConfiguration();
+		if (genericSplit instanceof BootstrapSplit) {
+			BootstrapSplit split = (BootstrapSplit) genericSplit;
+			for (int f = 0; f < split.getNumFiles(); f++) {
+				files.add(split.getFile(f));
+				rowOffsets.add(split.getRowOffset(f));
+			}
+			for (int b = 0; b < split.getNumBlocks(); b++) {
+				blockFiles.add(split.getBlockFile(b));
+				blockOffsets.add(split.getBlockOffset(b));
+			}
+			return;
+		}
+		FileSplit split = (FileSplit) genericSplit;
+		Path path = split.getPath();
+		files.add(path);
+		rowOffsets.add(0L);
+		for (ColumnarFile.BlockInfo block : ColumnarFile.readIndex(path.getFileSystem(conf), path)) {
+			if (block.getOffset() >= split.getStart() && block.getOffset() < split.getStart() + split.getLength()) {
+				blockFiles.add(0);
+				blockOffsets.add(block.getOffset());
+			}
+		}
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		if (next == blockOffsets.size()) {
+			return false;
+		}
+		int blockFile = blockFiles.get(next);
+		if (blockFile != file) {
+			open(blockFile);
+		}
+		in.seek(blockOffsets.get(next++));
+		batch = ColumnarFile.readBlock(in, codec, numColumns, batch);
+		key.set(rowOffsets.get(file) + batch.getFirstRow());
+		return true;
+	}
+
+	private void open(int blockFile) throws IOException {
+		close();
+		Path path = files.get(blockFile);
+		FileSystem fs = path.getFileSystem(conf);
+		in = fs.open(path);
+		ColumnarFile.Header header = ColumnarFile.readHeader(fs, path);
+		codec = header.newCodec(conf);
+		numColumns = header.getNumColumns();
+		file = blockFile;
+	}
+
+	@Override
+	public LongWritable getCurrentKey() {
+		return key;
+	}
+
+	@Override
+	public ColumnBatch getCurrentValue() {
+		return batch;
+	}
+
+	@Override
+	public float getProgress() {
+		return blockOffsets.isEmpty() ? 1.0f : (float) next / blockOffsets.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+			in = null;
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package main;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import decisiontree.DecisionTree;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.reader.Reader;
+import randomforest.Predictions;
+import randomforest.RandomForest;
+
+/**
+ * Searches tree parameters on data read and presorted once. Candidates are a grid of max depth, homogenity and number
+ * of features per split, or a random sample of the grid. Successive halving trains every candidate with a few trees,
+ * ranks candidates by accuracy on validation rows and keeps the best 1/eta of them with eta times more trees, until one
+ * candidate is left or the maximum number of trees is reached. Validation rows are the most recent windows of a time
+ * column and training rows the windows before them, like in {@link WalkForwardBacktest}, so candidates are not ranked
+ * on rows older than the rows they learned from. Trees of all candidates of a round are trained
+ * on one bounded thread pool, and a surviving candidate keeps the trees it already has.
+ *
+ * Best candidates are written as configuration options to the output file, which can be passed to the MapReduce job.
+ *
+ * Usage: HyperparameterSearch [-D options] input output
+ *
+ */
+public class HyperparameterSearch extends Configured implements Tool {
+
+    /** Configuration key of comma separated max depths to search, 0 for unlimited depth. */
+    public static final String MAX_DEPTHS = "randomforest.search.maxdepth";
+
+    /** Configuration key of comma separated homogenity percentages to search. */
+    public static final String HOMOGENITIES = "randomforest.search.homogenity";
+
+    /** Configuration key of comma separated numbers of features per split to search. */
+    public static final String NUM_FEATURES = "randomforest.search.features";
+
+    /** Configuration key of number of candidates sampled from the grid, whole grid by default. */
+    public static final String CANDIDATES = "randomforest.search.candidates";
+
+    /** Configuration key of number of trees of every candidate in the first round. */
+    public static final String MIN_TREES = "randomforest.search.trees.min";
+
+    /** Configuration key of number of trees after which halving stops. */
+    public static final String MAX_TREES = "randomforest.search.trees.max";
+
+    /** Configuration key of factor by which candidates are cut and trees are multiplied per round. */
+    public static final String ETA = "randomforest.search.eta";
+
+    /**
+     * Configuration key of number of most recent windows held out for validation, 1 by default. Windows are cut by
+     * {@link WalkForwardBacktest#TIME_COLUMN} with length {@link WalkForwardBacktest#WINDOW}.
+     */
+    public static final String VALIDATION_WINDOWS = "randomforest.search.validation.windows";
+
+    static final Logger logger = LoggerFactory.getLogger(HyperparameterSearch.class);
+
+    /**
+     * Tree parameters of one candidate with its trees trained so far.
+     */
+    public static class Candidate {
+
+        private final int maxDepth;
+
+        private final double homogenity;
+
+        private final int numFeatures;
+
+        private final List<DecisionTree> trees = new ArrayList<>();
+
+        private double accuracy = Double.NaN;
+
+        public Candidate(int maxDepth, double homogenity, int numFeatures) {
+            this.maxDepth = maxDepth;
+            this.homogenity = homogenity;
+            this.numFeatures = numFeatures;
+        }
+
+        /**
+         * @return Max depth, {@link Integer#MAX_VALUE} for unlimited depth.
+         */
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public double getHomogenity() {
+            return homogenity;
+        }
+
+        public int getNumFeatures() {
+            return numFeatures;
+        }
+
+        public int getNumTrees() {
+            return trees.size();
+        }
+
+        /**
+         * @return Validation accuracy of the last round the candidate took part in.
+         */
+        public double getAccuracy() {
+            return accuracy;
+        }
+
+        /**
+         * @return Copy of conf with tree parameters of the candidate.
+         */
+        public Configuration apply(Configuration conf) {
+            Configuration candidateConf = new Configuration(conf);
+            candidateConf.setInt(RandomForestMapper.MAX_DEPTH, maxDepth);
+            candidateConf.setDouble(RandomForestMapper.HOMOGENITY, homogenity);
+            candidateConf.setInt(RandomForestMapper.NUM_FEATURES, numFeatures);
+            return candidateConf;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("Candidate [maxDepth=%s, homogenity=%s, numFeatures=%d, trees=%d, accuracy=%.4f]",
+                    maxDepth == Integer.MAX_VALUE ? "unlimited" : maxDepth, homogenity, numFeatures, trees.size(), accuracy);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Configuration(), new HyperparameterSearch(), args));
+    }
+
+    public int run(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: HyperparameterSearch [-D options] input output");
+            return 1;
+        }
+        Configuration conf = getConf();
+        long seed = conf.getLong(LocalForestTrainer.SEED, conf.getLong(RandomForestMapper.SEED, System.nanoTime()));
+        Reader reader = WalkForwardBacktest.newTimeReader(conf);
+        ColumnarDataSet data = Reader.readDataSet(reader, args[0]);
+        RandomForestDriver.header = reader.getHeader();
+        RandomForestMapper.initFeatureTypes();
+        List<int[]> trainAndValidation = splitByTime(data, conf.get(WalkForwardBacktest.TIME_COLUMN, "year"),
+                conf.getDouble(WalkForwardBacktest.WINDOW, 1), conf.getInt(VALIDATION_WINDOWS, 1));
+        int[] trainRows = trainAndValidation.get(0);
+        int[] validationRows = trainAndValidation.get(1);
+        logger.info(String.format("Training on %d rows, validating on %d most recent rows", trainRows.length, validationRows.length));
+
+        int defaultFeatures = RandomForestMapper.defaultNumFeatures(data);
+        List<Candidate> candidates = grid(conf.getInts(MAX_DEPTHS), conf.getStrings(HOMOGENITIES, "1.0"),
+                conf.getInts(NUM_FEATURES).length > 0 ? conf.getInts(NUM_FEATURES) : new int[] { defaultFeatures });
+        int numCandidates = conf.getInt(CANDIDATES, candidates.size());
+        if (numCandidates < candidates.size()) {
+            Collections.shuffle(candidates, new Random(new SplittableRandom(seed).nextLong()));
+            candidates = new ArrayList<>(candidates.subList(0, numCandidates));
+        }
+
+        int threads = conf.getInt(LocalForestTrainer.THREADS, Runtime.getRuntime().availableProcessors());
+        long start = System.currentTimeMillis();
+        List<Candidate> ranked = successiveHalving(data, trainRows, validationRows, candidates, conf.getInt(MIN_TREES, 4),
+                conf.getInt(MAX_TREES, 64), conf.getInt(ETA, 3), threads, seed, conf);
+        logger.info(String.format("Searched %d candidates on %d threads in %d ms", candidates.size(), threads,
+                System.currentTimeMillis() - start));
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8))) {
+            writer.println("rank,accuracy,trees," + RandomForestMapper.MAX_DEPTH + "," + RandomForestMapper.HOMOGENITY + ","
+                    + RandomForestMapper.NUM_FEATURES);
+            for (int i = 0; i < ranked.size(); i++) {
+                Candidate candidate = ranked.get(i);
+                writer.println(String.format("%d,%.4f,%d,%d,%s,%d", i + 1, candidate.getAccuracy(), candidate.getNumTrees(),
+                        candidate.getMaxDepth(), candidate.getHomogenity(), candidate.getNumFeatures()));
+            }
+        }
+        logger.info("Best " + ranked.get(0));
+        return 0;
+    }
+
+    /**
+     * Splits rows in time, validation rows are the most recent windows of the time column and training rows all windows
+     * before them. Rows without time are left out.
+     *
+     * @return Training rows and validation rows.
+     */
+    static List<int[]> splitByTime(ColumnarDataSet data, String timeColumn, double window, int validationWindows) {
+        if (!(window > 0) || validationWindows < 1) {
+            throw new IllegalArgumentException("Invalid windows: window=" + window + ", validationWindows=" + validationWindows);
+        }
+        int column = data.getColumnIndex(timeColumn);
+        if (column < 0) {
+            throw new IllegalArgumentException("Time column not found: " + timeColumn);
+        }
+        List<int[]> windows = WalkForwardBacktest.cutWindows(data, column, window);
+        if (windows.size() <= validationWindows) {
+            throw new IllegalArgumentException("Need more than " + validationWindows + " windows of " + timeColumn
+                    + ", found " + windows.size());
+        }
+        int split = windows.size() - validationWindows;
+        List<int[]> trainAndValidation = new ArrayList<>();
+        trainAndValidation.add(WalkForwardBacktest.concat(windows.subList(0, split)));
+        trainAndValidation.add(WalkForwardBacktest.concat(windows.subList(split, windows.size())));
+        return trainAndValidation;
+    }
+
+    /**
+     * @return Candidate of every combination of parameters.
+     */
+    static List<Candidate> grid(int[] maxDepths, String[] homogenities, int[] numFeatures) {
+        if (maxDepths.length == 0) {
+            maxDepths = new int[] { 0 };
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (int maxDepth : maxDepths) {
+            for (String homogenity : homogenities) {
+                for (int features : numFeatures) {
+                    candidates.add(new Candidate(maxDepth > 0 ? maxDepth : Integer.MAX_VALUE, Double.parseDouble(homogenity), features));
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Ranks candidates by successive halving.
+     *
+     * @param data
+     *            Columnar data set shared by all candidates, its columns are sorted once for all trees.
+     * @param trainRows
+     *            Indices of training rows.
+     * @param validationRows
+     *            Indices of rows candidates are ranked on.
+     * @param candidates
+     *            Candidates to search.
+     * @param minTrees
+     *            Number of trees of every candidate in the first round.
+     * @param maxTrees
+     *            Number of trees after which no more rounds are run.
+     * @param eta
+     *            Factor by which candidates are cut and trees are multiplied every round.
+     * @param threads
+     *            Number of training threads.
+     * @param seed
+     *            Seed of trees, tree i of every candidate uses the same bootstrap sample.
+     * @param conf
+     *            Configuration with the same options as the MapReduce job.
+     * @return Candidates from best to worst, later rounds rank before earlier ones.
+     */
+    public static List<Candidate> successiveHalving(ColumnarDataSet data, int[] trainRows, int[] validationRows,
+            List<Candidate> candidates, int minTrees, int maxTrees, int eta, int threads, long seed, Configuration conf)
+            throws InterruptedException {
+        if (candidates.isEmpty() || minTrees < 1 || maxTrees < minTrees || eta < 2) {
+            throw new IllegalArgumentException("Invalid search: candidates=" + candidates.size() + ", trees=" + minTrees
+                    + ".." + maxTrees + ", eta=" + eta);
+        }
+        // presorted once here, not by the first trees of every candidate at the same time
+        for (int column = 0; column < data.getColumnNames().length; column++) {
+            data.getSortedRows(column);
+        }
+        Comparator<Candidate> byAccuracy = Comparator.comparingDouble(Candidate::getAccuracy).reversed();
+        List<Candidate> eliminated = new ArrayList<>();
+        List<Candidate> survivors = new ArrayList<>(candidates);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            int numTrees = minTrees;
+            int round = 0;
+            while (true) {
+                List<Future<DecisionTree>> futures = new ArrayList<>();
+                for (Candidate candidate : survivors) {
+                    Configuration candidateConf = candidate.apply(conf);
+                    for (int tree = candidate.getNumTrees(); tree < numTrees; tree++) {
+                        int treeIndex = tree;
+                        futures.add(executor.submit(() -> LocalForestTrainer.trainTree(data, trainRows, treeIndex, seed,
+                                candidateConf, null, null)));
+                    }
+                }
+                int next = 0;
+                for (Candidate candidate : survivors) {
+                    for (int tree = candidate.getNumTrees(); tree < numTrees; tree++) {
+                        candidate.trees.add(futures.get(next++).get());
+                    }
+                    candidate.accuracy = accuracy(data, validationRows, candidate.trees, seed);
+                }
+                survivors.sort(byAccuracy);
+                logger.info(String.format("Round %d with %d trees: best %s", round, numTrees, survivors.get(0)));
+                if (survivors.size() == 1 || numTrees >= maxTrees) {
+                    break;
+                }
+                int keep = Math.max(1, survivors.size() / eta);
+                List<Candidate> cut = new ArrayList<>(survivors.subList(keep, survivors.size()));
+                Collections.reverse(cut);
+                eliminated.addAll(cut);
+                survivors = new ArrayList<>(survivors.subList(0, keep));
+                numTrees = (int) Math.min(maxTrees, (long) numTrees * eta);
+                round++;
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training of a tree failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        // candidates eliminated last rank best among eliminated ones
+        List<Candidate> ranked = new ArrayList<>(survivors);
+        Collections.reverse(eliminated);
+        ranked.addAll(eliminated);
+        return ranked;
+    }
+
+    private static double accuracy(ColumnarDataSet data, int[] rows, List<DecisionTree> trees, long seed) {
+        if (rows.length == 0) {
+            return Double.NaN;
+        }
+        Predictions predictions = new RandomForest(trees, data.getClasses(), seed).predict(data, rows);
+        int correct = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (predictions.getLabel(i).equals(data.getLabel(rows[i]))) {
+                correct++;
+            }
+        }
+        return (double) correct / rows.length;
+    }
+}
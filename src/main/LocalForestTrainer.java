@@ -0,0 +1,184 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import decisiontree.DecisionTree;
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.data.DataSample;
+import decisiontree.reader.MyFileReader;
+import decisiontree.reader.Reader;
+import randomforest.ForestFile;
+import randomforest.ForestWritable;
+import randomforest.OutOfBagEstimate;
+import randomforest.OutOfBagVotes;
+import randomforest.Predictions;
+import randomforest.RandomForest;
+
+/**
+ * Trains a forest in a single process without Hadoop. Data is read once through a {@link Reader} into one columnar
+ * data set shared by all trees, trees are trained concurrently on a fixed size thread pool, each on its own bootstrap
+ * sample. Given the same seed, the same trees are trained regardless of number of threads. Forest is written in the
+ * same format as the output of the MapReduce job and into a binary {@link ForestFile}.
+ *
+ * Usage: LocalForestTrainer [-D options] input output numTrees
+ *
+ */
+public class LocalForestTrainer extends Configured implements Tool {
+
+    /** Configuration key of reader, "file" for a csv file or "cassandra" for a table. */
+    public static final String READER = "randomforest.local.reader";
+
+    /** Configuration key of number of training threads, number of processors by default. */
+    public static final String THREADS = "randomforest.local.threads";
+
+    /** Configuration key of number of rows out of 10 held out for testing, none by default. */
+    public static final String HOLDOUT = "randomforest.local.holdout";
+
+    /** Configuration key of seed of bootstrap samples, the job seed of the MapReduce job by default. */
+    public static final String SEED = "randomforest.local.seed";
+
+    /** Name of the written file, same as the output of the only reducer. */
+    private static final String OUTPUT_FILE = "part-r-00000";
+
+    /** Name of the written binary forest file. */
+    public static final String FOREST_FILE = "forest.rfm";
+
+    static final Logger logger = LoggerFactory.getLogger(LocalForestTrainer.class);
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Configuration(), new LocalForestTrainer(), args));
+    }
+
+    public int run(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: LocalForestTrainer [-D options] input output numTrees");
+            return 1;
+        }
+        Configuration conf = getConf();
+        Reader reader = "cassandra".equalsIgnoreCase(conf.get(READER, "file")) ? RandomForestDriver.newCassandraReader(conf) : new MyFileReader();
+        long seed = conf.getLong(SEED, conf.getLong(RandomForestMapper.SEED, System.nanoTime()));
+        // recorded in forest metadata, so the forest can be trained again
+        conf.setLong(RandomForestMapper.SEED, seed);
+        // out of bag estimate makes holdout optional, the seed also fixes the held out rows
+        List<List<DataSample>> trainAndTest = reader.readData(args[0], conf.getInt(HOLDOUT, 0), seed);
+        ColumnarDataSet data = reader.getDataSet();
+        RandomForestDriver.header = reader.getHeader();
+        RandomForestMapper.initFeatureTypes();
+
+        int numTrees = Integer.parseInt(args[2]);
+        int threads = conf.getInt(THREADS, Runtime.getRuntime().availableProcessors());
+
+        long start = System.currentTimeMillis();
+        OutOfBagEstimate oob = new OutOfBagEstimate();
+        List<DecisionTree> trees = trainForest(data, data.rowsOf(trainAndTest.get(0)), numTrees, threads, seed, conf, oob);
+        logger.info(String.format("Trained %d trees on %d threads in %d ms", numTrees, threads, System.currentTimeMillis() - start));
+        logger.info(String.format("Out of bag accuracy %.2f%% on %d rows", 100.0 * oob.getAccuracy(), oob.getNumRows()));
+
+        RandomForest forest = new RandomForest(trees, data.getClasses(), seed);
+        ForestWritable forestWritable = RandomForestReducer.newForest(trees, reader.getHeader(), conf);
+        oob.putMetadata(forestWritable.getMetadata());
+        writeForest(forestWritable, Paths.get(args[1]), conf);
+        ForestFile.write(Paths.get(args[1]).resolve(FOREST_FILE), forest, data.getLabelColumn(), data.getColumnNames());
+
+        List<DataSample> testData = trainAndTest.get(1);
+        if (!testData.isEmpty()) {
+            Predictions predictions = forest.predict(testData);
+            logger.info(String.format("Test accuracy %.2f%%", 100.0 * predictions.countCorrect(testData) / testData.size()));
+        }
+        return 0;
+    }
+
+    /**
+     * Trains trees concurrently, each on its own bootstrap sample of training rows.
+     *
+     * @param data
+     *            Columnar data set shared by all trees.
+     * @param trainRows
+     *            Indices of training rows.
+     * @param numTrees
+     *            Number of trees.
+     * @param threads
+     *            Number of training threads.
+     * @param seed
+     *            Job seed, tree i uses the same random stream as the tree of map task i.
+     * @param conf
+     *            Configuration with the same options as the MapReduce job.
+     * @param oob
+     *            Collects out of bag votes of every tree, keyed by row index. May be null.
+     * @return Trained trees.
+     */
+    public static List<DecisionTree> trainForest(ColumnarDataSet data, int[] trainRows, int numTrees, int threads,
+            long seed, Configuration conf, OutOfBagEstimate oob) throws InterruptedException {
+        long[] rowKeys = new long[data.size()];
+        for (int row = 0; row < rowKeys.length; row++) {
+            rowKeys[row] = row;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<DecisionTree>> tasks = new ArrayList<>();
+            for (int i = 0; i < numTrees; i++) {
+                int treeIndex = i;
+                tasks.add(() -> trainTree(data, trainRows, treeIndex, seed, conf, oob, rowKeys));
+            }
+            List<DecisionTree> trees = new ArrayList<>();
+            for (Future<DecisionTree> future : executor.invokeAll(tasks)) {
+                trees.add(future.get());
+            }
+            return trees;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training of a tree failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Trains one tree of a forest on its bootstrap sample of training rows.
+     *
+     * @param tree
+     *            Index of the tree in the forest, selects its random stream.
+     * @param oob
+     *            Collects out of bag votes of the tree, keyed by row keys. May be null.
+     * @param rowKeys
+     *            Key of every row of data set.
+     * @return Trained tree.
+     * @see #trainForest(ColumnarDataSet, int[], int, int, long, Configuration, OutOfBagEstimate)
+     */
+    public static DecisionTree trainTree(ColumnarDataSet data, int[] trainRows, int tree, long seed, Configuration conf,
+            OutOfBagEstimate oob, long[] rowKeys) {
+        SplittableRandom random = RandomForestMapper.treeRandom(seed, tree);
+        Bootstrap sample = RandomForestMapper.bootstrap(data.size(), trainRows, random);
+        DecisionTree decisionTree = RandomForestMapper.trainTree(data, sample, random.nextLong(), conf);
+        if (oob != null) {
+            oob.add(OutOfBagVotes.score(decisionTree, data, sample, rowKeys, trainRows));
+        }
+        return decisionTree;
+    }
+
+    /**
+     * Writes forest into output directory as block compressed sequence file, like the MapReduce job does.
+     */
+    public static void writeForest(ForestWritable forest, Path output, Configuration conf) throws IOException {
+        Files.createDirectories(output);
+        forest.write(conf, new org.apache.hadoop.fs.Path(output.resolve(OUTPUT_FILE).toUri()));
+    }
+}
@@ -0,0 +1,197 @@
+package main;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import decisiontree.HoeffdingTree;
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.feature.Feature;
+import decisiontree.label.DirectionalLabel;
+import decisiontree.label.Label;
+import decisiontree.reader.MyFileReader;
+import decisiontree.reader.Reader;
+import decisiontree.reader.TickFeatureReader;
+import decisiontree.split.HistogramSplitFinder;
+import randomforest.ForestFile;
+import randomforest.RandomForest;
+
+/**
+ * Trains a forest of {@link HoeffdingTree}s online while rows stream from a {@link Reader}, without holding the data.
+ * Bin edges are features at quantiles of the first rows, the warm up window. Every later row is first predicted by the
+ * forest and then learned, so accuracy is measured on rows no tree has seen. Each tree learns a row with a Poisson(1)
+ * weight, which is online bagging. Forest is written as a binary {@link ForestFile}.
+ *
+ * Usage: OnlineForestTrainer [-D options] input output numTrees
+ *
+ */
+public class OnlineForestTrainer extends Configured implements Tool {
+
+    /** Configuration key of number of rows bin edges are taken from, 10000 by default. */
+    public static final String WARMUP = "randomforest.online.warmup";
+
+    /** Configuration key of number of samples a leaf sees between attempts to split it. */
+    public static final String GRACE_PERIOD = "randomforest.online.grace";
+
+    /** Configuration key of probability that a split is not the best one on the whole stream. */
+    public static final String DELTA = "randomforest.online.delta";
+
+    /** Configuration key of whether input holds raw ticks, which are turned into rows by {@link TickFeatureReader}. */
+    public static final String TICKS = "randomforest.online.ticks";
+
+    /** Number of rows between progress messages. */
+    private static final int LOG_INTERVAL = 100000;
+
+    static final Logger logger = LoggerFactory.getLogger(OnlineForestTrainer.class);
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Configuration(), new OnlineForestTrainer(), args));
+    }
+
+    public int run(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: OnlineForestTrainer [-D options] input output numTrees");
+            return 1;
+        }
+        Configuration conf = getConf();
+        Reader reader;
+        if (conf.getBoolean(TICKS, false)) {
+            // ticks are ordered by their datetime key
+            reader = new TickFeatureReader(WalkForwardBacktest.newTimeReader(conf));
+        } else {
+            reader = "cassandra".equalsIgnoreCase(conf.get(LocalForestTrainer.READER, "file"))
+                    ? RandomForestDriver.newCassandraReader(conf) : new MyFileReader();
+        }
+        long seed = conf.getLong(LocalForestTrainer.SEED, conf.getLong(RandomForestMapper.SEED, System.nanoTime()));
+        logger.info("Online training seed: " + seed);
+
+        Learner learner = new Learner(Integer.parseInt(args[2]), conf.getInt(WARMUP, 10000), seed, conf);
+        long start = System.currentTimeMillis();
+        reader.forEachRow(args[0], learner);
+        if (learner.trees == null) {
+            learner.startTrees();
+        }
+        logger.info(String.format("Learned %d rows in %d ms, %.2f us per row, prequential accuracy %.2f%% on %d rows",
+                learner.numRows, System.currentTimeMillis() - start, learner.updateNanos / 1000.0 / learner.numRows,
+                100.0 * learner.correct / learner.total, learner.total));
+
+        Files.createDirectories(Paths.get(args[1]));
+        ForestFile.write(Paths.get(args[1]).resolve(LocalForestTrainer.FOREST_FILE),
+                new RandomForest(learner.trees, Learner.CLASSES, seed), RandomForestMapper.LABEL_COLUMN, learner.columns);
+        return 0;
+    }
+
+    /**
+     * Row handler which buffers the warm up window, then predicts and learns every row.
+     */
+    static class Learner implements Reader.RowHandler {
+
+        /** Labels of exchange data, down first. */
+        static final Label[] CLASSES = { DirectionalLabel.DOWN_LABEL, DirectionalLabel.UP_LABEL };
+
+        private final int numTrees;
+        private final int warmup;
+        private final SplittableRandom random;
+        private final Configuration conf;
+
+        private ColumnarDataSet.Builder builder;
+        private String[] columns;
+        private List<HoeffdingTree> trees;
+        private final int[] votes = new int[CLASSES.length];
+
+        private long numRows;
+        private long updateNanos;
+        private long correct;
+        private long total;
+
+        Learner(int numTrees, int warmup, long seed, Configuration conf) {
+            this.numTrees = numTrees;
+            this.warmup = warmup;
+            this.random = new SplittableRandom(seed);
+            this.conf = conf;
+        }
+
+        @Override
+        public void start(String[] header) {
+            builder = ColumnarDataSet.newBuilder(RandomForestMapper.LABEL_COLUMN, header);
+            RandomForestDriver.header = header;
+            RandomForestMapper.initFeatureTypes();
+        }
+
+        @Override
+        public void row(double[] values, String rawLabel) {
+            if (trees == null) {
+                builder.addRow(values, rawLabel);
+                if (builder.size() >= warmup) {
+                    startTrees();
+                }
+                return;
+            }
+            Label label = DirectionalLabel.newLabel(rawLabel);
+            if (predict(values).equals(label)) {
+                correct++;
+            }
+            total++;
+            learn(values, label);
+            if (numRows % LOG_INTERVAL == 0) {
+                logger.info(String.format("%d rows, prequential accuracy %.2f%%, %.2f us per row", numRows,
+                        100.0 * correct / total, updateNanos / 1000.0 / numRows));
+            }
+        }
+
+        /**
+         * Creates trees with bin edges of the warm up window and learns its rows.
+         */
+        void startTrees() {
+            ColumnarDataSet data = builder.build();
+            builder = null;
+            columns = data.getColumnNames();
+            int maxBins = conf.getInt(RandomForestMapper.MAX_BINS, HistogramSplitFinder.MAX_BINS);
+            List<List<Feature>> features = RandomForestMapper.getFeatures(data, data.allRows(), maxBins - 1);
+            trees = new ArrayList<>();
+            for (int t = 0; t < numTrees; t++) {
+                HoeffdingTree tree = new HoeffdingTree(features, CLASSES, maxBins);
+                tree.setGracePeriod(conf.getInt(GRACE_PERIOD, HoeffdingTree.DEFAULT_GRACE_PERIOD));
+                tree.setDelta(conf.getDouble(DELTA, HoeffdingTree.DEFAULT_DELTA));
+                tree.setMaxDepth(conf.getInt(RandomForestMapper.MAX_DEPTH, Integer.MAX_VALUE));
+                tree.setHomogenityPercentage(conf.getDouble(RandomForestMapper.HOMOGENITY, 1.0));
+                trees.add(tree);
+            }
+            double[] values = new double[columns.length];
+            for (int row = 0; row < data.size(); row++) {
+                learn(data.getRow(row, values), data.getLabel(row));
+            }
+            logger.info(String.format("Started %d trees on %d warm up rows", numTrees, data.size()));
+        }
+
+        private Label predict(double[] values) {
+            for (HoeffdingTree tree : trees) {
+                Label label = tree.classify(values);
+                votes[label.equals(CLASSES[0]) ? 0 : 1]++;
+            }
+            Label label = votes[1] > votes[0] ? CLASSES[1] : CLASSES[0];
+            votes[0] = 0;
+            votes[1] = 0;
+            return label;
+        }
+
+        private void learn(double[] values, Label label) {
+            long start = System.nanoTime();
+            for (HoeffdingTree tree : trees) {
+                tree.update(values, label, Bootstrap.nextPoisson(random));
+            }
+            updateNanos += System.nanoTime() - start;
+            numRows++;
+        }
+    }
+}
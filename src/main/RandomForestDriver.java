@@ -1,32 +1,34 @@
 package main;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.URI;
-import java.util.List;
-import java.util.Map;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.lib.input.NLineInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
-import decisiontree.data.DataSample;
-import decisiontree.data.ExchangeDataSample;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ProtocolOptions;
+
+import decisiontree.data.ColumnarFile;
+import decisiontree.data.ColumnarFileWriter;
 import decisiontree.reader.CassandraReader;
 import decisiontree.reader.Reader;
-import decisiontree.utils.MathUtils;
+import randomforest.ForestPartWritable;
+import randomforest.ForestWritable;
 
 
 public class RandomForestDriver extends Configured implements Tool {
@@ -40,6 +42,29 @@ public class RandomForestDriver extends Configured implements Tool {
 	private static final String JOB_NAME = "RandomForest";
     static final String HOST = "192.168.56.101";
     private static final String INPUT_COLUMN_FAMILY = "bid_eurusd";
+    /** Name of the exported training data file in the input directory. */
+    private static final String TRAINING_FILE = "training" + ColumnarFile.EXTENSION;
+    
+    /** Configuration key of compression codec class of exported blocks, zlib by default. */
+    public static final String CODEC = "randomforest.columnar.codec";
+    
+    /** Configuration key of number of rows per exported block. */
+    public static final String BLOCK_ROWS = "randomforest.columnar.block.rows";
+    
+    /** Configuration key of comma separated Cassandra contact points. */
+    public static final String CASSANDRA_HOSTS = "randomforest.cassandra.hosts";
+    
+    /** Configuration key of Cassandra native protocol port. */
+    public static final String CASSANDRA_PORT = "randomforest.cassandra.port";
+    
+    /** Configuration key of keyspace of the training table. */
+    public static final String CASSANDRA_KEYSPACE = "randomforest.cassandra.keyspace";
+    
+    /** Configuration key of number of token ranges read at the same time, number of processors by default. */
+    public static final String CASSANDRA_CONCURRENCY = "randomforest.cassandra.concurrency";
+    
+    /** Configuration key of number of rows fetched per page. */
+    public static final String CASSANDRA_FETCH_SIZE = "randomforest.cassandra.fetch.size";
     
     // Main usage: java input output numTrees
 	public static void main(String[] args) throws Exception {
@@ -52,118 +77,102 @@ public class RandomForestDriver extends Configured implements Tool {
 	
 	/**
 	 * 
-	 * @param data
-	 *     list of DataSamples
+	 * @param conf
+	 *     Configuration with the Cassandra keys set, unset keys keep their defaults
+	 * @return
+	 *     Reader of tables of the configured cluster and keyspace
+	 */
+	public static CassandraReader newCassandraReader(Configuration conf) {
+		Cluster.Builder cluster = Cluster.builder()
+				.addContactPoints(conf.getTrimmedStrings(CASSANDRA_HOSTS, HOST))
+				.withPort(conf.getInt(CASSANDRA_PORT, ProtocolOptions.DEFAULT_PORT));
+		CassandraReader cassandraReader = new CassandraReader(cluster, conf.get(CASSANDRA_KEYSPACE, CassandraReader.DEFAULT_KEYSPACE));
+		cassandraReader.setConcurrency(conf.getInt(CASSANDRA_CONCURRENCY, Runtime.getRuntime().availableProcessors()));
+		cassandraReader.setFetchSize(conf.getInt(CASSANDRA_FETCH_SIZE, CassandraReader.DEFAULT_FETCH_SIZE));
+		return cassandraReader;
+	}
+	
+	/**
+	 * 
+	 * @param reader
+	 *     Reader streaming rows of the table
+	 * @param table
+	 *     The table being read
 	 * @param fs
 	 *     FileSystem being written to (i.e hdfs)
-	 * @param filename
-	 *     The name of the file being written
-	 * @param fileHeader
-	 *     String Array of the feature names
-	 * @param numLines
-	 *     The number of lines per mapper/tree
-	 * @param numTrees
-	 *     Then number of trees to train
+	 * @param file
+	 *     The file being written
+	 * @param blockRows
+	 *     The number of rows per block
+	 * @param codec
+	 *     Compression codec of blocks, null for uncompressed blocks
+	 * @return
+	 *     The number of written rows
 	 * @throws IOException
 	 * 
-	 * Given a list of DataSamples, randomly write a subset of the data to a file in hdfs
-	 * for each tree passed in the command line.
+	 * Stream rows of the table into a columnar file in hdfs. Besides the block being written, only rows the reader
+	 * buffers ahead are held in memory, which for a table are a few pages of every range being scanned.
 	 * 
 	 */
-    public static void writeFile(List<DataSample> data, FileSystem fs, String filename, String[] fileHeader, int numLines, int numTrees) throws IOException {
-    	Path file = new Path(String.format("hdfs://%s:8020/data/randomforest/input/%s", HOST, filename));
-    	
+    public static long writeFile(Reader reader, String table, FileSystem fs, Path file, int blockRows, CompressionCodec codec) throws IOException {
     	if (fs.exists(file)) { 
         	fs.delete(file, true); 
         } 
     	
-    	OutputStream os = fs.create(file, new Progressable() {
-            public void progress() {
-              // TODO: add bytes written??
-      	      //logger.info("Writing new hdfs input file...");  
-            }
-	      });
-    	
-    	BufferedWriter br = new BufferedWriter(new OutputStreamWriter(os, "UTF-8" ));
-    	
-    	/**
-    	for(int i = 0; i < numTrees; i++) {
-            for(int j = 0; j < numLines; j++) {
-        	    int randInt = MathUtils.randomInt(0, data.size()-1);
-        	    DataSample sample = data.get(randInt);
-        	    Map<String, Object> values = ((ExchangeDataSample) sample).getValues();
-        	
-        	    String line = "";
-        	    for(String column: header) { 
-        		    line += (String)(values.get(column));
-       		
-         		    if(!column.equalsIgnoreCase("upcount")){
-        			    line += ",";
-        	 	    }
-        	    }
-        	    br.write(line);
-        	    br.newLine();
-            }
-    	}**/
-    	// TODO: figure out how to speed up random data
-        for(int j = 0; j < data.size(); j++) {
-        	DataSample sample = data.get(j);
-    	    Map<String, Object> values = ((ExchangeDataSample) sample).getValues();
-    	
-    	    String line = "";
-    	    for(String column: header) { 
-    		    line += (String)(values.get(column));
-   		
-     		    if(!column.equalsIgnoreCase("upcount")){
-    			    line += ",";
-    	 	    }
-    	    }
-    	    br.write(line);
-    	    br.newLine();
-        }
-	
-        br.close();
+    	try (ColumnarFileWriter writer = new ColumnarFileWriter(fs.create(file), RandomForestMapper.LABEL_COLUMN, blockRows, codec)) {
+    		reader.forEachRow(table, writer);
+    		return writer.getNumRows();
+    	}
     }
 	
 	public int run(String[] args) throws Exception {        
         logger.info("Starting Job: " + JOB_NAME);   
         
-        List<List<DataSample>> trainAndTest;
-        List<DataSample> trainingData;
-        //List<DataSample> testData;
-        
-        // Read data from Cassandra
-        reader = new CassandraReader();
-		trainAndTest = reader.readData(INPUT_COLUMN_FAMILY, 2);
-		trainingData = trainAndTest.get(0);
-    	//testData = trainAndTest.get(1);
-		
-    	int numLines = trainingData.size();
+        // Stream data from Cassandra, no holdout is needed as forest accuracy is estimated from out of bag votes
+    	Configuration conf = getConf();
+        reader = newCassandraReader(conf);
     	int numTrees = Integer.parseInt(args[2]);
-    	int mapLines = numLines/(int)Math.ceil(Double.parseDouble(args[2]));
-    	
-    	header = reader.getHeader();
     	
     	// Create a filesystem object for writing a file to HDFS on host HOST
-    	FileSystem hdfs = FileSystem.get(new URI( String.format("hdfs://%s:8020", HOST)), getConf());
-        writeFile(trainingData, hdfs, "training.csv", header, numLines, numTrees);
-    	hdfs.close();
+    	FileSystem hdfs = FileSystem.get(new URI( String.format("hdfs://%s:8020", HOST)), conf);
+    	Path input = hdfs.makeQualified(new Path(args[0], TRAINING_FILE));
+    	CompressionCodec codec = ReflectionUtils.newInstance(conf.getClass(CODEC, DefaultCodec.class, CompressionCodec.class), conf);
+    	long start = System.currentTimeMillis();
+        long numRows = writeFile(reader, INPUT_COLUMN_FAMILY, hdfs, input, conf.getInt(BLOCK_ROWS, ColumnarFileWriter.DEFAULT_BLOCK_ROWS), codec);
+        logger.info(String.format("Exported %d rows to %s in %d ms", numRows, input, System.currentTimeMillis() - start));
+    	// file system instance is cached and reused by the job to read input, so it stays open
+    	
+    	header = reader.getHeader();
     	
     	// Get job instance and set the user's jars to be used first
         Job job = Job.getInstance(getConf(), JOB_NAME);
         job.getConfiguration().set("mapreduce.job.user.classpath.first", "true");
         
         job.setJarByClass(RandomForestDriver.class);
-        job.setInputFormatClass(NLineInputFormat.class);
+        job.setInputFormatClass(BootstrapInputFormat.class);
         
-        NLineInputFormat.addInputPath(job, new Path(args[0]));
+        BootstrapInputFormat.addInputPath(job, input);
         
-        // set lines per mapper
-        job.getConfiguration().setInt("mapreduce.input.lineinputformat.linespermap", mapLines);     		                  
+        // one split per tree, each a sample of blocks of the whole file
+        job.getConfiguration().setInt(BootstrapInputFormat.NUM_TREES, numTrees);
+        job.getConfiguration().setStrings(RandomForestMapper.HEADER, header);
+        // every mapper derives its tree's random stream from one job seed, passing the same seed reproduces the run
+        if(job.getConfiguration().get(RandomForestMapper.SEED) == null) {
+        	job.getConfiguration().setLong(RandomForestMapper.SEED, System.nanoTime());
+        }
+        logger.info("Job seed: " + job.getConfiguration().get(RandomForestMapper.SEED));
         job.setMapperClass(RandomForestMapper.class);
-        job.setCombinerClass(RandomForestReducer.class);
-        job.setOutputKeyClass(Text.class);
-        job.setOutputValueClass(Text.class);
+        job.setMapOutputKeyClass(NullWritable.class);
+        job.setMapOutputValueClass(ForestPartWritable.class);
+        
+        // one reducer assembles the forest into a block compressed sequence file
+        job.setReducerClass(RandomForestReducer.class);
+        job.setNumReduceTasks(1);
+        job.setOutputKeyClass(NullWritable.class);
+        job.setOutputValueClass(ForestWritable.class);
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        FileOutputFormat.setCompressOutput(job, true);
+        SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
         FileOutputFormat.setOutputPath(job, new Path(args[1]));
         
 		job.waitForCompletion(true);
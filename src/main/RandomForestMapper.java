@@ -1,49 +1,258 @@
 package main;
 
-import static decisiontree.feature.PredicateFeature.newFeature;
-
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import randomforest.ForestPartWritable;
+import randomforest.OutOfBagVotes;
 import randomforest.RandomTree;
 import decisiontree.DecisionTree;
-import decisiontree.data.DataSample;
-import decisiontree.data.ExchangeDataSample;
+import decisiontree.TreeWritable;
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnBatch;
+import decisiontree.data.ColumnarDataSet;
 import decisiontree.feature.Feature;
-import decisiontree.feature.SerializableDoublePredicate;
-import decisiontree.utils.MathUtils;
+import decisiontree.feature.ThresholdFeature;
+import decisiontree.split.SplitStrategy;
+import decisiontree.utils.ParseUtils;
+
+/**
+ * Trains one tree of the forest on its input split, which is either text lines of comma separated rows or
+ * {@link ColumnBatch}es of {@link ColumnarInputFormat} or {@link BootstrapInputFormat} keyed by index of their first
+ * row.
+ */
+public class RandomForestMapper extends Mapper<LongWritable, Object, NullWritable, ForestPartWritable> {
 
-public class RandomForestMapper extends Mapper<LongWritable, Text, Text, Text> {
+	/** Configuration key of column names of input lines. */
+	public static final String HEADER = "randomforest.header";
+	
+	/** Name of the label column of input lines. */
+	public static final String LABEL_COLUMN = "Label";
+	
+	/** Configuration key of split strategy, one of {@link SplitStrategy} names. */
+	public static final String SPLIT_STRATEGY = "randomforest.split.strategy";
+	
+	/** Configuration key of maximum number of bins per column for histogram split strategy. */
+	public static final String MAX_BINS = "randomforest.split.maxbins";
+	
+	/** Configuration key of number of threads growing a single tree, vcores of the map container by default. */
+	public static final String TREE_THREADS = "randomforest.tree.threads";
+	
+	/** Configuration key of number of node rows below which subtrees grow sequentially. */
+	public static final String PARALLEL_THRESHOLD = "randomforest.tree.parallel.threshold";
+	
+	/** Configuration key of depth at which trees stop growing, unlimited by default. */
+	public static final String MAX_DEPTH = "randomforest.tree.maxdepth";
+	
+	/** Configuration key of fraction of one label from which a node becomes a leaf, 1.0 by default. */
+	public static final String HOMOGENITY = "randomforest.tree.homogenity";
+	
+	/** Configuration key of maximum number of columns considered per split, square root of number of columns by default. */
+	public static final String NUM_FEATURES = "randomforest.tree.features";
+	
+	/** Configuration key of job seed, random streams of all trees are derived from it. */
+	public static final String SEED = "randomforest.seed";
 
-	private static List<DataSample> samples = new ArrayList<>();
+	/** Configuration key of memory in megabytes buffered rows may take, half of the heap by default. */
+	public static final String MEMORY_BUDGET = "randomforest.map.memory.mb";
+	
+	/** Number of rows after which map reports progress. */
+	private static final int PROGRESS_INTERVAL = 8192;
+	
+	static final Logger logger = LoggerFactory.getLogger(RandomForestMapper.class);
+	
 	private static HashMap<String, String> featureTypes = new HashMap<String, String>();
-    private static String[] header = RandomForestDriver.header;
-    int numFeatures = (int) Math.sqrt((double)header.length);
+	
+	private ColumnarDataSet.Builder samples;
+	/** Input offset of every sample, plus position of the sample in its line, identifies rows for out of bag votes. */
+	private long[] rowKeys = new long[1024];
+    private String[] header = RandomForestDriver.header;
+    /** Most rows fitting into memory budget, once reached rows are reservoir sampled. */
+    private int maxRows;
+    /** Number of rows read, including rows not kept in the reservoir. */
+    private long numRows;
+    private SplittableRandom reservoirRandom;
+    /** Feature values of the row being parsed. */
+    private double[] values;
+    /**
+     * 
+     * @param data
+     *     ColumnarDataSet of the training data
+     * @return
+     *     square root of the number of feature columns, columns without a feature type such as time keys do not count
+     */
+    protected static int defaultNumFeatures(ColumnarDataSet data) {
+    	int numColumns = 0;
+    	for(String column: data.getColumnNames()) {
+    		if(featureTypes.get(column) != null) {
+    			numColumns++;
+    		}
+    	}
+    	return Math.max(1, (int) Math.sqrt((double) numColumns));
+    }
     
+    /** Distinct raw label values, so no String is created per row. */
+    private final List<String> labelValues = new ArrayList<>();
     
-	public void map(LongWritable ikey, Text ivalue, Context context)
+    @Override
+    protected void setup(Context context) {
+    	Configuration conf = context.getConfiguration();
+    	// static driver fields are not set in task JVMs, the driver passes header in configuration
+    	String[] confHeader = conf.getStrings(HEADER);
+    	if(confHeader != null) {
+    		header = confHeader;
+    	}
+    	initFeatureTypes();
+    	
+    	samples = ColumnarDataSet.newBuilder(LABEL_COLUMN, header);
+    	values = new double[samples.getNumColumns()];
+    	// a row takes a double per column, its key and a label byte
+    	long budget = conf.getLong(MEMORY_BUDGET, Runtime.getRuntime().maxMemory() / 2 >> 20) << 20;
+    	maxRows = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, budget / (8L * (values.length + 1) + 1)));
+    	samples.setMaxCapacity(maxRows);
+    	// split off the tree's stream, so the stream itself stays the same as in local training
+    	reservoirRandom = treeRandom(conf.getLong(SEED, 0), treeIndex(context)).split();
+    }
+    
+	public void map(LongWritable ikey, Object ivalue, Context context)
 			throws IOException, InterruptedException {
-		  
-          StringTokenizer itr = new StringTokenizer(ivalue.toString());
-	      while (itr.hasMoreTokens()) {
-	    	String[] tokens = itr.nextToken().split(",");
-	    	
-	    	if (tokens != null) {
-	            samples.add(ExchangeDataSample.newExchangeDataSample("Label", header, tokens));
-	    	}
-	      }
-	      
-	      initFeatureTypes();
+		long before = numRows;
+		if (ivalue instanceof ColumnBatch) {
+			addBatch(ikey, (ColumnBatch) ivalue);
+		} else {
+			addLine(ikey, (Text) ivalue);
+		}
+		if (numRows / PROGRESS_INTERVAL != before / PROGRESS_INTERVAL) {
+			context.progress();
+		}
+	}
+	
+	/**
+	 * Adds rows of a columnar block, keyed by their index in the input.
+	 */
+	private void addBatch(LongWritable ikey, ColumnBatch batch) {
+		if (batch.getNumColumns() != values.length) {
+			throw new IllegalArgumentException("Expected " + values.length + " columns, found " + batch.getNumColumns());
+		}
+		for (int row = 0; row < batch.size(); row++) {
+			addRow(batch.getRow(row, values), batch.getLabel(row), ikey.get() + row);
+		}
+	}
+	
+	/**
+	 * Parses whitespace separated rows of comma separated values straight from bytes of the line.
+	 */
+	private void addLine(LongWritable ikey, Text ivalue) {
+		byte[] bytes = ivalue.getBytes();
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int length = ivalue.getLength();
+		int tokenIndex = 0;
+		int from = 0;
+		while (true) {
+			while (from < length && isWhitespace(bytes[from])) {
+				from++;
+			}
+			if (from == length) {
+				break;
+			}
+			int to = from;
+			while (to < length && !isWhitespace(bytes[to])) {
+				to++;
+			}
+			parseRow(bytes, buffer, from, to, ikey.get() + tokenIndex++);
+			from = to;
+		}
+	}
+	
+	/**
+	 * Parses row of bytes [from, to) into column values, buffer wraps the same bytes.
+	 */
+	private void parseRow(byte[] bytes, ByteBuffer buffer, int from, int to, long key) {
+		int labelPosition = samples.getLabelPosition();
+		String label = null;
+		int field = 0;
+		int column = 0;
+		int start = from;
+		for (int i = from; i <= to; i++) {
+			if (i == to || bytes[i] == ',') {
+				if (field == labelPosition) {
+					label = labelValue(bytes, start, i);
+				} else if (column < values.length) {
+					values[column++] = ParseUtils.parseDouble(buffer, start, i);
+				}
+				field++;
+				start = i + 1;
+			}
+		}
+		if (field != header.length) {
+			throw new IllegalArgumentException("Expected " + header.length + " values, found " + field + " at offset " + key);
+		}
+		addRow(values, label, key);
+	}
+	
+	/**
+	 * Adds row while it fits into memory budget, afterwards replaces a random row so that every row read so far is kept
+	 * with the same probability.
+	 */
+	private void addRow(double[] values, String label, long key) {
+		numRows++;
+		if (samples.size() < maxRows) {
+			if (samples.size() == rowKeys.length) {
+				rowKeys = Arrays.copyOf(rowKeys, (int) Math.min(maxRows, 2L * rowKeys.length));
+			}
+			rowKeys[samples.size()] = key;
+			samples.addRow(values, label);
+		} else {
+			long slot = reservoirRandom.nextLong(numRows);
+			if (slot < maxRows) {
+				rowKeys[(int) slot] = key;
+				samples.setRow((int) slot, values, label);
+			}
+		}
+	}
+	
+	private String labelValue(byte[] bytes, int from, int to) {
+		for (String value : labelValues) {
+			if (value.length() == to - from && matches(value, bytes, from)) {
+				return value;
+			}
+		}
+		String value = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+		labelValues.add(value);
+		return value;
+	}
+	
+	private static boolean matches(String value, byte[] bytes, int from) {
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) != bytes[from + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Same delimiters as {@link java.util.StringTokenizer}.
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
 	}
 	
 	protected static void initFeatureTypes() {
@@ -62,58 +271,68 @@ public class RandomForestMapper extends Mapper<LongWritable, Text, Text, Text> {
 	 /**
      * 
      * @param data 
-     *     List<DataSample> all the sample training data
+     *     ColumnarDataSet all the sample training data
+     * @param rows
+     *     indices of the training rows
+     * @param maxFeatures
+     *     maximum number of features per column, if a column has more unique values
+     *     features are placed at its quantiles
      * @return
      *     a List of sorted and unique Features
      */
-    protected static List<List<Feature>> getFeatures(List<DataSample> data) {   	
+    protected static List<List<Feature>> getFeatures(ColumnarDataSet data, int[] rows, int maxFeatures) {   	
     	List<List<Feature>> features = new ArrayList<>();
-    	Map<String, List<Double>> featureValues = new HashMap<>();
+    	String[] columns = data.getColumnNames();
+    	double[] values = new double[rows.length];
     	
-    	for(int i = 0; i < header.length; i++) {
-    		String column = header[i].toLowerCase();
-
-    		if(featureTypes.get(column) != null){
-    		    featureValues.put(column, new ArrayList<Double>());
-    		    features.add(new ArrayList<Feature>());
+    	for(int c = 0; c < columns.length; c++) {
+    		String key = columns[c];
+    		if(featureTypes.get(key) == null){
+    			continue;
     		}
-    	}
-    
-    	for(DataSample sample: data) {
-    		for(Map.Entry<String, Object> entry: ((ExchangeDataSample) sample).getValues().entrySet()){
-    			String key = entry.getKey().toLowerCase();
-    			Object val = entry.getValue();
-    			
-    			if(featureTypes.get(key) != null){
-    				double value = Double.parseDouble((String)val);
-    			    featureValues.get(key).add(value);
+    		
+    		double[] column = data.getColumn(c);
+    		for(int i = 0; i < rows.length; i++) {
+    			values[i] = column[rows[i]];
+    		}
+    		Arrays.sort(values);
+    		
+    		int numUnique = 0;
+    		for(int i = 0; i < values.length; i++) {
+    			if(i == 0 || values[i] != values[i - 1]) {
+    				numUnique++;
     			}
     		}
-    	}
-    	
-    	for(String key: featureValues.keySet()) {
-    		List<Double> sorted = new ArrayList<Double>(new LinkedHashSet<Double>(featureValues.get(key)));
-    		Collections.sort(sorted);
     		
     		List<Feature> newFeats = new ArrayList<>();
-    		
-    		switch(featureTypes.get(key)){
-    		    case "discrete":
-    		    	for(Double val: sorted) {
-    		    		SerializableDoublePredicate featPred = (SerializableDoublePredicate) p -> p < val;
-    	    			newFeats.add(newFeature(key, featPred, "< " + val, val));
-    		    	}
-    		        break;
-    		    case "real":
-    		    	for(Double val: sorted) {
-    		    		SerializableDoublePredicate featPred = (SerializableDoublePredicate) p -> p >= val;
-    	    			newFeats.add(newFeature(key, featPred, ">= " + val, val));
-    	    		}
-    		    	break;
-    		    default:
-    		    	System.err.println("Unknown case for column " +  key);
-    		    	System.exit(1);
-    		    	break;
+    		int quantile = 1;
+    		for(int i = 0; i < values.length; i++) {
+    			if(i > 0 && values[i] == values[i - 1]) {
+    				continue;
+    			}
+    			if(numUnique > maxFeatures) {
+    				// only values at quantiles (i >= quantile * n / (maxFeatures + 1)) become features
+    				if((long) i * (maxFeatures + 1) < (long) quantile * values.length) {
+    					continue;
+    				}
+    				while((long) i * (maxFeatures + 1) >= (long) quantile * values.length) {
+    					quantile++;
+    				}
+    			}
+    			double val = values[i];
+    			
+    			switch(featureTypes.get(key)){
+    			    case "discrete":
+    			    	newFeats.add(ThresholdFeature.lessThan(key, c, val));
+    			        break;
+    			    case "real":
+    			    	newFeats.add(ThresholdFeature.greaterOrEqual(key, c, val));
+    			    	break;
+    			    default:
+    			    	System.err.println("Unknown case for column " +  key);
+    			    	System.exit(1);
+    			    	break;
+    			}
     		}
     		
             features.add(newFeats);
@@ -123,21 +342,122 @@ public class RandomForestMapper extends Mapper<LongWritable, Text, Text, Text> {
     }
     
     protected void cleanup(Context context) throws IOException, InterruptedException {
-    	int sampleSize = samples.size();
+    	if (samples.size() == 0) {
+    		return;
+    	}
+    	if (numRows > samples.size()) {
+    		logger.info(String.format("Memory budget holds %d of %d rows, training on a uniform sample", samples.size(), numRows));
+    	}
+    	Configuration conf = context.getConfiguration();
+    	ColumnarDataSet data = samples.build();
+    	samples = null;
+    	SplittableRandom random = treeRandom(conf.getLong(SEED, 0), treeIndex(context));
+    	Bootstrap sample = bootstrap(data.size(), data.allRows(), random);
+    	// training a large split takes longer than task timeout, so grown nodes report progress
+        DecisionTree tree = trainTree(data, sample, random.nextLong(), conf, context::progress);
     	
-    	List<DataSample> trainData = new ArrayList<>();
+        context.write(NullWritable.get(), new ForestPartWritable(new TreeWritable(tree)));
+        // rows left out of the bootstrap sample are scored right away for the out of bag estimate
+        OutOfBagVotes votes = OutOfBagVotes.score(tree, data, sample, rowKeys);
+        context.write(NullWritable.get(), new ForestPartWritable(votes));
+    }
+    
+    /**
+     * 
+     * @param context
+     *     context of the map task
+     * @return
+     *     index of the tree grown by the task, the tree of a bootstrap split or else the task id as every map task grows
+     *     one tree
+     */
+    private static int treeIndex(Context context) {
+    	InputSplit split = context.getInputSplit();
+    	return split instanceof BootstrapSplit ? ((BootstrapSplit) split).getTree() : context.getTaskAttemptID().getTaskID().getId();
+    }
+    
+    /**
+     * 
+     * @param seed
+     *     job seed
+     * @param tree
+     *     index of the tree in the forest
+     * @return
+     *     random stream of the tree, the same for the same seed and index
+     */
+    protected static SplittableRandom treeRandom(long seed, int tree) {
+    	// first value of a stream is well mixed even for adjacent seeds, so it seeds the tree's own stream
+    	return new SplittableRandom(new SplittableRandom(seed + tree).nextLong());
+    }
+    
+    /**
+     * 
+     * @param size
+     *     number of rows of the data set
+     * @param rows
+     *     indices of the rows to sample from
+     * @param random
+     *     random stream of the tree
+     * @return
+     *     Poisson bootstrap sample of the rows, weighting rows instead of copying them
+     */
+    protected static Bootstrap bootstrap(int size, int[] rows, SplittableRandom random) {
+    	return Bootstrap.poisson(size, rows, random);
+    }
+    
+    /**
+     * Train one random tree of the forest, used by MapReduce and local training alike.
+     * 
+     * @param data
+     *     ColumnarDataSet all the sample training data
+     * @param sample
+     *     bootstrap sample of the training rows
+     * @param seed
+     *     seed of column selection of the tree
+     * @param conf
+     *     job configuration with split strategy and maximum number of bins
+     * @return
+     *     the trained tree
+     */
+    protected static DecisionTree trainTree(ColumnarDataSet data, Bootstrap sample, long seed, Configuration conf) {
+        return trainTree(data, sample, seed, conf, null);
+    }
+    
+    /**
+     * Train one random tree of the forest reporting progress.
+     * 
+     * @param progress
+     *     called after every grown node, from any training thread, may be null
+     * @see #trainTree(ColumnarDataSet, Bootstrap, long, Configuration)
+     */
+    protected static DecisionTree trainTree(ColumnarDataSet data, Bootstrap sample, long seed, Configuration conf, Runnable progress) {
+        RandomTree tree = new RandomTree();
+        tree.setNumFeatures(conf.getInt(NUM_FEATURES, defaultNumFeatures(data)));
+        tree.setMaxDepth(conf.getInt(MAX_DEPTH, tree.getMaxDepth()));
+        tree.setHomogenityPercentage(conf.getDouble(HOMOGENITY, tree.getHomogenityPercentage()));
+        tree.setSeed(seed);
+        tree.setProgress(progress);
+        tree.setSplitStrategy(SplitStrategy.valueOf(conf.get(SPLIT_STRATEGY, tree.getSplitStrategy().name())));
+        tree.setMaxBins(conf.getInt(MAX_BINS, tree.getMaxBins()));
         
-        for(int i = 0; i < sampleSize; i++) {
-  	      int randInt = MathUtils.randomInt(0, sampleSize);
-  	      DataSample ds = samples.get(randInt);
-  	      trainData.add(ds);
+        // histogram strategy needs no more features than bin edges, so skip creating a feature per unique value
+        int maxFeatures = tree.getSplitStrategy() == SplitStrategy.HISTOGRAM ? tree.getMaxBins() - 1 : Integer.MAX_VALUE;
+        List<List<Feature>> features = getFeatures(data, sample.getRows(), maxFeatures);
+        
+        // threads are bounded by cores of the container, not by cores of the machine
+        int threads = conf.getInt(TREE_THREADS, conf.getInt(MRJobConfig.MAP_CPU_VCORES, MRJobConfig.DEFAULT_MAP_CPU_VCORES));
+        if(threads <= 1) {
+        	tree.train(data, sample, features);
+        	return tree;
         }
-    
-        DecisionTree tree = new RandomTree(numFeatures);
-        List<List<Feature>> features = getFeatures(trainData);
-        tree.train(trainData, features);
-    	
-        context.write(new Text("Tree"), new Text(tree.JSONTree()));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+        	tree.setPool(pool);
+        	tree.setParallelThreshold(conf.getInt(PARALLEL_THRESHOLD, tree.getParallelThreshold()));
+        	tree.train(data, sample, features);
+        } finally {
+        	tree.setPool(null);
+        	pool.shutdown();
+        }
+        return tree;
     }
 }
-
@@ -1,16 +1,73 @@
 package main;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Reducer;
 
+import decisiontree.DecisionTree;
+import decisiontree.TreeWritable;
+import randomforest.ForestPartWritable;
+import randomforest.ForestWritable;
+import randomforest.OutOfBagEstimate;
+import randomforest.OutOfBagVotes;
 
-public class RandomForestReducer extends Reducer<Text, Text, Text, Text> {
+
+/**
+ * Assembles trees of all mappers into one forest and merges their out of bag votes into the forest's out of bag estimate.
+ */
+public class RandomForestReducer extends Reducer<NullWritable, ForestPartWritable, NullWritable, ForestWritable> {
     
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        public void reduce(NullWritable key, Iterable<ForestPartWritable> values, Context context) throws IOException, InterruptedException {
             
-        	for(Text v: values)
-        		context.write(key, v);
+        	// every value is read into a new instance, so trees stay valid while the writable is reused
+        	List<DecisionTree> trees = new ArrayList<>();
+        	OutOfBagEstimate oob = new OutOfBagEstimate();
+        	for(ForestPartWritable v: values) {
+        		if(v.get() instanceof TreeWritable) {
+        			trees.add(((TreeWritable) v.get()).getTree());
+        		}
+        		else {
+        			oob.add((OutOfBagVotes) v.get());
+        		}
+        	}
+        	
+        	Configuration conf = context.getConfiguration();
+        	String[] header = conf.getStrings(RandomForestMapper.HEADER, new String[0]);
+        	ForestWritable forest = newForest(trees, header, conf);
+        	oob.putMetadata(forest.getMetadata());
+        	context.write(NullWritable.get(), forest);
+        }
+        
+        /**
+         * 
+         * @param trees
+         *     trained trees
+         * @param header
+         *     column names of training data including label column
+         * @param conf
+         *     job configuration
+         * @return
+         *     forest with training metadata, the artifact of MapReduce and local training alike
+         */
+        protected static ForestWritable newForest(List<DecisionTree> trees, String[] header, Configuration conf) {
+        	List<String> columnNames = new ArrayList<>();
+        	for(String column: header) {
+        		if(!column.equalsIgnoreCase(RandomForestMapper.LABEL_COLUMN)) {
+        			columnNames.add(column.toLowerCase());
+        		}
+        	}
+        	ForestWritable forest = new ForestWritable(RandomForestMapper.LABEL_COLUMN.toLowerCase(), columnNames.toArray(new String[columnNames.size()]), trees);
+        	forest.getMetadata().put("trees", String.valueOf(trees.size()));
+        	forest.getMetadata().put("created", String.valueOf(System.currentTimeMillis()));
+        	forest.getMetadata().put(RandomForestMapper.SPLIT_STRATEGY, conf.get(RandomForestMapper.SPLIT_STRATEGY, new DecisionTree().getSplitStrategy().name()));
+        	forest.getMetadata().put(RandomForestMapper.MAX_BINS, conf.get(RandomForestMapper.MAX_BINS, String.valueOf(new DecisionTree().getMaxBins())));
+        	if(conf.get(RandomForestMapper.SEED) != null) {
+        		forest.getMetadata().put(RandomForestMapper.SEED, conf.get(RandomForestMapper.SEED));
+        	}
+        	return forest;
         }
 }
@@ -0,0 +1,265 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import decisiontree.DecisionTree;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.reader.CassandraReader;
+import decisiontree.reader.MyFileReader;
+import decisiontree.reader.Reader;
+import decisiontree.writer.CassandraPredictionWriter;
+import decisiontree.writer.CassandraWriter;
+import decisiontree.writer.MyFileWriter;
+import decisiontree.writer.Writer;
+import randomforest.BacktestWindow;
+import randomforest.Predictions;
+import randomforest.RandomForest;
+
+/**
+ * Walk forward backtest. Rows are cut into consecutive windows of a time column, a forest is trained on the windows
+ * before every window and tested on it, so no test row is older than a training row. Data is read once and all
+ * windows share it; trees of all windows are trained on one thread pool, so windows run concurrently. Accuracy of
+ * every window is written through a {@link Writer} in window order, every prediction can be written to Cassandra too.
+ *
+ * Usage: WalkForwardBacktest [-D options] input output numTrees
+ *
+ */
+public class WalkForwardBacktest extends Configured implements Tool {
+
+    /** Configuration key of the column windows are cut by, year by default. */
+    public static final String TIME_COLUMN = "randomforest.backtest.time.column";
+
+    /** Configuration key of window length in units of the time column, 1 by default. */
+    public static final String WINDOW = "randomforest.backtest.window";
+
+    /** Configuration key of number of windows a forest trains on, the one window before the test window by default. */
+    public static final String TRAIN_WINDOWS = "randomforest.backtest.train.windows";
+
+    /** Configuration key of writer, "file" to append to a csv file or "cassandra" to insert into a table. */
+    public static final String WRITER = "randomforest.backtest.writer";
+
+    /**
+     * Configuration key of table every prediction of test windows is written to, only with the cassandra writer. Data
+     * needs year and datetime columns, the partition and clustering keys of the table.
+     */
+    public static final String PREDICTIONS = "randomforest.backtest.predictions";
+
+    static final Logger logger = LoggerFactory.getLogger(WalkForwardBacktest.class);
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Configuration(), new WalkForwardBacktest(), args));
+    }
+
+    public int run(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: WalkForwardBacktest [-D options] input output numTrees");
+            return 1;
+        }
+        Configuration conf = getConf();
+        Reader reader = newTimeReader(conf);
+        ColumnarDataSet data = Reader.readDataSet(reader, args[0]);
+        RandomForestDriver.header = reader.getHeader();
+        RandomForestMapper.initFeatureTypes();
+
+        int numTrees = Integer.parseInt(args[2]);
+        int threads = conf.getInt(LocalForestTrainer.THREADS, Runtime.getRuntime().availableProcessors());
+        long seed = conf.getLong(LocalForestTrainer.SEED, conf.getLong(RandomForestMapper.SEED, System.nanoTime()));
+        logger.info("Backtest seed: " + seed);
+
+        long start = System.currentTimeMillis();
+        List<BacktestWindow> windows;
+        if ("cassandra".equalsIgnoreCase(conf.get(WRITER, "file"))) {
+            String predictionTable = conf.get(PREDICTIONS);
+            try (CassandraWriter writer = new CassandraWriter();
+                    CassandraPredictionWriter predictionWriter = predictionTable == null ? null
+                            : writer.newPredictionWriter(predictionTable, CassandraPredictionWriter.DEFAULT_BATCH_SIZE,
+                                    CassandraPredictionWriter.DEFAULT_MAX_IN_FLIGHT)) {
+                windows = backtest(data, conf.get(TIME_COLUMN, "year"), conf.getDouble(WINDOW, 1), conf.getInt(TRAIN_WINDOWS, 1),
+                        numTrees, threads, seed, conf, writer, args[1], predictionWriter);
+                if (predictionWriter != null) {
+                    predictionWriter.flush();
+                    logger.info("Wrote predictions to " + predictionTable + ": " + predictionWriter.getMetrics());
+                }
+            }
+        } else {
+            windows = backtest(data, conf.get(TIME_COLUMN, "year"), conf.getDouble(WINDOW, 1), conf.getInt(TRAIN_WINDOWS, 1),
+                    numTrees, threads, seed, conf, new MyFileWriter(), args[1], null);
+        }
+        int correct = 0;
+        int total = 0;
+        for (BacktestWindow window : windows) {
+            correct += window.getCorrect();
+            total += window.getTotal();
+        }
+        logger.info(String.format("Backtested %d windows on %d threads in %d ms, accuracy %.2f%% on %d rows", windows.size(),
+                threads, System.currentTimeMillis() - start, 100.0 * correct / total, total));
+        return 0;
+    }
+
+    /**
+     * Runs a walk forward backtest.
+     *
+     * @param data
+     *            Columnar data set shared by all windows.
+     * @param timeColumn
+     *            Column windows are cut by.
+     * @param window
+     *            Length of a window in units of the time column, windows start at the earliest time.
+     * @param trainWindows
+     *            Number of windows before a test window its forest trains on.
+     * @param numTrees
+     *            Number of trees of every forest.
+     * @param threads
+     *            Number of training threads.
+     * @param seed
+     *            Seed of every forest, tree i of every window uses the same random stream as in local training.
+     * @param conf
+     *            Configuration with the same options as the MapReduce job.
+     * @param writer
+     *            Writer of accuracy of every window.
+     * @param target
+     *            Target of writer.
+     * @param predictionWriter
+     *            Writer of every prediction of test windows, keyed by year and datetime columns, null to write only
+     *            accuracy.
+     * @return Results of test windows in time order, every non empty window except the first ones.
+     */
+    public static List<BacktestWindow> backtest(ColumnarDataSet data, String timeColumn, double window, int trainWindows,
+            int numTrees, int threads, long seed, Configuration conf, Writer writer, String target,
+            CassandraPredictionWriter predictionWriter) throws IOException, InterruptedException {
+        if (!(window > 0) || trainWindows < 1) {
+            throw new IllegalArgumentException("Invalid windows: window=" + window + ", trainWindows=" + trainWindows);
+        }
+        int column = data.getColumnIndex(timeColumn);
+        if (column < 0) {
+            throw new IllegalArgumentException("Time column not found: " + timeColumn);
+        }
+        int yearColumn = data.getColumnIndex("year");
+        int datetimeColumn = data.getColumnIndex("datetime");
+        if (predictionWriter != null && (yearColumn < 0 || datetimeColumn < 0)) {
+            throw new IllegalArgumentException("Predictions need year and datetime columns");
+        }
+        List<int[]> windows = cutWindows(data, column, window);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // trees of earlier windows are queued first, so results can be written while later windows train
+            List<int[]> trainRows = new ArrayList<>();
+            List<List<Future<DecisionTree>>> forests = new ArrayList<>();
+            for (int test = 1; test < windows.size(); test++) {
+                int[] rows = concat(windows.subList(Math.max(0, test - trainWindows), test));
+                List<Future<DecisionTree>> trees = new ArrayList<>();
+                for (int t = 0; t < numTrees; t++) {
+                    int tree = t;
+                    trees.add(executor.submit(() -> LocalForestTrainer.trainTree(data, rows, tree, seed, conf, null, null)));
+                }
+                trainRows.add(rows);
+                forests.add(trees);
+            }
+
+            double[] times = data.getColumn(column);
+            List<BacktestWindow> results = new ArrayList<>();
+            for (int test = 1; test < windows.size(); test++) {
+                List<DecisionTree> trees = new ArrayList<>();
+                for (Future<DecisionTree> future : forests.get(test - 1)) {
+                    trees.add(future.get());
+                }
+                int[] train = trainRows.get(test - 1);
+                int[] testRows = windows.get(test);
+                Predictions predictions = new RandomForest(trees, data.getClasses(), seed).predict(data, testRows);
+                int correct = 0;
+                for (int i = 0; i < testRows.length; i++) {
+                    if (predictions.getLabel(i).equals(data.getLabel(testRows[i]))) {
+                        correct++;
+                    }
+                }
+                BacktestWindow result = new BacktestWindow(test, times[train[0]], times[testRows[0]],
+                        times[testRows[testRows.length - 1]], numTrees, train.length, correct, testRows.length);
+                logger.info(result.toString());
+                writer.writeWindow(target, result);
+                if (predictionWriter != null) {
+                    int[] years = new int[testRows.length];
+                    long[] datetimes = new long[testRows.length];
+                    for (int i = 0; i < testRows.length; i++) {
+                        years[i] = (int) data.getValue(yearColumn, testRows[i]);
+                        datetimes[i] = (long) data.getValue(datetimeColumn, testRows[i]);
+                    }
+                    predictionWriter.write(years, datetimes, predictions);
+                }
+                results.add(result);
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training of a tree failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Reader configured by {@link LocalForestTrainer#READER}, a Cassandra reader also reads year and datetime
+     *         keys, which windows are cut by.
+     */
+    static Reader newTimeReader(Configuration conf) {
+        if ("cassandra".equalsIgnoreCase(conf.get(LocalForestTrainer.READER, "file"))) {
+            CassandraReader reader = RandomForestDriver.newCassandraReader(conf);
+            reader.setTimeKeys(true);
+            return reader;
+        }
+        return new MyFileReader();
+    }
+
+    /**
+     * @return Rows of every non empty window in time order, rows of a window are in time order too. Rows without time
+     *         are left out.
+     */
+    static List<int[]> cutWindows(ColumnarDataSet data, int column, double window) {
+        double[] times = data.getColumn(column);
+        int[] sorted = data.getSortedRows(column);
+        List<int[]> windows = new ArrayList<>();
+        int from = 0;
+        while (from < sorted.length && !Double.isNaN(times[sorted[from]])) {
+            long index = windowIndex(times[sorted[from]], times[sorted[0]], window);
+            int to = from + 1;
+            while (to < sorted.length && !Double.isNaN(times[sorted[to]])
+                    && windowIndex(times[sorted[to]], times[sorted[0]], window) == index) {
+                to++;
+            }
+            windows.add(Arrays.copyOfRange(sorted, from, to));
+            from = to;
+        }
+        return windows;
+    }
+
+    private static long windowIndex(double time, double start, double window) {
+        return (long) Math.floor((time - start) / window);
+    }
+
+    static int[] concat(List<int[]> windows) {
+        int length = 0;
+        for (int[] rows : windows) {
+            length += rows.length;
+        }
+        int[] all = new int[length];
+        int position = 0;
+        for (int[] rows : windows) {
+            System.arraycopy(rows, 0, all, position, rows.length);
+            position += rows.length;
+        }
+        return all;
+    }
+}
@@ -0,0 +1,92 @@
+package randomforest;
+
+/**
+ * Result of one step of a walk forward backtest, accuracy on a test window of a forest trained on the windows before
+ * it. Times are values of the time column the windows are cut by.
+ *
+ */
+public class BacktestWindow {
+
+    /** Index of the test window. */
+    private final int index;
+
+    /** Time of the first training row. */
+    private final double trainStart;
+
+    /** Time of the first test row. */
+    private final double testStart;
+
+    /** Time of the last test row. */
+    private final double testEnd;
+
+    private final int numTrees;
+
+    private final int numTrainRows;
+
+    private final int correct;
+
+    private final int total;
+
+    public BacktestWindow(int index, double trainStart, double testStart, double testEnd, int numTrees,
+            int numTrainRows, int correct, int total) {
+        this.index = index;
+        this.trainStart = trainStart;
+        this.testStart = testStart;
+        this.testEnd = testEnd;
+        this.numTrees = numTrees;
+        this.numTrainRows = numTrainRows;
+        this.correct = correct;
+        this.total = total;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public double getTrainStart() {
+        return trainStart;
+    }
+
+    public double getTestStart() {
+        return testStart;
+    }
+
+    public double getTestEnd() {
+        return testEnd;
+    }
+
+    public int getNumTrees() {
+        return numTrees;
+    }
+
+    public int getNumTrainRows() {
+        return numTrainRows;
+    }
+
+    public int getCorrect() {
+        return correct;
+    }
+
+    /**
+     * @return Number of test rows.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Fraction of correctly predicted test rows, NaN if there are none.
+     */
+    public double getAccuracy() {
+        return total > 0 ? (double) correct / total : Double.NaN;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "BacktestWindow [index=" + index + ", test=" + testStart + ".." + testEnd + ", trainRows=" + numTrainRows
+                + ", correct=" + correct + ", total=" + total + "]";
+    }
+}
@@ -0,0 +1,222 @@
+package randomforest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import decisiontree.DecisionTree;
+import decisiontree.Node;
+import decisiontree.feature.Feature;
+import decisiontree.feature.ThresholdFeature;
+import decisiontree.label.Label;
+
+/**
+ * Binary forest file. All numbers are big endian.
+ *
+ * <pre>
+ * header:  int magic, short version, short reserved, long seed for breaking ties,
+ *          string label column, int number of columns, string column names,
+ *          int number of classes, (string name, string print value) per class,
+ *          int number of trees, long offset of each tree
+ * tree:    int number of nodes, int number of categories, nodes, double categories
+ * node:    int column (-1 for leaf), int operator, int index of second child, int class index (-1 for split),
+ *          int first category, int end of categories, double threshold
+ * string:  short length, UTF-8 bytes
+ * </pre>
+ *
+ * Nodes of a tree are in depth first order, so first child of a split node is the next node. Fixed size nodes let
+ * {@link MappedForest} classify straight from mapped file.
+ *
+ */
+public final class ForestFile {
+
+    /** "RFM1". */
+    public static final int MAGIC = 0x52464D31;
+
+    public static final short VERSION = 1;
+
+    /** Size of node record in bytes. */
+    static final int NODE_SIZE = 32;
+
+    /** Offsets of node fields. */
+    static final int COLUMN = 0;
+    static final int OPERATOR = 4;
+    static final int SECOND_CHILD = 8;
+    static final int LEAF_CLASS = 12;
+    static final int CATEGORIES_FROM = 16;
+    static final int CATEGORIES_TO = 20;
+    static final int THRESHOLD = 24;
+
+    /** Size of tree record header in bytes. */
+    static final int TREE_HEADER_SIZE = 8;
+
+    private ForestFile() {
+    }
+
+    /**
+     * Writes forest into file, existing file is replaced.
+     *
+     * @param path
+     *            Forest file.
+     * @param forest
+     *            Forest of trees split on {@link ThresholdFeature}s which know index of their column.
+     * @param labelColumn
+     *            Column name which contains data labels.
+     * @param columnNames
+     *            Feature column names in order of column indices.
+     * @throws IllegalArgumentException
+     *             If a tree can not be stored.
+     */
+    public static void write(Path path, RandomForest forest, String labelColumn, String[] columnNames) throws IOException {
+        List<DecisionTree> trees = forest.getTrees();
+        Label[] classes = forest.getClasses();
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize(labelColumn, columnNames, classes, trees.size()));
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(forest.getSeed());
+        putString(header, labelColumn);
+        header.putInt(columnNames.length);
+        for (String column : columnNames) {
+            putString(header, column);
+        }
+        header.putInt(classes.length);
+        for (Label label : classes) {
+            putString(header, label.getName());
+            putString(header, label.getPrintValue());
+        }
+        header.putInt(trees.size());
+
+        ByteBuffer[] treeBuffers = new ByteBuffer[trees.size()];
+        long offset = header.capacity();
+        for (int t = 0; t < treeBuffers.length; t++) {
+            treeBuffers[t] = toBuffer(trees.get(t).getRoot(), columnNames, classes);
+            header.putLong(offset);
+            offset += treeBuffers[t].capacity();
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (ByteBuffer treeBuffer : treeBuffers) {
+                writeFully(channel, treeBuffer);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int headerSize(String labelColumn, String[] columnNames, Label[] classes, int numTrees) {
+        int size = 16 + stringSize(labelColumn) + 4;
+        for (String column : columnNames) {
+            size += stringSize(column);
+        }
+        size += 4;
+        for (Label label : classes) {
+            size += stringSize(label.getName()) + stringSize(label.getPrintValue());
+        }
+        return size + 4 + 8 * numTrees;
+    }
+
+    private static int stringSize(String value) {
+        return 2 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes tree into its record.
+     */
+    private static ByteBuffer toBuffer(Node root, String[] columnNames, Label[] classes) {
+        if (root == null) {
+            throw new IllegalArgumentException("Tree is not trained");
+        }
+        int[] counts = new int[2];
+        count(root, counts);
+        ByteBuffer buffer = ByteBuffer.allocate(TREE_HEADER_SIZE + counts[0] * NODE_SIZE + counts[1] * 8);
+        buffer.putInt(counts[0]).putInt(counts[1]);
+        put(buffer, root, 0, new int[1], TREE_HEADER_SIZE + counts[0] * NODE_SIZE, columnNames, classes);
+        buffer.position(0);
+        return buffer;
+    }
+
+    /**
+     * Counts nodes and categories of subtree.
+     */
+    private static void count(Node node, int[] counts) {
+        counts[0]++;
+        if (!node.isLeaf() && node.getFeature() instanceof ThresholdFeature
+                && ((ThresholdFeature) node.getFeature()).getCategories() != null) {
+            counts[1] += ((ThresholdFeature) node.getFeature()).getCategories().length;
+        }
+        for (Node child : node.getChildren()) {
+            count(child, counts);
+        }
+    }
+
+    /**
+     * Stores subtree starting at node index.
+     *
+     * @return Index after the last node of the subtree.
+     */
+    private static int put(ByteBuffer buffer, Node node, int index, int[] nextCategory, int categoriesStart,
+            String[] columnNames, Label[] classes) {
+        int position = TREE_HEADER_SIZE + index * NODE_SIZE;
+        if (node.isLeaf()) {
+            buffer.putInt(position + COLUMN, -1);
+            buffer.putInt(position + OPERATOR, -1);
+            buffer.putInt(position + SECOND_CHILD, -1);
+            buffer.putInt(position + LEAF_CLASS, classIndex(classes, node.getLabel()));
+            return index + 1;
+        }
+        Feature feature = node.getFeature();
+        int column = feature.getColumnIndex();
+        if (!(feature instanceof ThresholdFeature) || column < 0 || column >= columnNames.length
+                || !columnNames[column].equalsIgnoreCase(feature.getColumn()) || node.getChildren().size() != 2) {
+            throw new IllegalArgumentException("Can not store node " + node.getName());
+        }
+        ThresholdFeature thresholdFeature = (ThresholdFeature) feature;
+        buffer.putInt(position + COLUMN, column);
+        buffer.putInt(position + OPERATOR, thresholdFeature.getOperator().ordinal());
+        buffer.putInt(position + LEAF_CLASS, -1);
+        buffer.putDouble(position + THRESHOLD, thresholdFeature.getFeatureVal());
+        double[] categories = thresholdFeature.getCategories();
+        int from = nextCategory[0];
+        if (categories != null) {
+            for (double category : categories) {
+                buffer.putDouble(categoriesStart + 8 * nextCategory[0]++, category);
+            }
+        }
+        buffer.putInt(position + CATEGORIES_FROM, from);
+        buffer.putInt(position + CATEGORIES_TO, nextCategory[0]);
+
+        int secondChild = put(buffer, node.getChildren().get(0), index + 1, nextCategory, categoriesStart, columnNames, classes);
+        buffer.putInt(position + SECOND_CHILD, secondChild);
+        return put(buffer, node.getChildren().get(1), secondChild, nextCategory, categoriesStart, columnNames, classes);
+    }
+
+    private static int classIndex(Label[] classes, Label label) {
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i].equals(label)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown label " + label.getName());
+    }
+}
@@ -0,0 +1,29 @@
+package randomforest;
+
+import org.apache.hadoop.io.GenericWritable;
+import org.apache.hadoop.io.Writable;
+
+import decisiontree.TreeWritable;
+
+/**
+ * Mapper output, either a trained tree or out of bag votes of the tree.
+ *
+ */
+public class ForestPartWritable extends GenericWritable {
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static final Class<? extends Writable>[] TYPES = new Class[] { TreeWritable.class, OutOfBagVotes.class };
+
+    public ForestPartWritable() {
+        // for deserialization
+    }
+
+    public ForestPartWritable(Writable part) {
+        set(part);
+    }
+
+    @Override
+    protected Class<? extends Writable>[] getTypes() {
+        return TYPES;
+    }
+}
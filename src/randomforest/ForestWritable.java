@@ -0,0 +1,155 @@
+package randomforest;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+
+import decisiontree.DecisionTree;
+import decisiontree.TreeWritable;
+
+/**
+ * Hadoop writable of a whole forest, the model artifact of training. Holds trees together with feature columns they
+ * were trained on and training metadata such as split strategy.
+ *
+ */
+public class ForestWritable implements Writable {
+
+    /** Name of the label column. */
+    private String labelColumn = "";
+
+    /** Feature column names in order of column indices. */
+    private String[] columnNames = new String[0];
+
+    /** Training metadata, for example configuration of trees. */
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+
+    private final List<DecisionTree> trees = new ArrayList<>();
+
+    public ForestWritable() {
+        // for deserialization
+    }
+
+    public ForestWritable(String labelColumn, String[] columnNames, List<? extends DecisionTree> trees) {
+        this.labelColumn = labelColumn;
+        this.columnNames = columnNames.clone();
+        this.trees.addAll(trees);
+    }
+
+    public String getLabelColumn() {
+        return labelColumn;
+    }
+
+    /**
+     * @return Feature column names in order of column indices.
+     */
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /**
+     * @return Mutable training metadata.
+     */
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    public List<DecisionTree> getTrees() {
+        return trees;
+    }
+
+    public int getNumTrees() {
+        return trees.size();
+    }
+
+    /**
+     * @return Forest for scoring.
+     */
+    public RandomForest toRandomForest() {
+        return new RandomForest(trees);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(labelColumn);
+        out.writeInt(columnNames.length);
+        for (String column : columnNames) {
+            out.writeUTF(column);
+        }
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.writeInt(trees.size());
+        TreeWritable treeWritable = new TreeWritable();
+        for (DecisionTree tree : trees) {
+            treeWritable.setTree(tree);
+            treeWritable.write(out);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        labelColumn = in.readUTF();
+        columnNames = new String[in.readInt()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = in.readUTF();
+        }
+        metadata.clear();
+        int numEntries = in.readInt();
+        for (int i = 0; i < numEntries; i++) {
+            metadata.put(in.readUTF(), in.readUTF());
+        }
+        trees.clear();
+        int numTrees = in.readInt();
+        TreeWritable treeWritable = new TreeWritable();
+        for (int i = 0; i < numTrees; i++) {
+            treeWritable.readFields(in);
+            trees.add(treeWritable.getTree());
+        }
+    }
+
+    /**
+     * Writes forest into block compressed sequence file with null key, in the same layout as the training job output.
+     */
+    public void write(Configuration conf, Path path) throws IOException {
+        try (SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(path),
+                SequenceFile.Writer.keyClass(NullWritable.class), SequenceFile.Writer.valueClass(ForestWritable.class),
+                SequenceFile.Writer.compression(SequenceFile.CompressionType.BLOCK))) {
+            writer.append(NullWritable.get(), this);
+        }
+    }
+
+    /**
+     * Reads forest from sequence file written by training job or {@link #write(Configuration, Path)}.
+     *
+     * @throws IOException
+     *             If file can not be read or holds no forest.
+     */
+    public static ForestWritable read(Configuration conf, Path path) throws IOException {
+        try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(path))) {
+            ForestWritable forest = new ForestWritable();
+            if (!reader.next(NullWritable.get(), forest)) {
+                throw new IOException("No forest in " + path);
+            }
+            return forest;
+        }
+    }
+
+    /**
+     * Reads forest from sequence file with default configuration.
+     */
+    public static ForestWritable read(Path path) throws IOException {
+        return read(new Configuration(), path);
+    }
+}
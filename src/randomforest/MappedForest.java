@@ -0,0 +1,213 @@
+package randomforest;
+
+import static randomforest.ForestFile.CATEGORIES_FROM;
+import static randomforest.ForestFile.CATEGORIES_TO;
+import static randomforest.ForestFile.COLUMN;
+import static randomforest.ForestFile.LEAF_CLASS;
+import static randomforest.ForestFile.NODE_SIZE;
+import static randomforest.ForestFile.OPERATOR;
+import static randomforest.ForestFile.SECOND_CHILD;
+import static randomforest.ForestFile.THRESHOLD;
+import static randomforest.ForestFile.TREE_HEADER_SIZE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import decisiontree.feature.ThresholdFeature;
+import decisiontree.label.DirectionalLabel;
+import decisiontree.label.Label;
+
+/**
+ * Forest classified straight from memory mapped {@link ForestFile}. Loading reads only the header, nodes are read from
+ * the mapped buffer during classification, so no object is created per node. Instance is thread safe.
+ *
+ */
+public class MappedForest {
+
+    private static final int LESS_THAN = ThresholdFeature.Operator.LESS_THAN.ordinal();
+
+    private static final int GREATER_OR_EQUAL = ThresholdFeature.Operator.GREATER_OR_EQUAL.ordinal();
+
+    /** Mapped file, only absolute reads are used. */
+    private final ByteBuffer buffer;
+
+    /** Seed for breaking ties of the forest which was written. */
+    private final long seed;
+
+    private final String labelColumn;
+
+    private final String[] columnNames;
+
+    /** Labels indexed by class index. */
+    private final Label[] classes;
+
+    /** Position of first node of each tree. */
+    private final int[] nodesStart;
+
+    /** Position of first category of each tree. */
+    private final int[] categoriesStart;
+
+    private MappedForest(ByteBuffer buffer, long seed, String labelColumn, String[] columnNames, Label[] classes,
+            int[] nodesStart, int[] categoriesStart) {
+        this.buffer = buffer;
+        this.seed = seed;
+        this.labelColumn = labelColumn;
+        this.columnNames = columnNames;
+        this.classes = classes;
+        this.nodesStart = nodesStart;
+        this.categoriesStart = categoriesStart;
+    }
+
+    /**
+     * Maps forest file with {@link DirectionalLabel}s.
+     */
+    public static MappedForest load(Path path) throws IOException {
+        return load(path, DirectionalLabel::newLabel);
+    }
+
+    /**
+     * Maps forest file.
+     *
+     * @param path
+     *            Forest file.
+     * @param labelFactory
+     *            Creates label from label name.
+     * @return Mapped forest.
+     * @throws IOException
+     *             If file can not be read or is not a forest file of supported version.
+     */
+    public static MappedForest load(Path path, Function<String, Label> labelFactory) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Forest file is too large to be mapped: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer header = buffer.duplicate();
+        if (header.remaining() < 8 || header.getInt() != ForestFile.MAGIC) {
+            throw new IOException("Not a forest file: " + path);
+        }
+        short version = header.getShort();
+        if (version != ForestFile.VERSION) {
+            throw new IOException("Unsupported forest file version " + version + ": " + path);
+        }
+        header.getShort();
+        long seed = header.getLong();
+        String labelColumn = ForestFile.getString(header);
+        String[] columnNames = new String[header.getInt()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = ForestFile.getString(header);
+        }
+        Label[] classes = new Label[header.getInt()];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = labelFactory.apply(ForestFile.getString(header));
+            // print value is stored for readers which do not know the labels
+            ForestFile.getString(header);
+        }
+        int numTrees = header.getInt();
+        int[] nodesStart = new int[numTrees];
+        int[] categoriesStart = new int[numTrees];
+        for (int t = 0; t < numTrees; t++) {
+            int offset = (int) header.getLong();
+            nodesStart[t] = offset + TREE_HEADER_SIZE;
+            categoriesStart[t] = nodesStart[t] + buffer.getInt(offset) * NODE_SIZE;
+        }
+        return new MappedForest(buffer, seed, labelColumn, columnNames, classes, nodesStart, categoriesStart);
+    }
+
+    /**
+     * Classify row by one tree.
+     *
+     * @param tree
+     *            Tree index.
+     * @param row
+     *            Feature values ordered as {@link #getColumnNames()}.
+     * @return Class index of predicted label.
+     */
+    public int classify(int tree, double[] row) {
+        int start = nodesStart[tree];
+        int position = start;
+        int column;
+        while ((column = buffer.getInt(position + COLUMN)) >= 0) {
+            double value = row[column];
+            int operator = buffer.getInt(position + OPERATOR);
+            boolean has;
+            if (operator == LESS_THAN) {
+                has = value < buffer.getDouble(position + THRESHOLD);
+            } else if (operator == GREATER_OR_EQUAL) {
+                has = value >= buffer.getDouble(position + THRESHOLD);
+            } else {
+                has = inSet(tree, position, value);
+            }
+            position = has ? position + NODE_SIZE : start + buffer.getInt(position + SECOND_CHILD) * NODE_SIZE;
+        }
+        return buffer.getInt(position + LEAF_CLASS);
+    }
+
+    private boolean inSet(int tree, int position, double value) {
+        int from = categoriesStart[tree] + 8 * buffer.getInt(position + CATEGORIES_FROM);
+        int to = categoriesStart[tree] + 8 * buffer.getInt(position + CATEGORIES_TO);
+        for (int category = from; category < to; category += 8) {
+            if (buffer.getDouble(category) == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Classify row by the whole forest.
+     *
+     * @param row
+     *            Feature values ordered as {@link #getColumnNames()}.
+     * @param sample
+     *            Position of row in its batch, ties are broken by it the same way as by {@link RandomForest}.
+     * @param votes
+     *            Array of length number of classes, filled with votes of trees.
+     * @return Class index with most votes.
+     */
+    public int predict(double[] row, int sample, int[] votes) {
+        Arrays.fill(votes, 0);
+        for (int t = 0; t < nodesStart.length; t++) {
+            votes[classify(t, row)]++;
+        }
+        return RandomForest.selectClass(seed, sample, votes);
+    }
+
+    public int getNumTrees() {
+        return nodesStart.length;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getLabelColumn() {
+        return labelColumn;
+    }
+
+    /**
+     * @return Feature column names in order of column indices.
+     */
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /**
+     * @return Labels indexed by class index.
+     */
+    public Label[] getClasses() {
+        return classes.clone();
+    }
+
+    public Label getLabel(int classIndex) {
+        return classes[classIndex];
+    }
+}
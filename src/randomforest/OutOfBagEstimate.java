@@ -0,0 +1,118 @@
+package randomforest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Out of bag error estimate of a forest. Merges out of bag votes of all trees per row, row prediction is the label with
+ * most votes of trees which did not train on the row. Ties go to label seen first.
+ *
+ */
+public class OutOfBagEstimate {
+
+    /** Label names indexed by class index of the estimate. */
+    private final List<String> classNames = new ArrayList<>();
+
+    /** Votes per class index of every row voted on. */
+    private final Map<Long, int[]> votes = new HashMap<>();
+
+    /** Class index of actual label of every row voted on. */
+    private final Map<Long, Integer> actual = new HashMap<>();
+
+    /**
+     * Adds votes of one tree.
+     */
+    public synchronized void add(OutOfBagVotes treeVotes) {
+        for (int i = 0; i < treeVotes.size(); i++) {
+            long key = treeVotes.getKey(i);
+            int predicted = classIndex(treeVotes.getClassName(treeVotes.getPredicted(i)));
+            actual.putIfAbsent(key, classIndex(treeVotes.getClassName(treeVotes.getActual(i))));
+            int[] rowVotes = votes.get(key);
+            if (rowVotes == null || rowVotes.length <= predicted) {
+                int[] grown = new int[classNames.size()];
+                if (rowVotes != null) {
+                    System.arraycopy(rowVotes, 0, grown, 0, rowVotes.length);
+                }
+                rowVotes = grown;
+                votes.put(key, rowVotes);
+            }
+            rowVotes[predicted]++;
+        }
+    }
+
+    private int classIndex(String className) {
+        int index = classNames.indexOf(className);
+        if (index < 0) {
+            classNames.add(className);
+            index = classNames.size() - 1;
+        }
+        return index;
+    }
+
+    /**
+     * @return Number of rows which were out of bag for at least one tree.
+     */
+    public synchronized int getNumRows() {
+        return votes.size();
+    }
+
+    /**
+     * @return Label names indexed by class index of confusion counts.
+     */
+    public synchronized List<String> getClassNames() {
+        return new ArrayList<>(classNames);
+    }
+
+    /**
+     * @return Number of rows per actual class index (first index) and predicted class index (second index).
+     */
+    public synchronized int[][] getConfusion() {
+        int[][] confusion = new int[classNames.size()][classNames.size()];
+        for (Map.Entry<Long, int[]> entry : votes.entrySet()) {
+            int[] rowVotes = entry.getValue();
+            int predicted = 0;
+            for (int c = 1; c < rowVotes.length; c++) {
+                if (rowVotes[c] > rowVotes[predicted]) {
+                    predicted = c;
+                }
+            }
+            confusion[actual.get(entry.getKey())][predicted]++;
+        }
+        return confusion;
+    }
+
+    /**
+     * @return Fraction of rows whose out of bag prediction is correct, NaN if no row was out of bag.
+     */
+    public double getAccuracy() {
+        int[][] confusion = getConfusion();
+        int correct = 0;
+        int total = 0;
+        for (int a = 0; a < confusion.length; a++) {
+            for (int p = 0; p < confusion.length; p++) {
+                total += confusion[a][p];
+                if (a == p) {
+                    correct += confusion[a][p];
+                }
+            }
+        }
+        return total > 0 ? correct / (double) total : Double.NaN;
+    }
+
+    /**
+     * Adds estimate to forest metadata as "oob.rows", "oob.accuracy" and "oob.confusion.actual.predicted" entries.
+     */
+    public void putMetadata(Map<String, String> metadata) {
+        List<String> names = getClassNames();
+        int[][] confusion = getConfusion();
+        metadata.put("oob.rows", String.valueOf(getNumRows()));
+        metadata.put("oob.accuracy", String.valueOf(getAccuracy()));
+        for (int a = 0; a < confusion.length; a++) {
+            for (int p = 0; p < confusion.length; p++) {
+                metadata.put("oob.confusion." + names.get(a) + "." + names.get(p), String.valueOf(confusion[a][p]));
+            }
+        }
+    }
+}
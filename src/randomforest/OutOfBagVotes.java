@@ -0,0 +1,164 @@
+package randomforest;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.apache.hadoop.io.Writable;
+
+import decisiontree.DecisionTree;
+import decisiontree.data.Bootstrap;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.label.Label;
+
+/**
+ * Predictions of one tree for the rows left out of its bootstrap sample. Rows are identified by keys which are unique
+ * across the whole training data, for example input offsets, so votes of different trees can be merged.
+ *
+ */
+public class OutOfBagVotes implements Writable {
+
+    /** Label names indexed by class index of this tree. */
+    private String[] classNames = new String[0];
+
+    /** Key of every out of bag row. */
+    private long[] keys = new long[0];
+
+    /** Class index of actual label of every out of bag row. */
+    private byte[] actual = new byte[0];
+
+    /** Class index of predicted label of every out of bag row. */
+    private byte[] predicted = new byte[0];
+
+    public OutOfBagVotes() {
+        // for deserialization
+    }
+
+    /**
+     * Scores rows of data set which are not in bootstrap sample of trained tree.
+     *
+     * @param tree
+     *            Tree trained on bootstrap sample.
+     * @param data
+     *            Columnar data set tree was trained on.
+     * @param sample
+     *            Bootstrap sample of the tree.
+     * @param rowKeys
+     *            Key of every data set row.
+     * @return Votes of the tree for out of bag rows.
+     */
+    public static OutOfBagVotes score(DecisionTree tree, ColumnarDataSet data, Bootstrap sample, long[] rowKeys) {
+        return score(tree, data, sample, rowKeys, null);
+    }
+
+    /**
+     * Scores training rows which are not in bootstrap sample of trained tree.
+     *
+     * @param trainRows
+     *            Row indices bootstrap sample was drawn from, null for all rows of data set. Other rows, for example
+     *            held out test rows, are never scored.
+     * @see #score(DecisionTree, ColumnarDataSet, Bootstrap, long[])
+     */
+    public static OutOfBagVotes score(DecisionTree tree, ColumnarDataSet data, Bootstrap sample, long[] rowKeys,
+            int[] trainRows) {
+        BitSet outOfBag = new BitSet(data.size());
+        if (trainRows == null) {
+            outOfBag.set(0, data.size());
+        } else {
+            for (int row : trainRows) {
+                outOfBag.set(row);
+            }
+        }
+        for (int row : sample.getRows()) {
+            outOfBag.clear(row);
+        }
+        Label[] classes = data.getClasses();
+        OutOfBagVotes votes = new OutOfBagVotes();
+        votes.classNames = new String[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            votes.classNames[i] = classes[i].getName();
+        }
+        int size = outOfBag.cardinality();
+        votes.keys = new long[size];
+        votes.actual = new byte[size];
+        votes.predicted = new byte[size];
+        int i = 0;
+        for (int row = outOfBag.nextSetBit(0); row >= 0; row = outOfBag.nextSetBit(row + 1)) {
+            votes.keys[i] = rowKeys[row];
+            votes.actual[i] = data.getLabelCode(row);
+            votes.predicted[i] = classIndex(classes, tree.classify(data, row));
+            i++;
+        }
+        return votes;
+    }
+
+    private static byte classIndex(Label[] classes, Label label) {
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i].equals(label)) {
+                return (byte) i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown label " + label.getName());
+    }
+
+    /**
+     * @return Number of out of bag rows.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    public String getClassName(int classIndex) {
+        return classNames[classIndex];
+    }
+
+    public long getKey(int i) {
+        return keys[i];
+    }
+
+    /**
+     * @return Class index of actual label of i-th out of bag row.
+     */
+    public int getActual(int i) {
+        return actual[i];
+    }
+
+    /**
+     * @return Class index of predicted label of i-th out of bag row.
+     */
+    public int getPredicted(int i) {
+        return predicted[i];
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(classNames.length);
+        for (String className : classNames) {
+            out.writeUTF(className);
+        }
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.writeLong(keys[i]);
+        }
+        out.write(actual);
+        out.write(predicted);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        classNames = new String[in.readByte()];
+        for (int i = 0; i < classNames.length; i++) {
+            classNames[i] = in.readUTF();
+        }
+        int size = in.readInt();
+        keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = in.readLong();
+        }
+        actual = new byte[size];
+        in.readFully(actual);
+        predicted = new byte[size];
+        in.readFully(predicted);
+    }
+}
@@ -0,0 +1,82 @@
+package randomforest;
+
+import java.util.List;
+
+import decisiontree.data.DataSample;
+import decisiontree.label.Label;
+
+/**
+ * Result of batch prediction of a forest, class index and vote fraction of every sample.
+ *
+ */
+public class Predictions {
+
+    /** Labels indexed by class index. */
+    private final Label[] classes;
+
+    /** Class index of predicted label of every sample. */
+    private final int[] classIndices;
+
+    /** Fraction of trees which voted for predicted label of every sample. */
+    private final double[] voteFractions;
+
+    Predictions(Label[] classes, int[] classIndices, double[] voteFractions) {
+        this.classes = classes;
+        this.classIndices = classIndices;
+        this.voteFractions = voteFractions;
+    }
+
+    /**
+     * @return Number of predicted samples.
+     */
+    public int size() {
+        return classIndices.length;
+    }
+
+    public int getClassIndex(int sample) {
+        return classIndices[sample];
+    }
+
+    public Label getLabel(int sample) {
+        return classes[classIndices[sample]];
+    }
+
+    public double getVoteFraction(int sample) {
+        return voteFractions[sample];
+    }
+
+    /**
+     * @return Class indices of predicted labels. Returned array is not copied and must not be modified.
+     */
+    public int[] getClassIndices() {
+        return classIndices;
+    }
+
+    /**
+     * @return Labels indexed by class index.
+     */
+    public Label[] getClasses() {
+        return classes.clone();
+    }
+
+    /**
+     * Counts correct predictions.
+     *
+     * @param data
+     *            Predicted data samples, in the same order as they were predicted.
+     * @return Number of samples whose label is the predicted label.
+     */
+    public int countCorrect(List<DataSample> data) {
+        if (data.size() != classIndices.length) {
+            throw new IllegalArgumentException("Expected " + classIndices.length + " samples, got " + data.size());
+        }
+        int correct = 0;
+        int i = 0;
+        for (DataSample dataSample : data) {
+            if (getLabel(i++).equals(dataSample.getLabel())) {
+                correct++;
+            }
+        }
+        return correct;
+    }
+}
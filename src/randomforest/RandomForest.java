@@ -0,0 +1,320 @@
+package randomforest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import decisiontree.DecisionTree;
+import decisiontree.FlatTree;
+import decisiontree.Node;
+import decisiontree.data.ColumnarDataSample;
+import decisiontree.data.ColumnarDataSet;
+import decisiontree.data.DataSample;
+import decisiontree.feature.Feature;
+import decisiontree.label.Label;
+
+/**
+ * Forest of trained trees which predicts batches of samples. Samples are split into ranges predicted in parallel on a
+ * fork/join pool, votes are counted in primitive arrays indexed by class index. Trees which can be compiled into
+ * {@link FlatTree} are classified through it, others through their nodes.
+ *
+ * Ties are broken by a hash of seed and sample position, so predictions do not depend on number of threads.
+ *
+ */
+public class RandomForest {
+
+    public static final long DEFAULT_SEED = 1L;
+
+    /** Ranges of at most this many samples are predicted sequentially. */
+    private static final int SEQUENTIAL_THRESHOLD = 256;
+
+    private final List<DecisionTree> trees;
+
+    /** Compiled trees, null for trees which can not be compiled. */
+    private final FlatTree[] flatTrees;
+
+    /** Labels indexed by class index. */
+    private final Label[] classes;
+
+    private final long seed;
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * Votes of all trees for one sample.
+     */
+    private interface Voter {
+
+        /**
+         * Adds votes for sample into votes indexed by class index, buffer can be used for sample values.
+         */
+        void vote(int sample, int[] votes, double[] buffer);
+    }
+
+    public RandomForest(List<? extends DecisionTree> trees) {
+        this(trees, DEFAULT_SEED);
+    }
+
+    public RandomForest(List<? extends DecisionTree> trees, long seed) {
+        this(trees, collectClasses(trees), seed);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param trees
+     *            Trained trees.
+     * @param classes
+     *            Labels indexed by class index, must contain every label of the trees.
+     * @param seed
+     *            Seed for breaking ties.
+     */
+    public RandomForest(List<? extends DecisionTree> trees, Label[] classes, long seed) {
+        if (trees.isEmpty()) {
+            throw new IllegalArgumentException("Forest has no trees");
+        }
+        this.trees = new ArrayList<>(trees);
+        this.classes = classes.clone();
+        this.seed = seed;
+        this.flatTrees = new FlatTree[trees.size()];
+        for (int t = 0; t < flatTrees.length; t++) {
+            try {
+                flatTrees[t] = FlatTree.compile(trees.get(t), this.classes);
+            } catch (IllegalArgumentException e) {
+                // tree uses features which can not be compiled, it is classified through its nodes
+                flatTrees[t] = null;
+            }
+        }
+    }
+
+    private static Label[] collectClasses(List<? extends DecisionTree> trees) {
+        List<Label> classes = new ArrayList<>();
+        for (DecisionTree tree : trees) {
+            collectClasses(tree.getRoot(), classes);
+        }
+        return classes.toArray(new Label[classes.size()]);
+    }
+
+    private static void collectClasses(Node node, List<Label> classes) {
+        if (node.isLeaf()) {
+            if (!classes.contains(node.getLabel())) {
+                classes.add(node.getLabel());
+            }
+        } else {
+            for (Node child : node.getChildren()) {
+                collectClasses(child, classes);
+            }
+        }
+    }
+
+    public List<DecisionTree> getTrees() {
+        return trees;
+    }
+
+    /**
+     * @return Labels indexed by class index.
+     */
+    public Label[] getClasses() {
+        return classes.clone();
+    }
+
+    /**
+     * @return Seed for breaking ties.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @param pool
+     *            Pool on which predictions run, common pool by default.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Predict data samples.
+     *
+     * @param data
+     *            Data samples.
+     * @return Predictions in order of data samples.
+     */
+    public Predictions predict(List<DataSample> data) {
+        if (!data.isEmpty() && data.get(0) instanceof ColumnarDataSample) {
+            ColumnarDataSet dataSet = ((ColumnarDataSample) data.get(0)).getDataSet();
+            if (data.stream().allMatch(p -> p instanceof ColumnarDataSample && ((ColumnarDataSample) p).getDataSet() == dataSet)) {
+                return predict(dataSet, dataSet.rowsOf(data));
+            }
+        }
+        return predict(data.size(), 0, (sample, votes, buffer) -> {
+            DataSample dataSample = data.get(sample);
+            for (DecisionTree tree : trees) {
+                votes[classIndex(tree.classify(dataSample))]++;
+            }
+        });
+    }
+
+    /**
+     * Predict rows of columnar data set with the same feature columns as training data set.
+     *
+     * @param data
+     *            Columnar data set.
+     * @param rows
+     *            Row indices.
+     * @return Predictions in order of row indices.
+     * @throws IllegalArgumentException
+     *             If feature columns of the trees are at different positions in data set.
+     */
+    public Predictions predict(ColumnarDataSet data, int[] rows) {
+        checkColumns(data.getColumnNames());
+        return predict(rows.length, data.getColumnNames().length, (sample, votes, buffer) -> {
+            data.getRow(rows[sample], buffer);
+            for (int t = 0; t < flatTrees.length; t++) {
+                votes[flatTrees[t] != null ? flatTrees[t].classify(buffer) : classIndex(trees.get(t).classify(data, rows[sample]))]++;
+            }
+        });
+    }
+
+    /**
+     * Predict rows of feature values.
+     *
+     * @param rows
+     *            Rows of feature values ordered as columns of training data set.
+     * @return Predictions in order of rows.
+     */
+    public Predictions predict(double[][] rows) {
+        return predict(rows.length, 0, (sample, votes, buffer) -> {
+            for (int t = 0; t < flatTrees.length; t++) {
+                votes[flatTrees[t] != null ? flatTrees[t].classify(rows[sample]) : classIndex(trees.get(t).classify(rows[sample]))]++;
+            }
+        });
+    }
+
+    private Predictions predict(int size, int numColumns, Voter voter) {
+        int[] classIndices = new int[size];
+        double[] voteFractions = new double[size];
+        pool.invoke(new PredictTask(voter, numColumns, classIndices, voteFractions, 0, size));
+        return new Predictions(classes, classIndices, voteFractions);
+    }
+
+    /**
+     * Predicts range of samples, splits it in halves until it is small enough.
+     */
+    private class PredictTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Voter voter;
+
+        private final int numColumns;
+
+        private final int[] classIndices;
+
+        private final double[] voteFractions;
+
+        private final int from;
+
+        private final int to;
+
+        PredictTask(Voter voter, int numColumns, int[] classIndices, double[] voteFractions, int from, int to) {
+            this.voter = voter;
+            this.numColumns = numColumns;
+            this.classIndices = classIndices;
+            this.voteFractions = voteFractions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                int[] votes = new int[classes.length];
+                double[] buffer = new double[numColumns];
+                for (int sample = from; sample < to; sample++) {
+                    Arrays.fill(votes, 0);
+                    voter.vote(sample, votes, buffer);
+                    classIndices[sample] = selectClass(seed, sample, votes);
+                    voteFractions[sample] = votes[classIndices[sample]] / (double) trees.size();
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PredictTask(voter, numColumns, classIndices, voteFractions, from, mid),
+                        new PredictTask(voter, numColumns, classIndices, voteFractions, mid, to));
+            }
+        }
+    }
+
+    /**
+     * Class index with most votes, ties are broken by hash of seed and sample position. Also used by
+     * {@link MappedForest}, so a forest predicts the same after it is written and mapped.
+     */
+    static int selectClass(long seed, int sample, int[] votes) {
+        int best = 0;
+        int ties = 1;
+        for (int c = 1; c < votes.length; c++) {
+            if (votes[c] > votes[best]) {
+                best = c;
+                ties = 1;
+            } else if (votes[c] == votes[best]) {
+                ties++;
+            }
+        }
+        if (ties > 1) {
+            int pick = (int) ((mix(seed + sample) >>> 1) % ties);
+            for (int c = best; c < votes.length; c++) {
+                if (votes[c] == votes[best] && pick-- == 0) {
+                    return c;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private int classIndex(Label label) {
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i].equals(label)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown label " + label.getName());
+    }
+
+    /**
+     * Checks that every feature which knows index of its column finds its column at that index.
+     */
+    private void checkColumns(String[] columnNames) {
+        for (DecisionTree tree : trees) {
+            checkColumns(tree.getRoot(), columnNames);
+        }
+    }
+
+    private static void checkColumns(Node node, String[] columnNames) {
+        if (node.isLeaf()) {
+            return;
+        }
+        Feature feature = node.getFeature();
+        int index = feature.getColumnIndex();
+        if (index >= columnNames.length || (index >= 0 && !columnNames[index].equalsIgnoreCase(feature.getColumn()))) {
+            throw new IllegalArgumentException("Column " + feature.getColumn() + " is not at index " + index);
+        }
+        for (Node child : node.getChildren()) {
+            checkColumns(child, columnNames);
+        }
+    }
+}
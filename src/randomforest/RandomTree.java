@@ -1,21 +1,31 @@
 package randomforest;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 import decisiontree.DecisionTree;
 import decisiontree.data.DataSample;
-import decisiontree.data.ExchangeDataSample;
 import decisiontree.feature.Feature;
-import decisiontree.utils.MathUtils;
+import decisiontree.split.NodeRange;
+import decisiontree.split.SplitFinder;
+import decisiontree.split.SplitStrategy;
 
 public class RandomTree extends DecisionTree {
     
 	private int numFeatures;
 	
+	/** Seed of column selection, random unless set. */
+	private long seed = ThreadLocalRandom.current().nextLong();
+	
+	/** Column selection stream of training on a list of samples, which grows nodes one by one. */
+	private SplittableRandom random = new SplittableRandom(seed);
+	
 	public RandomTree() {
 		// for <init>() call in MapReduce
 	}
@@ -30,104 +40,117 @@ public class RandomTree extends DecisionTree {
 		this.numFeatures = numFeatures;
 	}
 	
+	/**
+	 * Constructor for histogram split strategy
+	 * @param numFeatures
+	 *     the number of features in the data
+	 * @param maxBins
+	 *     maximum number of bins per column
+	 */
+	public RandomTree(int numFeatures, int maxBins) {
+		this(numFeatures);
+		setSplitStrategy(SplitStrategy.HISTOGRAM);
+		setMaxBins(maxBins);
+	}
+	
 	@Override
-    protected Feature findBestSplitFeature(List<DataSample> data, List<List<Feature>> features) {
-		double parentImpurity = impurityCalculationMethod.calculateImpurity(data);
-    	double infoGain = -Double.MIN_NORMAL;
-    	double childrenImpurity = 1;
-    	
-        Feature bestSplitFeature = null; // rename split to feature
-		
-		while(bestSplitFeature == null) {
-		    /** start with the highest (worst) impurity. */
-            //double currentImpurity = 1;
-
-            int randFeatNum = MathUtils.randomInt(1, numFeatures);
+    protected Feature findBestSplitFeature(List<DataSample> data, double parentImpurity, List<List<Feature>> features) {
+		return super.findBestSplitFeature(data, parentImpurity, selectFeatures(features, random));
+    }
+	
+	@Override
+    protected Feature findBestSplitFeature(SplitFinder splitFinder, NodeRange node, List<List<Feature>> features) {
+		// nodes may grow concurrently in any order, so each node derives its own stream from the range it owns, which
+		// is unique within the tree
+		SplittableRandom nodeRandom = new SplittableRandom(seed + ((long) node.getFrom() << 32 | node.getTo()));
+		List<List<Feature>> selected = selectFeatures(features, nodeRandom);
+		Feature bestSplit = super.findBestSplitFeature(splitFinder, node, selected);
+		if (bestSplit == null) {
+			// drawn columns can not split the node, e.g. they are constant in it, so the other columns are tried
+			// before the node becomes a leaf
+			List<List<Feature>> remaining = new ArrayList<>();
+			for (List<Feature> featList : features) {
+				if (!featList.isEmpty() && selected.stream().noneMatch(p -> p == featList)) {
+					remaining.add(featList);
+				}
+			}
+			if (!remaining.isEmpty()) {
+				bestSplit = super.findBestSplitFeature(splitFinder, node, remaining);
+			}
+		}
+		return bestSplit;
+    }
+	
+	/**
+	 * Randomly select between 1 and numFeatures columns to be considered for the split.
+	 * 
+	 * @param features
+	 *     List of possible features, each list holds features of a single column
+	 * @param random
+	 *     random stream of the node
+	 * @return
+	 *     Lists of features of the selected columns
+	 */
+	protected List<List<Feature>> selectFeatures(List<List<Feature>> features, SplittableRandom random) {
+        int randFeatNum = 1 + random.nextInt(numFeatures);
         
-            // Map of integers to feature names for selecting random features
-            Map<Integer, String> featMap = new HashMap<Integer, String>();
-    	    ExchangeDataSample singleSample = (ExchangeDataSample)data.get(0);
+        // Map of integers to feature names for selecting random features
+        Map<Integer, String> featMap = new HashMap<Integer, String>();
     	
-    	    // populate map where key=number val=feature name
-    	    int i = 1;
-    	    for(Map.Entry<String, Object> entry: ((ExchangeDataSample) singleSample).getValues().entrySet()) {
-    		    String key = entry.getKey();
-    		    featMap.put(i, key);
-    		    i++;
-    	    }
+        // populate map where key=number val=feature name
+        int i = 1;
+        for(List<Feature> featList: features) {
+        	if(!featList.isEmpty()) {
+        		featMap.put(i, featList.get(0).getColumn());
+        		i++;
+        	}
+        }
+        randFeatNum = Math.min(randFeatNum, featMap.size());
     	
-    	    // initialize set of feature names
-    	    Set<String> featSet = new HashSet<String>();
-    	    // randomly populate set with randFeatNum names
-    	    while(featSet.size() < randFeatNum) {
-    		    int rand = MathUtils.randomInt(1, featMap.size());
-    		    featSet.add(featMap.get(rand));
-    	    }
-
-            for(List<Feature> featList: features) {
-            	if(!featList.isEmpty() && featSet.contains(featList.get(0).getColumn())) {
-	            	int listSize = featList.size();
-	            	int low = 0;
-	            	int high = listSize - 1;
-	            	int mid = low + (high - low) / 2;
-	            	
-	            	if(listSize > 0){
-	    	        	Feature firstFeature = featList.get(mid);
-	    	        	while(low <= high){
-	    	        		mid = low + (high - low) / 2;
-	    	        		Feature feature = featList.get(mid);
-	    	        		
-	    	        		List<List<DataSample>> splitData = feature.split(data);
-	    	        		// totalSplitImpurity = sum(singleLeafImpurities) / nbOfLeafs
-	    	                // in other words splitImpurity is average of leaf impurities
-	    	                childrenImpurity = splitData.parallelStream().filter(list -> !list.isEmpty()).mapToDouble(list -> impurityCalculationMethod.calculateImpurity(list)).average().getAsDouble();
-	    	                double newGain = parentImpurity - childrenImpurity;
-	    	                //System.out.println(infoGain + " " + newGain);
-	    	                if(newGain > infoGain){
-	    	                    infoGain = newGain;
-	    	                	bestSplitFeature = feature;
-	    	                	high = mid - 1;
-	    	                	//System.out.println(infoGain + " " + feature);
-	    	                }
-	    	                else {
-	    	                	low = mid + 1;
-	    	                }
-	    	        	}
-	    	        	if(bestSplitFeature == null) {
-	    	        		bestSplitFeature = firstFeature;
-	    	        	}
-	    	        	if(bestSplitFeature.getFeatureVal() == firstFeature.getFeatureVal()) {
-	    	        		low = 0;
-	    	        		high = listSize - 1;
-	    	        		while(low <= high){
-	    	            		mid = low + (high - low) / 2;
-	    	            		Feature feature = featList.get(mid);
-	    	            		
-	    	            		List<List<DataSample>> splitData = feature.split(data);
-	    	            		// totalSplitImpurity = sum(singleLeafImpurities) / nbOfLeafs
-	    	                    // in other words splitImpurity is average of leaf impurities
-	    	                    childrenImpurity = splitData.parallelStream().filter(list -> !list.isEmpty()).mapToDouble(list -> impurityCalculationMethod.calculateImpurity(list)).average().getAsDouble();
-	    	                    double newGain = parentImpurity - childrenImpurity;
-	    	                    
-	    	                    if(newGain > infoGain){
-	    	                        infoGain = newGain;
-	    	                    	bestSplitFeature = feature;
-	    	                    	low = mid + 1;
-	    	                    	//System.out.println(infoGain + " " + feature);
-	    	                    }
-	    	                    else {
-	    	                        high = mid - 1;
-	    	                    }
-	    	            	}
-	    	        	}
-	            	}
-            	}
-            }
-		}
-        return bestSplitFeature;
-    }
+        // initialize set of feature names
+        Set<String> featSet = new HashSet<String>();
+        // randomly populate set with randFeatNum names
+        while(featSet.size() < randFeatNum) {
+    	    int rand = 1 + random.nextInt(featMap.size());
+    	    featSet.add(featMap.get(rand));
+        }
+        
+        List<List<Feature>> selected = new ArrayList<>();
+        for(List<Feature> featList: features) {
+        	if(!featList.isEmpty() && featSet.contains(featList.get(0).getColumn())) {
+        		selected.add(featList);
+        	}
+        }
+        return selected;
+	}
 	
 	public int getNumFeatures() {
 		return numFeatures;
 	}
+	
+	/**
+	 * @param numFeatures
+	 *     maximum number of columns considered for a split
+	 */
+	public void setNumFeatures(int numFeatures) {
+		if (numFeatures < 1) {
+			throw new IllegalArgumentException("Number of features must be positive: " + numFeatures);
+		}
+		this.numFeatures = numFeatures;
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Seeds column selection, a tree trained with the same seed on the same sample is the same tree.
+	 * 
+	 * @param seed
+	 *     seed of column selection
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+	}
 }